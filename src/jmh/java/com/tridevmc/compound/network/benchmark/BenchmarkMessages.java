@@ -0,0 +1,241 @@
+package com.tridevmc.compound.network.benchmark;
+
+import com.google.common.collect.Lists;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.RegisteredMessage;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
+import net.minecraftforge.fml.LogicalSide;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Representative message shapes used by the benchmarks, each filled with values of typical size.
+ */
+public final class BenchmarkMessages {
+
+    /**
+     * The shapes that can be benchmarked, in discriminator order.
+     */
+    public static final List<Class<? extends Message>> SHAPES = Lists.newArrayList(
+            PrimitiveMessage.class,
+            BooleanMessage.class,
+            NullableMessage.class,
+            ArrayMessage.class,
+            StringMessage.class,
+            NBTMessage.class);
+
+    private BenchmarkMessages() {
+    }
+
+    /**
+     * Creates a filled instance of the shape with the given name.
+     *
+     * @param shape  the simple name of the shape class.
+     * @param random the random to fill the message with.
+     * @return the filled message.
+     */
+    public static Message create(String shape, Random random) {
+        switch (shape) {
+            case "PrimitiveMessage":
+                return new PrimitiveMessage().fill(random);
+            case "BooleanMessage":
+                return new BooleanMessage().fill(random);
+            case "NullableMessage":
+                return new NullableMessage().fill(random);
+            case "ArrayMessage":
+                return new ArrayMessage().fill(random);
+            case "StringMessage":
+                return new StringMessage().fill(random);
+            case "NBTMessage":
+                return new NBTMessage().fill(random);
+            default:
+                throw new RuntimeException("Unknown message shape " + shape);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // Mostly ASCII with the occasional multi byte character, like chat and item names.
+            builder.append(random.nextInt(16) == 0 ? (char) (0x400 + random.nextInt(256)) : (char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+
+    @RegisteredMessage(channel = "benchmark", destination = LogicalSide.CLIENT)
+    public static class PrimitiveMessage extends Message {
+        public int entityId;
+        public long worldTime;
+        public double x, y, z;
+        public float yaw, pitch;
+        public short health;
+        public byte flags;
+        public char key;
+
+        PrimitiveMessage fill(Random random) {
+            this.entityId = random.nextInt(100000);
+            this.worldTime = random.nextLong();
+            this.x = random.nextDouble() * 10000;
+            this.y = random.nextDouble() * 256;
+            this.z = random.nextDouble() * 10000;
+            this.yaw = random.nextFloat() * 360;
+            this.pitch = random.nextFloat() * 180 - 90;
+            this.health = (short) random.nextInt(40);
+            this.flags = (byte) random.nextInt(256);
+            this.key = (char) ('a' + random.nextInt(26));
+            return this;
+        }
+
+        @Override
+        public void handle(@Nullable PlayerEntity player) {
+        }
+    }
+
+    @RegisteredMessage(channel = "benchmark", destination = LogicalSide.CLIENT)
+    public static class BooleanMessage extends Message {
+        public boolean b0, b1, b2, b3, b4, b5, b6, b7, b8, b9, b10, b11, b12, b13, b14, b15;
+        public int state;
+
+        BooleanMessage fill(Random random) {
+            this.b0 = random.nextBoolean();
+            this.b1 = random.nextBoolean();
+            this.b2 = random.nextBoolean();
+            this.b3 = random.nextBoolean();
+            this.b4 = random.nextBoolean();
+            this.b5 = random.nextBoolean();
+            this.b6 = random.nextBoolean();
+            this.b7 = random.nextBoolean();
+            this.b8 = random.nextBoolean();
+            this.b9 = random.nextBoolean();
+            this.b10 = random.nextBoolean();
+            this.b11 = random.nextBoolean();
+            this.b12 = random.nextBoolean();
+            this.b13 = random.nextBoolean();
+            this.b14 = random.nextBoolean();
+            this.b15 = random.nextBoolean();
+            this.state = random.nextInt(16);
+            return this;
+        }
+
+        @Override
+        public void handle(@Nullable PlayerEntity player) {
+        }
+    }
+
+    @RegisteredMessage(channel = "benchmark", destination = LogicalSide.CLIENT)
+    public static class NullableMessage extends Message {
+        @Nullable
+        public String name;
+        @Nullable
+        public String owner;
+        @Nullable
+        public Integer count;
+        @Nullable
+        public Long lastSeen;
+        @Nullable
+        public BlockPos target;
+        @Nullable
+        public BlockPos home;
+
+        NullableMessage fill(Random random) {
+            // Half of the fields are left empty.
+            this.name = randomString(random, 12);
+            this.owner = null;
+            this.count = random.nextInt(64);
+            this.lastSeen = null;
+            this.target = new BlockPos(random.nextInt(10000), random.nextInt(256), random.nextInt(10000));
+            this.home = null;
+            return this;
+        }
+
+        @Override
+        public void handle(@Nullable PlayerEntity player) {
+        }
+    }
+
+    @RegisteredMessage(channel = "benchmark", destination = LogicalSide.CLIENT)
+    public static class ArrayMessage extends Message {
+        public int[] heights;
+        public float[] levels;
+        public byte[] biomes;
+        public long[] states;
+
+        ArrayMessage fill(Random random) {
+            this.heights = new int[64];
+            for (int i = 0; i < this.heights.length; i++) {
+                this.heights[i] = random.nextInt(256);
+            }
+            this.levels = new float[32];
+            for (int i = 0; i < this.levels.length; i++) {
+                this.levels[i] = random.nextFloat();
+            }
+            this.biomes = new byte[256];
+            random.nextBytes(this.biomes);
+            this.states = new long[16];
+            for (int i = 0; i < this.states.length; i++) {
+                this.states[i] = random.nextLong();
+            }
+            return this;
+        }
+
+        @Override
+        public void handle(@Nullable PlayerEntity player) {
+        }
+    }
+
+    @RegisteredMessage(channel = "benchmark", destination = LogicalSide.CLIENT)
+    public static class StringMessage extends Message {
+        public String title;
+        public String subtitle;
+        public String author;
+        public String line0, line1, line2, line3;
+        public String footer;
+
+        StringMessage fill(Random random) {
+            this.title = randomString(random, 16);
+            this.subtitle = randomString(random, 32);
+            this.author = randomString(random, 8);
+            this.line0 = randomString(random, 64);
+            this.line1 = randomString(random, 64);
+            this.line2 = randomString(random, 64);
+            this.line3 = randomString(random, 64);
+            this.footer = randomString(random, 4);
+            return this;
+        }
+
+        @Override
+        public void handle(@Nullable PlayerEntity player) {
+        }
+    }
+
+    @RegisteredMessage(channel = "benchmark", destination = LogicalSide.CLIENT)
+    public static class NBTMessage extends Message {
+        public int windowId;
+        public CompoundNBT data;
+
+        NBTMessage fill(Random random) {
+            this.windowId = random.nextInt(100);
+            this.data = new CompoundNBT();
+            for (int i = 0; i < 16; i++) {
+                // Shaped like the data of a container tile, one compound per slot.
+                CompoundNBT slot = new CompoundNBT();
+                slot.putString("id", "minecraft:" + randomString(random, 10));
+                slot.putInt("Count", random.nextInt(64));
+                slot.putInt("Damage", random.nextInt(100));
+                slot.putBoolean("Enchanted", random.nextBoolean());
+                this.data.put("Slot" + i, slot);
+            }
+            this.data.putLong("LastUpdate", random.nextLong());
+            this.data.putIntArray("Progress", new int[]{random.nextInt(200), random.nextInt(200), random.nextInt(200)});
+            return this;
+        }
+
+        @Override
+        public void handle(@Nullable PlayerEntity player) {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.tridevmc.compound.network.benchmark;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tridevmc.compound.network.core.CompoundNetwork;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.metrics.LatencyHistogram;
+import net.minecraft.util.ResourceLocation;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress tests the message codecs without launching the game by simulating thousands of clients,
+ * each connected to a simulated server over a pair of embedded channels.
+ * <p>
+ * Every round each client sends a batch of messages which the server then handles, answering every few
+ * of them. Connections are split evenly between the threads and run until the duration is over, the
+ * throughput, delivery latency and allocation rate are printed at the end.
+ * <p>
+ * Options are given as key=value arguments: clients, threads, seconds, batch, reply and shape.
+ */
+public class LoadTest {
+
+    private final CompoundNetwork network;
+    private final int clients;
+    private final int threads;
+    private final long durationNanos;
+    private final int batch;
+    private final int replyInterval;
+    private final String shape;
+    private final LatencyHistogram serverboundLatency;
+    private final LatencyHistogram clientboundLatency;
+
+    public LoadTest(CompoundNetwork network, Map<String, String> options) {
+        this.network = network;
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "2000"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("seconds", "30")));
+        this.batch = Integer.parseInt(options.getOrDefault("batch", "4"));
+        this.replyInterval = Integer.parseInt(options.getOrDefault("reply", "4"));
+        this.shape = options.getOrDefault("shape", "PrimitiveMessage");
+        this.serverboundLatency = new LatencyHistogram();
+        this.clientboundLatency = new LatencyHistogram();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = Maps.newHashMap();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new RuntimeException(String.format("Expected an option of the form key=value, got %s", arg));
+            }
+            options.put(option[0], option[1]);
+        }
+
+        CompoundNetwork network = CompoundNetwork.createNetwork(
+                new ResourceLocation("compound", "loadtest"), "1", BenchmarkMessages.SHAPES);
+        new LoadTest(network, options).run();
+    }
+
+    /**
+     * Runs the load test and prints its results.
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads to finish.
+     */
+    public void run() throws InterruptedException {
+        List<Worker> workers = Lists.newArrayList();
+        for (int i = 0; i < this.threads; i++) {
+            // Spread the remainder over the first threads.
+            int connections = this.clients / this.threads + (i < this.clients % this.threads ? 1 : 0);
+            workers.add(new Worker(i, connections));
+        }
+
+        System.out.printf("Running %s clients on %s threads for %ss, sending %s in batches of %s%n",
+                this.clients, this.threads, TimeUnit.NANOSECONDS.toSeconds(this.durationNanos), this.shape, this.batch);
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long messages = workers.stream().mapToLong(w -> w.messages).sum();
+        long bytes = workers.stream().mapToLong(w -> w.bytes).sum();
+        long allocated = workers.stream().mapToLong(w -> w.allocatedBytes).sum();
+        System.out.printf("Throughput: %.0f msg/s, %.2f MB/s%n", messages / seconds, bytes / seconds / 1e6);
+        System.out.printf("Allocation: %.2f MB/s, %.0f B/msg%n", allocated / seconds / 1e6, messages > 0 ? (double) allocated / messages : 0);
+        this.printLatency("Serverbound", this.serverboundLatency);
+        this.printLatency("Clientbound", this.clientboundLatency);
+    }
+
+    private void printLatency(String name, LatencyHistogram latency) {
+        long[] counts = latency.snapshot();
+        System.out.printf("%s latency: p50 %.1fus, p90 %.1fus, p99 %.1fus, p99.9 %.1fus, max %.1fus%n", name,
+                LatencyHistogram.valueAt(counts, 0.5) / 1e3,
+                LatencyHistogram.valueAt(counts, 0.9) / 1e3,
+                LatencyHistogram.valueAt(counts, 0.99) / 1e3,
+                LatencyHistogram.valueAt(counts, 0.999) / 1e3,
+                LatencyHistogram.valueAt(counts, 1) / 1e3);
+    }
+
+    /**
+     * Drives the connections of a single thread, embedded channels are not thread safe so every
+     * connection belongs to one worker.
+     */
+    private class Worker extends Thread {
+        private final int connectionCount;
+        private long messages;
+        private long bytes;
+        private long allocatedBytes;
+
+        private Worker(int index, int connectionCount) {
+            super("Compound Load Test #" + index);
+            this.connectionCount = connectionCount;
+        }
+
+        @Override
+        public void run() {
+            LoadTest test = LoadTest.this;
+            Random random = new Random(this.getName().hashCode());
+            List<Message> templates = Lists.newArrayList();
+            for (int i = 0; i < 64; i++) {
+                templates.add(BenchmarkMessages.create(test.shape, random));
+            }
+
+            List<SimulatedConnection> connections = Lists.newArrayListWithCapacity(this.connectionCount);
+            for (int i = 0; i < this.connectionCount; i++) {
+                connections.add(new SimulatedConnection(test.network, test.serverboundLatency,
+                        test.clientboundLatency, test.replyInterval));
+            }
+
+            // Only measure the allocation of the rounds, not of setting up the connections.
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long allocatedStart = threadBean.getThreadAllocatedBytes(this.getId());
+            long end = System.nanoTime() + test.durationNanos;
+            int next = 0;
+            while (System.nanoTime() < end) {
+                for (SimulatedConnection connection : connections) {
+                    int offset = next++;
+                    connection.send(test.batch, () -> templates.get(offset & 63));
+                }
+                connections.forEach(SimulatedConnection::pump);
+            }
+            this.allocatedBytes = threadBean.getThreadAllocatedBytes(this.getId()) - allocatedStart;
+
+            for (SimulatedConnection connection : connections) {
+                this.messages += connection.getReceived();
+                this.bytes += connection.getSentBytes();
+                connection.close();
+            }
+        }
+    }
+}
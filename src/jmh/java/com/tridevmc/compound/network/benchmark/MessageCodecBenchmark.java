@@ -0,0 +1,82 @@
+package com.tridevmc.compound.network.benchmark;
+
+import com.tridevmc.compound.network.core.CompoundNetwork;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.MessageConcept;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.util.ResourceLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of a single message through its concept against an in-memory buffer,
+ * run with "-prof gc" to see the allocation rate of each shape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"PrimitiveMessage", "BooleanMessage", "NullableMessage", "ArrayMessage", "StringMessage", "NBTMessage"})
+    public String shape;
+
+    private MessageConcept concept;
+    private Message msg;
+    private ByteBuf encodeTarget;
+    private ByteBuf decodeSource;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.msg = BenchmarkMessages.create(this.shape, new Random(this.shape.hashCode()));
+        this.concept = Networks.NETWORK.getMsgConcept(this.msg);
+
+        this.encodeTarget = Unpooled.directBuffer(4096);
+        this.decodeSource = Unpooled.directBuffer(4096);
+        this.concept.toBytes(this.msg, this.decodeSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.encodeTarget.release();
+        this.decodeSource.release();
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        this.encodeTarget.clear();
+        this.concept.toBytes(this.msg, this.encodeTarget);
+        return this.encodeTarget;
+    }
+
+    @Benchmark
+    public Message decode() {
+        this.decodeSource.readerIndex(0);
+        return this.concept.fromBytes(this.decodeSource);
+    }
+
+    /**
+     * Holds the network shared by every trial in a fork, channels can only be registered once.
+     */
+    private static class Networks {
+        private static final CompoundNetwork NETWORK = CompoundNetwork.createNetwork(
+                new ResourceLocation("compound", "benchmark"), "1", BenchmarkMessages.SHAPES);
+    }
+}
@@ -0,0 +1,62 @@
+package com.tridevmc.compound.network.benchmark;
+
+import com.tridevmc.compound.network.core.CompoundNetwork;
+import com.tridevmc.compound.network.marshallers.VarIntCodec;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.MessageConcept;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageCodec;
+
+import java.util.List;
+
+/**
+ * Frames messages of a network the way they travel inside a bundle, a var int length followed by the
+ * discriminator and the body encoded by the concept of the message.
+ */
+public class MessageFrameCodec extends ByteToMessageCodec<Message> {
+
+    private final CompoundNetwork network;
+
+    public MessageFrameCodec(CompoundNetwork network) {
+        super(Message.class);
+        this.network = network;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Message msg, ByteBuf out) {
+        MessageConcept concept = this.network.getMsgConcept(msg);
+
+        // Leave room for a padded 3 byte length and fill it in once the body is written.
+        int lengthIndex = out.writerIndex();
+        out.writeMedium(0);
+        VarIntCodec.writeVarInt(out, concept.getDiscriminator());
+        concept.toBytes(msg, out);
+        int length = out.writerIndex() - lengthIndex - 3;
+        out.setMedium(lengthIndex, (length & 0x7F | 0x80) << 16
+                | (length >>> 7 & 0x7F | 0x80) << 8
+                | length >>> 14);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        while (in.isReadable(3)) {
+            in.markReaderIndex();
+            int length = VarIntCodec.readVarInt(in);
+            if (!in.isReadable(length)) {
+                in.resetReaderIndex();
+                return;
+            }
+
+            ByteBuf frame = in.readSlice(length);
+            MessageConcept concept = this.network.getMsgConcept(VarIntCodec.readVarInt(frame));
+            if (concept == null) {
+                throw new RuntimeException("Received a frame with an unknown discriminator");
+            }
+            Message msg = concept.fromBytes(frame);
+            if (msg != null) {
+                out.add(msg);
+            }
+        }
+    }
+}
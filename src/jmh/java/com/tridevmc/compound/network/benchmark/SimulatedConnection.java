@@ -0,0 +1,130 @@
+package com.tridevmc.compound.network.benchmark;
+
+import com.tridevmc.compound.network.core.CompoundNetwork;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.metrics.LatencyHistogram;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * A simulated client connected to a simulated server, each end is an {@link EmbeddedChannel} running
+ * the message codec and the bytes written by one end are handed to the other when pumped.
+ * <p>
+ * The server handles every message it receives and answers every few of them, latency is measured
+ * from the message being written until it is handled. Only used by a single thread.
+ */
+public class SimulatedConnection {
+
+    private final EmbeddedChannel client;
+    private final EmbeddedChannel server;
+    private final ArrayDeque<Long> serverboundTimes;
+    private final ArrayDeque<Long> clientboundTimes;
+    private final LatencyHistogram serverboundLatency;
+    private final LatencyHistogram clientboundLatency;
+    private final int replyInterval;
+    private long serverReceived;
+    private long clientReceived;
+    private long sentBytes;
+
+    /**
+     * Creates a connection between a new simulated client and server.
+     *
+     * @param network            the network providing the message concepts.
+     * @param serverboundLatency the histogram to record the latency of messages sent by the client in.
+     * @param clientboundLatency the histogram to record the latency of replies sent by the server in.
+     * @param replyInterval      how many messages the server receives before it replies, 0 to never reply.
+     */
+    public SimulatedConnection(CompoundNetwork network, LatencyHistogram serverboundLatency,
+                               LatencyHistogram clientboundLatency, int replyInterval) {
+        this.serverboundTimes = new ArrayDeque<>();
+        this.clientboundTimes = new ArrayDeque<>();
+        this.serverboundLatency = serverboundLatency;
+        this.clientboundLatency = clientboundLatency;
+        this.replyInterval = replyInterval;
+        this.client = new EmbeddedChannel(new MessageFrameCodec(network), new SimpleChannelInboundHandler<Message>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, Message msg) {
+                SimulatedConnection.this.handle(msg, SimulatedConnection.this.clientboundTimes,
+                        SimulatedConnection.this.clientboundLatency);
+                SimulatedConnection.this.clientReceived++;
+            }
+        });
+        this.server = new EmbeddedChannel(new MessageFrameCodec(network), new SimpleChannelInboundHandler<Message>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, Message msg) {
+                SimulatedConnection.this.handle(msg, SimulatedConnection.this.serverboundTimes,
+                        SimulatedConnection.this.serverboundLatency);
+                long received = ++SimulatedConnection.this.serverReceived;
+                int interval = SimulatedConnection.this.replyInterval;
+                if (interval > 0 && received % interval == 0) {
+                    SimulatedConnection.this.clientboundTimes.add(System.nanoTime());
+                    ctx.write(msg);
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the given number of messages from the client, they are not delivered until pumped.
+     *
+     * @param count   the number of messages to write.
+     * @param factory the factory creating each message.
+     */
+    public void send(int count, Supplier<Message> factory) {
+        for (int i = 0; i < count; i++) {
+            this.serverboundTimes.add(System.nanoTime());
+            this.client.write(factory.get());
+        }
+        this.client.flush();
+    }
+
+    /**
+     * Delivers everything written by either end to the other end.
+     */
+    public void pump() {
+        this.transfer(this.client, this.server);
+        this.server.flush();
+        this.transfer(this.server, this.client);
+    }
+
+    private void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        ByteBuf data;
+        while ((data = from.readOutbound()) != null) {
+            this.sentBytes += data.readableBytes();
+            to.writeInbound(data);
+        }
+    }
+
+    private void handle(Message msg, ArrayDeque<Long> times, LatencyHistogram latency) {
+        msg.handle(null);
+        latency.record(System.nanoTime() - times.poll());
+    }
+
+    /**
+     * Gets the number of messages handled by either end.
+     *
+     * @return the number of handled messages.
+     */
+    public long getReceived() {
+        return this.serverReceived + this.clientReceived;
+    }
+
+    /**
+     * Gets the number of bytes sent by either end.
+     *
+     * @return the number of bytes.
+     */
+    public long getSentBytes() {
+        return this.sentBytes;
+    }
+
+    public void close() {
+        this.client.finishAndReleaseAll();
+        this.server.finishAndReleaseAll();
+    }
+}
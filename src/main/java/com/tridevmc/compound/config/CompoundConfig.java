@@ -4,11 +4,11 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.tridevmc.compound.core.reflect.WrappedField;
+import com.tridevmc.compound.core.scan.AnnotationIndex;
 import net.minecraftforge.common.ForgeConfigSpec;
 import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModContainer;
-import net.minecraftforge.fml.ModList;
 import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.javafmlmod.FMLModContainer;
 import net.minecraftforge.forgespi.language.ModFileScanData;
@@ -107,17 +107,8 @@ public class CompoundConfig<T> {
 
     private CompoundConfig loadConfig(ForgeConfigSpec.Builder builder) {
         if (this.objectSerializers.isEmpty()) {
-            List<ModFileScanData> modScanData = ModList.get().getAllScanData();
-            ArrayList<ModFileScanData.AnnotationData> annotationData = Lists.newArrayList();
-            String annotationName = RegisteredConfigObjectSerializer.class.getName();
-
-            modScanData.forEach((m) -> m.getAnnotations().stream().filter(a -> Objects.equals(a.getAnnotationType().getClassName(), annotationName)).forEach(a -> {
-                Map<String, Object> annotationInfo = a.getAnnotationData();
-                String modId = (String) annotationInfo.get("value");
-                if (Objects.equals(modId, this.getModId())) {
-                    annotationData.add(a);
-                }
-            }));
+            List<ModFileScanData.AnnotationData> annotationData = AnnotationIndex.get()
+                    .getAnnotations(RegisteredConfigObjectSerializer.class, "value", this.getModId());
 
             this.objectSerializers.addAll(annotationData.stream().map(data -> {
                 try {
@@ -3,6 +3,8 @@ package com.tridevmc.compound.core.reflect;
 import org.apache.commons.lang3.reflect.FieldUtils;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
@@ -138,6 +140,42 @@ public class WrappedField<T> {
         }
     }
 
+    /**
+     * Creates a method handle that reads the value of the field, forcing access if required.
+     * <p>
+     * Unlike {@link #get(Object)} the returned handle is not boxed, when stored as a constant the JIT
+     * is able to reduce invocations of it to a plain field read.
+     *
+     * @return a method handle that reads the value of the field.
+     */
+    public MethodHandle getGetter() {
+        try {
+            this.field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(this.field);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(
+                    String.format("Failed to create getter for field %s", this.field.getName()), e);
+        }
+    }
+
+    /**
+     * Creates a method handle that writes the value of the field, forcing access if required.
+     * <p>
+     * Unlike {@link #set(Object, Object)} the returned handle is not boxed, when stored as a constant
+     * the JIT is able to reduce invocations of it to a plain field write.
+     *
+     * @return a method handle that writes the value of the field.
+     */
+    public MethodHandle getSetter() {
+        try {
+            this.field.setAccessible(true);
+            return MethodHandles.lookup().unreflectSetter(this.field);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(
+                    String.format("Failed to create setter for field %s", this.field.getName()), e);
+        }
+    }
+
     /**
      * Gets the declaring class of the field.
      * <p>
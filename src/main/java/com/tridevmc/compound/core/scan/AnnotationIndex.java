@@ -0,0 +1,95 @@
+package com.tridevmc.compound.core.scan;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Maps;
+import net.minecraftforge.fml.ModList;
+import net.minecraftforge.forgespi.language.ModFileScanData;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the annotations found in the scan data of every loaded mod, grouped by annotation type.
+ * <p>
+ * The index is built with a single pass over the scan data the first time it is used and is then
+ * shared by everything that discovers annotated classes, annotations keep the order they were found in.
+ * Lookups by the value of an attribute, such as the channel of a message or the mod id of a serializer,
+ * are grouped once per annotation type and attribute.
+ */
+public class AnnotationIndex {
+
+    private static AnnotationIndex instance;
+
+    private final ImmutableListMultimap<String, ModFileScanData.AnnotationData> annotations;
+    private final Map<String, ImmutableListMultimap<Object, ModFileScanData.AnnotationData>> attributeIndexes;
+
+    private AnnotationIndex(List<ModFileScanData> scanData) {
+        ImmutableListMultimap.Builder<String, ModFileScanData.AnnotationData> builder = ImmutableListMultimap.builder();
+        for (ModFileScanData modScanData : scanData) {
+            for (ModFileScanData.AnnotationData annotationData : modScanData.getAnnotations()) {
+                builder.put(annotationData.getAnnotationType().getClassName(), annotationData);
+            }
+        }
+        this.annotations = builder.build();
+        this.attributeIndexes = Maps.newConcurrentMap();
+    }
+
+    /**
+     * Gets the index of the loaded mods, building it if this is the first time it is used.
+     *
+     * @return the annotation index.
+     */
+    public static synchronized AnnotationIndex get() {
+        // Mods are constructed in parallel, so the first few callers may all get here at once.
+        if (instance == null) {
+            instance = new AnnotationIndex(ModList.get().getAllScanData());
+        }
+        return instance;
+    }
+
+    /**
+     * Gets every use of the given annotation.
+     *
+     * @param annotation the class of the annotation.
+     * @return the annotation data of every use, in the order they were found.
+     */
+    public List<ModFileScanData.AnnotationData> getAnnotations(Class<? extends Annotation> annotation) {
+        return this.annotations.get(annotation.getName());
+    }
+
+    /**
+     * Gets every use of the given annotation where the given attribute has the given value, attributes
+     * left at their default value are not part of the scan data and never match.
+     *
+     * @param annotation the class of the annotation.
+     * @param attribute  the name of the attribute.
+     * @param value      the value the attribute should have.
+     * @return the annotation data of every matching use, in the order they were found.
+     */
+    public List<ModFileScanData.AnnotationData> getAnnotations(Class<? extends Annotation> annotation, String attribute, Object value) {
+        if (value == null) {
+            return ImmutableList.of();
+        }
+        return this.attributeIndexes.computeIfAbsent(annotation.getName() + "#" + attribute, k -> {
+            ImmutableListMultimap.Builder<Object, ModFileScanData.AnnotationData> builder = ImmutableListMultimap.builder();
+            for (ModFileScanData.AnnotationData annotationData : this.annotations.get(annotation.getName())) {
+                Object attributeValue = annotationData.getAnnotationData().get(attribute);
+                if (attributeValue != null) {
+                    builder.put(attributeValue, annotationData);
+                }
+            }
+            return builder.build();
+        }).get(value);
+    }
+
+    /**
+     * Gets the number of annotations in the index.
+     *
+     * @return the number of annotations.
+     */
+    public int size() {
+        return this.annotations.size();
+    }
+}
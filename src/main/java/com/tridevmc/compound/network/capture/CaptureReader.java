@@ -0,0 +1,117 @@
+package com.tridevmc.compound.network.capture;
+
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static com.tridevmc.compound.network.capture.CaptureWriter.*;
+
+/**
+ * Reads the records of a capture file written by a {@link CaptureWriter}, oldest first.
+ */
+public class CaptureReader implements Iterable<CaptureRecord>, AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapping;
+    private final int capacity;
+    private final int tail;
+    private final long count;
+    private final long startMillis;
+
+    /**
+     * Opens the capture file at the given path.
+     *
+     * @param file the path of the file.
+     * @throws IOException if the file could not be mapped or is not a capture.
+     */
+    public CaptureReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+            if (this.channel.size() < HEADER_SIZE || this.mapping.getInt(0) != MAGIC) {
+                throw new IOException(String.format("%s is not a capture file", file));
+            }
+            if (this.mapping.getInt(4) != VERSION) {
+                throw new IOException(String.format("%s has unsupported capture version %s",
+                        file, this.mapping.getInt(4)));
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+        this.capacity = (int) this.mapping.getLong(CAPACITY_OFFSET);
+        this.tail = (int) this.mapping.getLong(TAIL_OFFSET);
+        this.count = this.mapping.getLong(COUNT_OFFSET);
+        this.startMillis = this.mapping.getLong(START_OFFSET);
+    }
+
+    /**
+     * Gets the number of records in the capture.
+     *
+     * @return the number of records.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the wall clock time the capture was started at.
+     *
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+
+    @Override
+    public Iterator<CaptureRecord> iterator() {
+        return new Iterator<CaptureRecord>() {
+            private int position = CaptureReader.this.tail;
+            private long remaining = CaptureReader.this.count;
+
+            @Override
+            public boolean hasNext() {
+                return this.remaining > 0;
+            }
+
+            @Override
+            public CaptureRecord next() {
+                if (this.remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                MappedByteBuffer mapping = CaptureReader.this.mapping;
+                if (this.position + 4 > CaptureReader.this.capacity
+                        || mapping.getInt(HEADER_SIZE + this.position) == WRAP_MARKER) {
+                    this.position = 0;
+                }
+
+                int offset = HEADER_SIZE + this.position;
+                int length = mapping.getInt(offset);
+                EnumMessageDirection direction = EnumMessageDirection.values()[mapping.get(offset + 12)];
+                UUID playerId = new UUID(mapping.getLong(offset + 16), mapping.getLong(offset + 24));
+                ByteBuf body = Unpooled.wrappedBuffer((java.nio.ByteBuffer) mapping.duplicate()
+                        .position(offset + RECORD_HEADER_SIZE).limit(offset + length));
+                CaptureRecord record = new CaptureRecord(mapping.getLong(offset + 4), direction,
+                        mapping.getShort(offset + 14) & 0xFFFF, mapping.get(offset + 13) != 0, playerId, body);
+
+                this.position += length;
+                this.remaining--;
+                return record;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.tridevmc.compound.network.capture;
+
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import io.netty.buffer.ByteBuf;
+
+import java.util.UUID;
+
+/**
+ * A single message read from a capture file, the body is exactly what was sent or received for the
+ * message including any compression or delta encoding.
+ */
+public class CaptureRecord {
+
+    private final long timestampNanos;
+    private final EnumMessageDirection direction;
+    private final int discriminator;
+    private final boolean delta;
+    private final UUID playerId;
+    private final ByteBuf body;
+
+    CaptureRecord(long timestampNanos, EnumMessageDirection direction, int discriminator, boolean delta,
+                  UUID playerId, ByteBuf body) {
+        this.timestampNanos = timestampNanos;
+        this.direction = direction;
+        this.discriminator = discriminator;
+        this.delta = delta;
+        this.playerId = playerId;
+        this.body = body;
+    }
+
+    /**
+     * Gets the time the message was recorded at, relative to the start of the capture.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getTimestampNanos() {
+        return this.timestampNanos;
+    }
+
+    public EnumMessageDirection getDirection() {
+        return this.direction;
+    }
+
+    public int getDiscriminator() {
+        return this.discriminator;
+    }
+
+    public boolean isDelta() {
+        return this.delta;
+    }
+
+    /**
+     * Gets the player the message was sent to or received from.
+     *
+     * @return the id of the player, or the nil UUID if the message was not tied to a single player.
+     */
+    public UUID getPlayerId() {
+        return this.playerId;
+    }
+
+    /**
+     * Gets the encoded body of the message, only valid until the reader it came from is closed.
+     *
+     * @return the body of the message.
+     */
+    public ByteBuf getBody() {
+        return this.body;
+    }
+}
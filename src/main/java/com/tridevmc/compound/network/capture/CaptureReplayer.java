@@ -0,0 +1,189 @@
+package com.tridevmc.compound.network.capture;
+
+import com.google.common.collect.Maps;
+import com.tridevmc.compound.network.core.CompoundNetwork;
+import com.tridevmc.compound.network.marshallers.ConnectionDictionary;
+import com.tridevmc.compound.network.message.EnumMessagePriority;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.MessageBaseline;
+import com.tridevmc.compound.network.message.MessageConcept;
+import com.tridevmc.compound.network.message.RequestMessage;
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import net.minecraft.entity.player.PlayerEntity;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Feeds the messages of a capture file back through the decoders and handlers of a network, either at
+ * the pace they were recorded at or faster, so a bug or slow handler can be reproduced offline.
+ * <p>
+ * The network must have been created with the same messages in the same order as the one the capture
+ * was taken from, records are matched to messages by their discriminator. Messages are handled on the
+ * calling thread. Values sent as dictionary references can only be decoded if the capture was started
+ * before the connection they were sent over.
+ */
+public class CaptureReplayer {
+
+    private final CompoundNetwork network;
+    private final Map<UUID, Map<MessageConcept, MessageBaseline>> sentBaselines;
+    private final Map<UUID, Map<MessageConcept, MessageBaseline>> receivedBaselines;
+    private final Map<UUID, ConnectionDictionary[]> sentDictionaries;
+    private final Map<UUID, ConnectionDictionary[]> receivedDictionaries;
+    private Function<UUID, PlayerEntity> playerResolver = id -> null;
+    private double speed = 1;
+    private boolean replaySent;
+    private long replayedMessages;
+    private long failedMessages;
+    private long decodeNanos;
+    private long handlerNanos;
+
+    public CaptureReplayer(CompoundNetwork network) {
+        this.network = network;
+        this.sentBaselines = Maps.newHashMap();
+        this.receivedBaselines = Maps.newHashMap();
+        this.sentDictionaries = Maps.newHashMap();
+        this.receivedDictionaries = Maps.newHashMap();
+    }
+
+    /**
+     * Sets how fast the capture is replayed relative to how it was recorded.
+     *
+     * @param speed the speed factor, 1 for the original pace or 0 to replay as fast as possible.
+     * @return this replayer.
+     */
+    public CaptureReplayer setSpeed(double speed) {
+        this.speed = speed;
+        return this;
+    }
+
+    /**
+     * Sets the function used to find the player passed to the handler of each message.
+     *
+     * @param playerResolver the function to resolve the id of a recorded player, may return null.
+     * @return this replayer.
+     */
+    public CaptureReplayer setPlayerResolver(Function<UUID, PlayerEntity> playerResolver) {
+        this.playerResolver = playerResolver;
+        return this;
+    }
+
+    /**
+     * Sets whether messages recorded as sent are replayed as well as received messages.
+     *
+     * @param replaySent true to replay sent messages.
+     * @return this replayer.
+     */
+    public CaptureReplayer setReplaySent(boolean replaySent) {
+        this.replaySent = replaySent;
+        return this;
+    }
+
+    /**
+     * Replays every record in the given capture file.
+     *
+     * @param file the path of the capture file.
+     * @return the number of messages that were handled.
+     * @throws IOException if the capture could not be read.
+     */
+    public long replay(Path file) throws IOException {
+        long replayed = this.replayedMessages;
+        try (CaptureReader reader = new CaptureReader(file)) {
+            long start = System.nanoTime();
+            long firstTimestamp = -1;
+            for (CaptureRecord record : reader) {
+                if (record.getDirection() == EnumMessageDirection.SENT && !this.replaySent) {
+                    continue;
+                }
+                if (firstTimestamp < 0) {
+                    firstTimestamp = record.getTimestampNanos();
+                }
+                if (this.speed > 0 && !Double.isInfinite(this.speed)) {
+                    long due = start + (long) ((record.getTimestampNanos() - firstTimestamp) / this.speed);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                this.replay(record);
+            }
+        }
+        return this.replayedMessages - replayed;
+    }
+
+    private void replay(CaptureRecord record) {
+        MessageConcept concept = this.network.getMsgConcept(record.getDiscriminator());
+        if (concept == null || (record.isDelta() && !concept.isDeltaEncoded())) {
+            this.network.getLogger().error("Skipping captured message with unknown discriminator {}", record.getDiscriminator());
+            this.failedMessages++;
+            return;
+        }
+
+        long start = System.nanoTime();
+        Message msg;
+        // Each player and direction has its own baselines and dictionary, just like the connection it was recorded on.
+        boolean sent = record.getDirection() == EnumMessageDirection.SENT;
+        ConnectionDictionary[] dictionaries = (sent ? this.sentDictionaries : this.receivedDictionaries)
+                .computeIfAbsent(record.getPlayerId(), k -> new ConnectionDictionary[EnumMessagePriority.values().length]);
+        int lane = concept.getPriority().ordinal();
+        if (dictionaries[lane] == null) {
+            dictionaries[lane] = new ConnectionDictionary(false);
+        }
+        ConnectionDictionary dictionary = dictionaries[lane];
+        dictionary.begin();
+        ConnectionDictionary previous = ConnectionDictionary.enter(dictionary);
+        try {
+            if (record.isDelta()) {
+                MessageBaseline baseline = (sent ? this.sentBaselines : this.receivedBaselines)
+                        .computeIfAbsent(record.getPlayerId(), k -> Maps.newHashMap())
+                        .computeIfAbsent(concept, MessageConcept::createBaseline);
+                msg = concept.fromBytes(record.getBody(), baseline);
+            } else {
+                msg = concept.fromBytes(record.getBody());
+            }
+        } finally {
+            ConnectionDictionary.exit(previous);
+        }
+        long decoded = System.nanoTime();
+        this.decodeNanos += decoded - start;
+        if (msg == null) {
+            dictionary.rollback();
+            this.failedMessages++;
+            return;
+        }
+
+        if (msg instanceof RequestMessage) {
+            // Nobody is waiting for the response to a replayed request.
+            ((RequestMessage<?>) msg).setRequestId(0);
+        }
+        try {
+            msg.handle(this.playerResolver.apply(record.getPlayerId()));
+            this.replayedMessages++;
+        } catch (RuntimeException e) {
+            this.network.getLogger().error("Failed to handle captured {}, caused by {}", concept.getMessageClass().getName(), e);
+            this.failedMessages++;
+        } finally {
+            this.handlerNanos += System.nanoTime() - decoded;
+            concept.release(msg);
+        }
+    }
+
+    public long getReplayedMessages() {
+        return this.replayedMessages;
+    }
+
+    public long getFailedMessages() {
+        return this.failedMessages;
+    }
+
+    public long getDecodeNanos() {
+        return this.decodeNanos;
+    }
+
+    public long getHandlerNanos() {
+        return this.handlerNanos;
+    }
+}
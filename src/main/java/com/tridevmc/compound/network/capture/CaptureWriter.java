@@ -0,0 +1,145 @@
+package com.tridevmc.compound.network.capture;
+
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Appends messages to a memory-mapped ring file, once the file is full the oldest records are
+ * overwritten so a capture can run indefinitely and keep the most recent traffic.
+ * <p>
+ * The file starts with a header holding the ring positions, followed by records each made up of their
+ * length, timestamp, direction, delta flag, discriminator, player id and encoded body. Records that do
+ * not fit before the end of the ring start over at its beginning, leaving a wrap marker behind.
+ * <p>
+ * For internal use only.
+ */
+public class CaptureWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x434D5043;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 32;
+    static final int WRAP_MARKER = -1;
+
+    static final int CAPACITY_OFFSET = 8;
+    static final int HEAD_OFFSET = 16;
+    static final int TAIL_OFFSET = 24;
+    static final int COUNT_OFFSET = 32;
+    static final int START_OFFSET = 40;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer mapping;
+    private final int capacity;
+    private final long startNanos;
+    private int head;
+    private int tail;
+    private long count;
+    private long droppedRecords;
+
+    /**
+     * Creates a capture file at the given path, replacing any existing file.
+     *
+     * @param file     the path of the file.
+     * @param capacity the size of the ring in bytes, at most 2GB.
+     * @throws IOException if the file could not be created or mapped.
+     */
+    public CaptureWriter(Path file, int capacity) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.capacity = Math.min(capacity, Integer.MAX_VALUE - HEADER_SIZE);
+        this.mapping = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.capacity);
+        this.startNanos = System.nanoTime();
+
+        this.mapping.putInt(0, MAGIC);
+        this.mapping.putInt(4, VERSION);
+        this.mapping.putLong(CAPACITY_OFFSET, this.capacity);
+        this.mapping.putLong(START_OFFSET, System.currentTimeMillis());
+        this.writePositions();
+    }
+
+    /**
+     * Appends a record for the given encoded message, evicting the oldest records if needed.
+     *
+     * @param direction     the direction the message travelled in.
+     * @param discriminator the discriminator of the message.
+     * @param delta         true if the body is a delta.
+     * @param playerId      the player the message was sent to or received from, or null if unknown.
+     * @param body          the encoded body, left unchanged.
+     */
+    public synchronized void record(EnumMessageDirection direction, int discriminator, boolean delta,
+                                    UUID playerId, ByteBuf body) {
+        int length = RECORD_HEADER_SIZE + body.readableBytes();
+        if (length > this.capacity) {
+            this.droppedRecords++;
+            return;
+        }
+
+        if (this.head + length > this.capacity) {
+            this.evict(this.head, this.capacity);
+            if (this.capacity - this.head >= 4) {
+                this.mapping.putInt(HEADER_SIZE + this.head, WRAP_MARKER);
+            }
+            this.head = 0;
+        }
+        this.evict(this.head, this.head + length);
+        if (this.count == 0) {
+            this.tail = this.head;
+        }
+
+        int position = HEADER_SIZE + this.head;
+        this.mapping.putInt(position, length);
+        this.mapping.putLong(position + 4, System.nanoTime() - this.startNanos);
+        this.mapping.put(position + 12, (byte) direction.ordinal());
+        this.mapping.put(position + 13, (byte) (delta ? 1 : 0));
+        this.mapping.putShort(position + 14, (short) discriminator);
+        this.mapping.putLong(position + 16, playerId != null ? playerId.getMostSignificantBits() : 0);
+        this.mapping.putLong(position + 24, playerId != null ? playerId.getLeastSignificantBits() : 0);
+        body.getBytes(body.readerIndex(), (java.nio.ByteBuffer) this.mapping.duplicate()
+                .position(position + RECORD_HEADER_SIZE).limit(position + length));
+
+        this.head += length;
+        this.count++;
+        this.writePositions();
+    }
+
+    /**
+     * Drops the oldest records while they start within the given range of the ring.
+     */
+    private void evict(int from, int to) {
+        while (this.count > 0 && this.tail >= from && this.tail < to) {
+            this.tail += this.mapping.getInt(HEADER_SIZE + this.tail);
+            this.count--;
+            if (this.tail + 4 > this.capacity || this.mapping.getInt(HEADER_SIZE + this.tail) == WRAP_MARKER) {
+                this.tail = 0;
+            }
+        }
+    }
+
+    private void writePositions() {
+        this.mapping.putLong(HEAD_OFFSET, this.head);
+        this.mapping.putLong(TAIL_OFFSET, this.tail);
+        this.mapping.putLong(COUNT_OFFSET, this.count);
+    }
+
+    /**
+     * Gets the number of records that were too large to fit in the ring.
+     *
+     * @return the number of dropped records.
+     */
+    public synchronized long getDroppedRecords() {
+        return this.droppedRecords;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.mapping.force();
+        this.channel.close();
+    }
+}
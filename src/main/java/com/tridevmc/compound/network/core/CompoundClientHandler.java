@@ -5,11 +5,14 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraftforge.fml.network.NetworkEvent;
 
+/**
+ * Handles messages received by the client, called by the dispatcher on the thread chosen by the
+ * message once the packet it arrived in has been handled.
+ */
 public class CompoundClientHandler implements ICompoundNetworkHandler {
     @Override
     public <M extends Message> void handle(M m, NetworkEvent.Context ctx) {
         m.handle(this.getPlayer(ctx));
-        ctx.setPacketHandled(true);
     }
 
     @Override
@@ -0,0 +1,216 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Maps;
+import com.tridevmc.compound.network.marshallers.ConnectionDictionary;
+import com.tridevmc.compound.network.message.EnumMessagePriority;
+import com.tridevmc.compound.network.message.MessageBaseline;
+import com.tridevmc.compound.network.message.MessageConcept;
+import net.minecraft.network.INetHandler;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.network.play.ServerPlayNetHandler;
+import net.minecraft.util.text.StringTextComponent;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the state a network keeps for a single connection, attached to the channel of the connection
+ * so it is discarded along with it.
+ * <p>
+ * For internal use only.
+ */
+public class CompoundConnection {
+
+    private final NetworkManager manager;
+
+    // Sent baselines and dictionaries are only used on the server thread, received ones on the network thread.
+    private final Map<MessageConcept, MessageBaseline> sentBaselines;
+    private final Map<MessageConcept, MessageBaseline> receivedBaselines;
+    private final ConnectionDictionary[] sentDictionaries;
+    private final ConnectionDictionary[] receivedDictionaries;
+    private final FragmentAssembler fragmentAssembler;
+    private final Map<Integer, StreamReceiver.IncomingStream> incomingStreams;
+    private final HandlerQueue mainQueue;
+    private final HandlerQueue workerQueue;
+    private InboundLimiter.State limiterState;
+    private TokenBucket bandwidthBudget;
+    private final AtomicBoolean outOfSync;
+
+    CompoundConnection(NetworkManager manager) {
+        this.manager = manager;
+        this.sentBaselines = Maps.newHashMap();
+        this.receivedBaselines = Maps.newHashMap();
+        // One dictionary per priority, batching only keeps the order of messages of the same priority.
+        this.sentDictionaries = new ConnectionDictionary[EnumMessagePriority.values().length];
+        this.receivedDictionaries = new ConnectionDictionary[EnumMessagePriority.values().length];
+        for (int i = 0; i < this.sentDictionaries.length; i++) {
+            this.sentDictionaries[i] = new ConnectionDictionary(true);
+            this.receivedDictionaries[i] = new ConnectionDictionary(false);
+        }
+        this.fragmentAssembler = new FragmentAssembler();
+        this.incomingStreams = new ConcurrentHashMap<>();
+        this.mainQueue = new HandlerQueue();
+        this.workerQueue = new HandlerQueue();
+        this.outOfSync = new AtomicBoolean();
+    }
+
+    public NetworkManager getManager() {
+        return this.manager;
+    }
+
+    /**
+     * Gets the id of the player on the other side of this connection.
+     *
+     * @return the id of the player, or null if this is not a server side connection of a player in game.
+     */
+    @Nullable
+    public UUID getPlayerId() {
+        INetHandler handler = this.manager.getNetHandler();
+        if (handler instanceof ServerPlayNetHandler && ((ServerPlayNetHandler) handler).player != null) {
+            return ((ServerPlayNetHandler) handler).player.getUniqueID();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the baseline of what the other side of this connection last received for the given message.
+     *
+     * @param concept the concept of the message.
+     * @return the baseline of the message.
+     */
+    public MessageBaseline getSentBaseline(MessageConcept concept) {
+        return this.sentBaselines.computeIfAbsent(concept, MessageConcept::createBaseline);
+    }
+
+    /**
+     * Discards the baseline of what the other side last received for the given message, so the next
+     * delta of the message contains every field.
+     *
+     * @param concept the concept of the message.
+     */
+    public void resetSentBaseline(MessageConcept concept) {
+        this.sentBaselines.remove(concept);
+    }
+
+    /**
+     * Gets the baseline of what this side of the connection last received for the given message.
+     *
+     * @param concept the concept of the message.
+     * @return the baseline of the message.
+     */
+    public MessageBaseline getReceivedBaseline(MessageConcept concept) {
+        return this.receivedBaselines.computeIfAbsent(concept, MessageConcept::createBaseline);
+    }
+
+    /**
+     * Gets the dictionary of the values the other side of this connection has received in messages of
+     * the given priority, only used on the server thread.
+     *
+     * @param priority the priority of the message.
+     * @return the dictionary of sent values.
+     */
+    public ConnectionDictionary getSentDictionary(EnumMessagePriority priority) {
+        return this.sentDictionaries[priority.ordinal()];
+    }
+
+    /**
+     * Gets the dictionary of the values this side of the connection has received in messages of the
+     * given priority, only used on the network thread.
+     *
+     * @param priority the priority of the message.
+     * @return the dictionary of received values.
+     */
+    public ConnectionDictionary getReceivedDictionary(EnumMessagePriority priority) {
+        return this.receivedDictionaries[priority.ordinal()];
+    }
+
+    FragmentAssembler getFragmentAssembler() {
+        return this.fragmentAssembler;
+    }
+
+    /**
+     * Gets the streams being read from the other side, opened and closed on the network thread but also
+     * closed from the threads of the streams when consuming fails.
+     */
+    Map<Integer, StreamReceiver.IncomingStream> getIncomingStreams() {
+        return this.incomingStreams;
+    }
+
+    HandlerQueue getMainQueue() {
+        return this.mainQueue;
+    }
+
+    HandlerQueue getWorkerQueue() {
+        return this.workerQueue;
+    }
+
+    InboundLimiter.State getLimiterState() {
+        if (this.limiterState == null) {
+            this.limiterState = new InboundLimiter.State();
+        }
+        return this.limiterState;
+    }
+
+    /**
+     * Gets the bytes that may still be sent to this connection under the bandwidth limit, only used on
+     * the server thread.
+     *
+     * @param burst the capacity of a new budget.
+     */
+    TokenBucket getBandwidthBudget(double burst) {
+        if (this.bandwidthBudget == null) {
+            this.bandwidthBudget = new TokenBucket(burst);
+        }
+        return this.bandwidthBudget;
+    }
+
+    /**
+     * Checks if the baselines or dictionaries of this connection may no longer match the ones of the
+     * other side, nothing is read from a connection once it is out of sync.
+     *
+     * @return true if the connection is out of sync.
+     */
+    public boolean isOutOfSync() {
+        return this.outOfSync.get();
+    }
+
+    /**
+     * Marks this connection as out of sync and disconnects it, later references to the shared state
+     * would silently decode to the wrong values. Safe to call from any thread, only the first call
+     * disconnects.
+     *
+     * @return true if the connection was not out of sync yet.
+     */
+    boolean markOutOfSync() {
+        if (!this.outOfSync.compareAndSet(false, true)) {
+            return false;
+        }
+        this.disconnect("Network state out of sync");
+        return true;
+    }
+
+    /**
+     * Disconnects the other side of this connection.
+     *
+     * @param reason the reason shown to the player.
+     */
+    void disconnect(String reason) {
+        StringTextComponent message = new StringTextComponent(reason);
+        INetHandler netHandler = this.manager.getNetHandler();
+        if (netHandler instanceof ServerPlayNetHandler) {
+            ((ServerPlayNetHandler) netHandler).disconnect(message);
+        } else {
+            this.manager.closeChannel(message);
+        }
+    }
+
+    /**
+     * Releases any buffers held for this connection, called once the connection is closed.
+     */
+    void release() {
+        this.fragmentAssembler.release();
+    }
+}
@@ -2,17 +2,36 @@ package com.tridevmc.compound.network.core;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+import com.tridevmc.compound.core.scan.AnnotationIndex;
+import com.tridevmc.compound.network.capture.CaptureReplayer;
+import com.tridevmc.compound.network.capture.CaptureWriter;
 import com.tridevmc.compound.network.marshallers.*;
-import com.tridevmc.compound.network.message.Message;
-import com.tridevmc.compound.network.message.MessageConcept;
-import com.tridevmc.compound.network.message.MessageField;
-import com.tridevmc.compound.network.message.RegisteredMessage;
+import com.tridevmc.compound.network.message.*;
+import com.tridevmc.compound.network.metrics.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.IPacket;
+import net.minecraft.network.NetworkManager;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.LogicalSidedProvider;
 import net.minecraftforge.fml.ModContainer;
-import net.minecraftforge.fml.ModList;
+import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
 import net.minecraftforge.fml.loading.moddiscovery.ModAnnotation;
+import net.minecraftforge.fml.network.NetworkDirection;
+import net.minecraftforge.fml.network.NetworkEvent;
 import net.minecraftforge.fml.network.NetworkRegistry;
+import net.minecraftforge.fml.network.PacketDistributor;
 import net.minecraftforge.fml.network.simple.SimpleChannel;
 import net.minecraftforge.forgespi.language.ModFileScanData;
 import org.apache.commons.lang3.reflect.FieldUtils;
@@ -21,8 +40,19 @@ import org.apache.logging.log4j.Logger;
 import org.apache.maven.artifact.versioning.ArtifactVersion;
 import org.objectweb.asm.Type;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.WildcardType;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -36,15 +66,35 @@ public class CompoundNetwork {
 
     private static final Map<Class<? extends Message>, CompoundNetwork> NETWORKS = Maps.newHashMap();
 
+    /**
+     * The number of discriminators available to messages, the ones above are reserved for internal packets.
+     */
+    private static final int MAX_MESSAGES = 240;
+
     private final Logger logger;
     private final String name;
     private final SimpleChannel networkChannel;
 
     private Map<Class<? extends Message>, MessageConcept> messageConcepts;
+    private MessageConcept[] discriminatedConcepts;
     private Map<String, Marshaller> marshallers;
-    private Map<Class, String> marshallerIds;
+    private MarshallerResolver marshallerResolver;
     private Map<LogicalSide, ICompoundNetworkHandler> handlers;
-
+    private MessageBatcher batcher;
+    private AttributeKey<CompoundConnection> connectionKey;
+    private Map<LogicalSide, FragmentSender> fragmentSenders;
+    private volatile long maxPendingFragmentBytes = 16777216L;
+    private volatile double bandwidthLimit;
+    private volatile double bandwidthBurst;
+    private volatile long maxBacklogBytes = 8388608L;
+    private PlayerIndex playerIndex;
+    private MessageDispatcher dispatcher;
+    private InboundLimiter inboundLimiter;
+    private RequestTracker requestTracker;
+    private StreamSender streamSender;
+    private StreamReceiver streamReceiver;
+    private NetworkMetrics metrics;
+    private volatile CaptureWriter capture;
 
     private CompoundNetwork(ResourceLocation name, String version) {
         this.name = name.getPath();
@@ -54,11 +104,21 @@ public class CompoundNetwork {
                 .networkProtocolVersion(() -> version)
                 .simpleChannel();
         this.messageConcepts = Maps.newHashMap();
+        this.discriminatedConcepts = new MessageConcept[256];
         this.marshallers = Maps.newHashMap();
-        this.marshallerIds = Maps.newHashMap();
+        this.marshallerResolver = new MarshallerResolver();
         this.handlers = Maps.newHashMap();
         this.handlers.put(LogicalSide.CLIENT, new CompoundClientHandler());
         this.handlers.put(LogicalSide.SERVER, new CompoundServerHandler());
+        this.connectionKey = AttributeKey.valueOf("compound:" + name);
+        this.fragmentSenders = Maps.newEnumMap(LogicalSide.class);
+        this.fragmentSenders.put(LogicalSide.CLIENT, new FragmentSender(this));
+        this.fragmentSenders.put(LogicalSide.SERVER, new FragmentSender(this));
+        this.dispatcher = new MessageDispatcher(this);
+        this.inboundLimiter = new InboundLimiter(this);
+        this.requestTracker = new RequestTracker(this);
+        this.streamSender = new StreamSender(this);
+        this.streamReceiver = new StreamReceiver(this);
 
         this.logger = LogManager.getLogger("CompoundNetwork-" + name);
     }
@@ -78,6 +138,7 @@ public class CompoundNetwork {
             network.loadDefaultMarshallers();
             network.discoverMarshallers();
             network.discoverMessages();
+            network.finishCreation();
             return network;
         } catch (Exception e) {
             throw new RuntimeException(String.format(
@@ -87,6 +148,62 @@ public class CompoundNetwork {
         }
     }
 
+    /**
+     * Create a network with the given name from the given message classes using the default marshallers,
+     * for use where no mod scan data is available such as benchmarks and tests.
+     *
+     * @param name     the name to use for the network.
+     * @param version  the protocol version of the network.
+     * @param messages the message classes to register, each annotated with @RegisteredMessage.
+     * @return the created network instance.
+     */
+    public static CompoundNetwork createNetwork(ResourceLocation name, String version, List<Class<? extends Message>> messages) {
+        try {
+            CompoundNetwork network = new CompoundNetwork(name, version);
+            network.loadDefaultMarshallers();
+            for (int discriminator = 0; discriminator < messages.size(); discriminator++) {
+                Class<? extends Message> msgClass = messages.get(discriminator);
+                RegisteredMessage registeredMessage = msgClass.getAnnotation(RegisteredMessage.class);
+                if (registeredMessage == null) {
+                    throw new RuntimeException(String.format(
+                            "Class \"%s\" is not annotated with RegisteredMessage.",
+                            msgClass.getName()));
+                }
+                network.registerMessageClass(msgClass, registeredMessage.destination(), discriminator,
+                        registeredMessage.rateLimit(), registeredMessage.rateBurst());
+            }
+            network.finishCreation();
+            return network;
+        } catch (Exception e) {
+            throw new RuntimeException(String.format(
+                    "Failed to create a CompoundNetwork with channel name %s",
+                    name),
+                    e);
+        }
+    }
+
+    private void finishCreation() {
+        for (MessageConcept concept : this.messageConcepts.values()) {
+            Class<? extends ResponseMessage> responseClass = concept.getResponseClass();
+            if (responseClass == null) {
+                continue;
+            }
+            MessageConcept responseConcept = this.getMsgConcept(responseClass);
+            if (responseConcept == null || responseConcept.getMessageSide() == concept.getMessageSide()) {
+                throw new RuntimeException(String.format(
+                        "Response %s of %s must be registered on the same channel with the opposite destination",
+                        responseClass.getName(), concept.getMessageClass().getName()));
+            }
+        }
+        this.registerBundles();
+        this.metrics = new NetworkMetrics(this.messageConcepts.values().stream()
+                .flatMap(c -> Arrays.stream(EnumMessageDirection.values()).map(c::getMetrics))
+                .collect(Collectors.toList()));
+        MinecraftForge.EVENT_BUS.addListener(this::onServerStarting);
+        MinecraftForge.EVENT_BUS.addListener(this::onServerTick);
+        MinecraftForge.EVENT_BUS.addListener(this::onClientTick);
+    }
+
     /**
      * Finds the network that the given message class is registered to.
      *
@@ -106,20 +223,17 @@ public class CompoundNetwork {
                 this.marshallers.put(id, marshallerMeta.marshaller);
             }
             for (Class type : marshallerMeta.acceptedTypes) {
-                this.marshallerIds.put(type, defaultId);
+                this.marshallerResolver.register(type, defaultId, EnumMarshallerPriority.NORMAL);
             }
         }
     }
 
     private void discoverMarshallers() {
-        List<ModFileScanData.AnnotationData> applicableMarshallers = this.getAnnotationDataOfType(RegisteredMarshaller.class);
+        List<ModFileScanData.AnnotationData> applicableMarshallers = Lists.newArrayList(
+                AnnotationIndex.get().getAnnotations(RegisteredMarshaller.class, "channel", this.name));
 
-        applicableMarshallers.sort(Comparator.comparingInt(
-                o -> {
-                    ModAnnotation.EnumHolder enumHolder = (ModAnnotation.EnumHolder) o.getAnnotationData().getOrDefault("priority", null);
-                    EnumMarshallerPriority priority = enumHolder == null ? EnumMarshallerPriority.NORMAL : EnumMarshallerPriority.valueOf(enumHolder.getValue());
-                    return priority.getRank();
-                }));
+        // Lowest priority first so marshallers of higher priority win any shared ids.
+        applicableMarshallers.sort(Comparator.comparingInt(o -> this.getMarshallerPriority(o).getRank()));
 
         for (ModFileScanData.AnnotationData applicableMarshaller : applicableMarshallers) {
             Marshaller marshaller = null;
@@ -157,9 +271,10 @@ public class CompoundNetwork {
                 this.marshallers.put(id, marshaller);
             }
 
+            EnumMarshallerPriority priority = this.getMarshallerPriority(applicableMarshaller);
             for (Type acceptedType : acceptedTypes) {
                 try {
-                    this.marshallerIds.put(Class.forName(acceptedType.getClassName()), ids.get(0));
+                    this.marshallerResolver.register(Class.forName(acceptedType.getClassName()), ids.get(0), priority);
                 } catch (ClassNotFoundException e) {
                     throw new RuntimeException(String.format(
                             "Failed to find class to marshall with name %s",
@@ -170,116 +285,1031 @@ public class CompoundNetwork {
         }
     }
 
+    private EnumMarshallerPriority getMarshallerPriority(ModFileScanData.AnnotationData marshallerData) {
+        ModAnnotation.EnumHolder enumHolder = (ModAnnotation.EnumHolder) marshallerData.getAnnotationData().getOrDefault("priority", null);
+        return enumHolder == null ? EnumMarshallerPriority.NORMAL : EnumMarshallerPriority.valueOf(enumHolder.getValue());
+    }
+
     private void discoverMessages() {
-        List<ModFileScanData.AnnotationData> applicableMessages = this.getAnnotationDataOfType(RegisteredMessage.class);
+        List<ModFileScanData.AnnotationData> applicableMessages = AnnotationIndex.get()
+                .getAnnotations(RegisteredMessage.class, "channel", this.name);
 
         int currentDiscriminator = 0;
         for (ModFileScanData.AnnotationData registeredMessage : applicableMessages) {
             Map<String, Object> annotationInfo = registeredMessage.getAnnotationData();
 
-            String networkChannel = (String) annotationInfo.get("channel");
-
-            if (Objects.equals(networkChannel, this.name)) {
-                // Found a message that can be registered for this network instance.
-                ModAnnotation.EnumHolder destinationHolder = (ModAnnotation.EnumHolder) annotationInfo.get("destination");
-                LogicalSide destination = LogicalSide.valueOf(destinationHolder.getValue());
-                Class<? extends Message> msgClass;
-                try {
-                    msgClass = (Class<? extends Message>) Class
-                            .forName(registeredMessage.getMemberName());
-                    msgClass.getConstructor();
-                } catch (ClassNotFoundException e) {
-                    throw new RuntimeException(String.format(
-                            "Unable to find class: %s for registered message.",
-                            registeredMessage.getMemberName()),
-                            e);
-                } catch (ClassCastException e) {
-                    throw new RuntimeException(String.format(
-                            "Class \"%s\" annotated with RegisteredMessage does not extend Message.",
-                            registeredMessage.getMemberName()),
-                            e);
-                } catch (NoSuchMethodException e) {
-                    throw new RuntimeException(String.format(
-                            "Class \"%s\" does not have an empty constructor available, this is required for networking.",
-                            registeredMessage.getMemberName()),
-                            e);
-                }
-
-                this.createConcept(msgClass, destination);
-                this.registerMessage(msgClass, destination, currentDiscriminator);
-                currentDiscriminator++;
+            ModAnnotation.EnumHolder destinationHolder = (ModAnnotation.EnumHolder) annotationInfo.get("destination");
+            LogicalSide destination = LogicalSide.valueOf(destinationHolder.getValue());
+            Class<? extends Message> msgClass;
+            try {
+                msgClass = (Class<? extends Message>) Class
+                        .forName(registeredMessage.getMemberName());
+                msgClass.getConstructor();
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(String.format(
+                        "Unable to find class: %s for registered message.",
+                        registeredMessage.getMemberName()),
+                        e);
+            } catch (ClassCastException e) {
+                throw new RuntimeException(String.format(
+                        "Class \"%s\" annotated with RegisteredMessage does not extend Message.",
+                        registeredMessage.getMemberName()),
+                        e);
+            } catch (NoSuchMethodException e) {
+                throw new RuntimeException(String.format(
+                        "Class \"%s\" does not have an empty constructor available, this is required for networking.",
+                        registeredMessage.getMemberName()),
+                        e);
             }
+
+            // Defaults are left out of the scan data.
+            double rateLimit = ((Number) annotationInfo.getOrDefault("rateLimit", 0)).doubleValue();
+            int rateBurst = ((Number) annotationInfo.getOrDefault("rateBurst", 0)).intValue();
+            this.registerMessageClass(msgClass, destination, currentDiscriminator, rateLimit, rateBurst);
+            currentDiscriminator++;
         }
     }
 
-    private List<ModFileScanData.AnnotationData> getAnnotationDataOfType(Class annotation) {
-        List<ModFileScanData> modScanData = ModList.get().getAllScanData();
-        ArrayList<ModFileScanData.AnnotationData> out = Lists.newArrayList();
-        String annotationName = annotation.getName();
-
-        modScanData.forEach((m) -> m.getAnnotations().stream().filter(a -> Objects.equals(a.getAnnotationType().getClassName(), annotationName)).forEach(a -> {
-            Map<String, Object> annotationInfo = a.getAnnotationData();
-            String channel = (String) annotationInfo.get("channel");
-            if (Objects.equals(channel, this.name)) {
-                out.add(a);
-            }
-        }));
-
-        return out;
+    private void registerMessageClass(Class<? extends Message> msgClass, LogicalSide destination, int discriminator,
+                                      double rateLimit, int rateBurst) {
+        if (discriminator >= MAX_MESSAGES) {
+            throw new RuntimeException(String.format(
+                    "Unable to register %s, networks are limited to %s messages.",
+                    msgClass.getName(), MAX_MESSAGES));
+        }
+        this.createConcept(msgClass, destination, discriminator);
+        this.inboundLimiter.setMessageLimit(this.getMsgConcept(msgClass), rateLimit, rateBurst);
+        this.registerMessage(msgClass, discriminator);
     }
 
-    private void createConcept(Class<? extends Message> msgClass, LogicalSide destination) {
+    private void createConcept(Class<? extends Message> msgClass, LogicalSide destination, int discriminator) {
         List<Field> usableFields = FieldUtils.getAllFieldsList(msgClass).stream().filter(field -> {
             Class fieldDeclarer = field.getDeclaringClass();
-            return !fieldDeclarer.equals(Message.class) && !fieldDeclarer.equals(Object.class);
+            return !fieldDeclarer.equals(Message.class) && !fieldDeclarer.equals(Object.class)
+                    && !fieldDeclarer.equals(RequestMessage.class) && !fieldDeclarer.equals(ResponseMessage.class);
         }).collect(Collectors.toList());
 
-        List<MessageField> messageFields = usableFields.stream().map(field -> {
-            String marshallerId = this.getMarshallerIdFor(field);
-            return this.marshallers.get(marshallerId).getMessageField(field);
-        }).collect(Collectors.toList());
+        List<MessageField> messageFields = usableFields.stream()
+                .map(field -> this.getMarshallerFor(field).getMessageField(field))
+                .collect(Collectors.toList());
 
-        MessageConcept msgConcept = new MessageConcept(this, msgClass, new ArrayList<>(messageFields), destination);
+        MessageWirePlan wirePlan = MessageWirePlan.create(messageFields);
+        IMessageCodec codec;
+        try {
+            codec = MessageCodecGenerator.generate(msgClass, wirePlan);
+        } catch (Exception e) {
+            this.logger.warn("Failed to generate codec for {}, falling back to reflection. Caused by {}", msgClass.getName(), e);
+            codec = new ReflectiveMessageCodec(wirePlan);
+        }
+
+        MessageConcept msgConcept = new MessageConcept(this, msgClass, wirePlan, codec, destination, discriminator);
         this.messageConcepts.put(msgClass, msgConcept);
+        this.discriminatedConcepts[discriminator] = msgConcept;
     }
 
-    private String getMarshallerIdFor(Field field) {
+    private Marshaller getMarshallerFor(Field field) {
         if (field.isAnnotationPresent(SetMarshaller.class)) {
-            return field.getAnnotation(SetMarshaller.class).value();
+            String marshallerId = field.getAnnotation(SetMarshaller.class).value();
+            Marshaller marshaller = this.marshallers.get(marshallerId);
+            if (marshaller == null) {
+                throw new RuntimeException(String.format(
+                        "Unable to find marshaller with id %s for field %s",
+                        marshallerId, field.getName()));
+            }
+
+            // A marshaller set on an array that isn't registered for the array type is used for the elements.
+            Class<?> fieldClass = field.getType();
+            if (fieldClass.isArray() && this.marshallers.get(this.marshallerResolver.getRegisteredId(fieldClass)) != marshaller) {
+                return this.getArrayMarshaller(fieldClass, marshaller.specialize(fieldClass.getComponentType()));
+            }
+            return marshaller.specialize(fieldClass);
         }
-        Class fieldClass = field.getType();
-        String marshallerId = this.marshallerIds.getOrDefault(fieldClass, null);
-        if (marshallerId == null) {
-            Optional<Class> matchingClass = this.marshallerIds.keySet().stream()
-                    .filter(c -> c.isAssignableFrom(fieldClass)).findFirst();
 
-            if (matchingClass.isPresent()) {
-                marshallerId = this.marshallerIds.get(matchingClass.get());
-            } else {
-                throw new RuntimeException(
-                        "Unable to find marshaller id for " + fieldClass.getName());
+        try {
+            return this.getMarshallerFor(field.getGenericType());
+        } catch (RuntimeException e) {
+            throw new RuntimeException(String.format(
+                    "Unable to find marshaller for field %s in %s",
+                    field.getName(), field.getDeclaringClass().getName()),
+                    e);
+        }
+    }
+
+    /**
+     * Finds a marshaller for the given type, resolving the element types of arrays and collections so
+     * they can be marshalled without any field context.
+     */
+    private Marshaller getMarshallerFor(java.lang.reflect.Type type) {
+        if (type instanceof Class) {
+            Class<?> typeClass = (Class<?>) type;
+            String marshallerId = this.marshallerResolver.getRegisteredId(typeClass);
+            if (marshallerId == null && typeClass.isArray()) {
+                return this.getArrayMarshaller(typeClass, this.getMarshallerFor(typeClass.getComponentType()));
+            }
+            if (marshallerId == null) {
+                marshallerId = this.getMarshallerIdFor(typeClass);
+            }
+            return this.marshallers.get(marshallerId).specialize(typeClass);
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> rawClass = (Class<?>) parameterizedType.getRawType();
+            if (this.marshallerResolver.getRegisteredId(rawClass) == null) {
+                Marshaller collectionMarshaller = this.getCollectionMarshaller(rawClass, parameterizedType.getActualTypeArguments());
+                if (collectionMarshaller != null) {
+                    return collectionMarshaller;
+                }
             }
+            return this.getMarshallerFor(rawClass);
+        } else if (type instanceof GenericArrayType) {
+            java.lang.reflect.Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            Class<?> componentClass = TypeToken.of(componentType).getRawType();
+            return new ArrayMarshaller(componentClass, this.getMarshallerFor(componentType));
+        } else if (type instanceof WildcardType) {
+            return this.getMarshallerFor(((WildcardType) type).getUpperBounds()[0]);
+        }
+
+        throw new RuntimeException("Unable to find marshaller for type " + type.getTypeName());
+    }
+
+    private Marshaller getArrayMarshaller(Class<?> arrayClass, Marshaller elementMarshaller) {
+        Class<?> componentClass = arrayClass.getComponentType();
+        if (componentClass.isPrimitive()) {
+            if (elementMarshaller.getPrimitiveType() != componentClass) {
+                throw new RuntimeException(String.format(
+                        "Marshaller for elements of %s must be a primitive marshaller of the same type",
+                        arrayClass.getSimpleName()));
+            }
+            return new PrimitiveArrayMarshaller(elementMarshaller);
+        }
+        return new ArrayMarshaller(componentClass, elementMarshaller);
+    }
+
+    private Marshaller getCollectionMarshaller(Class<?> rawClass, java.lang.reflect.Type[] typeArguments) {
+        if (rawClass == Optional.class) {
+            return new OptionalMarshaller(this.getMarshallerFor(typeArguments[0]));
+        } else if (rawClass == EnumSet.class) {
+            return new EnumSetMarshaller(TypeToken.of(typeArguments[0]).getRawType());
+        } else if (Map.class.isAssignableFrom(rawClass) && MapMarshaller.getFactory(rawClass) != null) {
+            return new MapMarshaller(this.getMarshallerFor(typeArguments[0]), this.getMarshallerFor(typeArguments[1]),
+                    MapMarshaller.getFactory(rawClass));
+        } else if (Collection.class.isAssignableFrom(rawClass) && CollectionMarshaller.getFactory(rawClass) != null) {
+            return new CollectionMarshaller(this.getMarshallerFor(typeArguments[0]),
+                    CollectionMarshaller.getFactory(rawClass));
+        }
+        return null;
+    }
+
+    private String getMarshallerIdFor(Class fieldClass) {
+        String marshallerId = this.marshallerResolver.resolve(fieldClass);
+        if (marshallerId == null) {
+            throw new RuntimeException(
+                    "Unable to find marshaller id for " + fieldClass.getName());
         }
 
         return marshallerId;
     }
 
-    private <M extends Message> void registerMessage(Class<M> msgClass, LogicalSide side, int discriminator) {
-        ICompoundNetworkHandler handler = this.handlers.get(side);
+    /**
+     * Reserves the discriminator of the given message on the channel, messages are only ever sent in
+     * bundles so a packet with the discriminator of a message is skipped without being decoded and
+     * counted as a violation of the rate limits.
+     */
+    private <M extends Message> void registerMessage(Class<M> msgClass, int discriminator) {
+        MessageConcept concept = this.getMsgConcept(msgClass);
         this.networkChannel.messageBuilder(msgClass, discriminator)
-                .encoder(this.getMsgConcept(msgClass)::toBytes)
-                .decoder(this.getMsgConcept(msgClass)::fromBytes)
-                .consumer((m, ctx) -> handler.handle(m, ctx.get()))
+                .decoder(buf -> {
+                    buf.skipBytes(buf.readableBytes());
+                    return null;
+                })
+                .consumer((m, ctx) -> {
+                    ctx.get().setPacketHandled(true);
+                    if (ctx.get().getDirection().getReceptionSide() == LogicalSide.SERVER) {
+                        this.inboundLimiter.rejectUnbundled(this.getConnection(ctx.get().getNetworkManager()), concept);
+                    }
+                })
                 .add();
 
         NETWORKS.put(msgClass, this);
     }
 
+    private void registerBundles() {
+        this.networkChannel.messageBuilder(MessageBundle.class, MessageBundle.DISCRIMINATOR)
+                .encoder(MessageBundle::encode)
+                .decoder(MessageBundle::decode)
+                .consumer((b, ctx) -> {
+                    ctx.get().setPacketHandled(true);
+                    CompoundConnection connection = this.getConnection(ctx.get().getNetworkManager());
+                    if (!connection.getFragmentAssembler().offer(b, this.maxPendingFragmentBytes)) {
+                        // Skipping a bundle would leave the baselines and dictionaries of its entries behind.
+                        this.desync(connection, "too many bundles are waiting on unfinished transfers");
+                        return;
+                    }
+                    this.handleBundles(connection, ctx.get());
+                })
+                .add();
+        this.networkChannel.messageBuilder(MessageFragment.class, MessageFragment.DISCRIMINATOR)
+                .encoder(MessageFragment::encode)
+                .decoder(MessageFragment::decode)
+                .consumer((f, ctx) -> {
+                    ctx.get().setPacketHandled(true);
+                    CompoundConnection connection = this.getConnection(ctx.get().getNetworkManager());
+                    try {
+                        connection.getFragmentAssembler().accept(f, this.maxPendingFragmentBytes);
+                    } catch (RuntimeException e) {
+                        // Bundles that were waiting on a discarded transfer can still be read.
+                        this.logger.error("Failed to assemble fragment, caused by {}", e);
+                    }
+                    this.handleBundles(connection, ctx.get());
+                })
+                .add();
+        this.networkChannel.messageBuilder(StreamPacket.class, StreamPacket.DISCRIMINATOR)
+                .encoder(StreamPacket::encode)
+                .decoder(StreamPacket::decode)
+                .consumer((p, ctx) -> {
+                    ctx.get().setPacketHandled(true);
+                    try {
+                        if (p.getType() == StreamPacket.CREDIT || p.getType() == StreamPacket.REJECT) {
+                            this.streamSender.accept(p, ctx.get());
+                        } else {
+                            this.streamReceiver.accept(p, ctx.get(), this.getConnection(ctx.get().getNetworkManager()));
+                        }
+                    } catch (RuntimeException e) {
+                        this.logger.error("Failed to handle stream packet, caused by {}", e);
+                    }
+                })
+                .add();
+    }
+
+    private void handleBundles(CompoundConnection connection, NetworkEvent.Context ctx) {
+        // Handlers may run later on another thread, the packet itself is handled once it is read.
+        MessageBundle bundle;
+        while ((bundle = connection.getFragmentAssembler().poll()) != null) {
+            List<Message> messages = bundle.readMessages(this, connection);
+            for (Message msg : messages) {
+                // Dispatch in the order the messages were sent.
+                MessageConcept concept = this.getMsgConcept(msg);
+                LogicalSide side = concept.getMessageSide();
+                this.dispatcher.dispatch(concept.getHandlerThread(), side, this.handlers.get(side), msg, ctx, connection);
+            }
+        }
+    }
+
+    /**
+     * Gets the state this network keeps for the given connection, creating it if needed.
+     *
+     * @param manager the connection to get the state of.
+     * @return the state of the connection.
+     */
+    public CompoundConnection getConnection(NetworkManager manager) {
+        Attribute<CompoundConnection> attribute = manager.channel().attr(this.connectionKey);
+        CompoundConnection connection = attribute.get();
+        if (connection == null) {
+            connection = new CompoundConnection(manager);
+            CompoundConnection existingConnection = attribute.setIfAbsent(connection);
+            if (existingConnection != null) {
+                connection = existingConnection;
+            } else {
+                CompoundConnection createdConnection = connection;
+                manager.channel().closeFuture().addListener(f -> {
+                    createdConnection.release();
+                    this.requestTracker.release(manager);
+                    this.streamSender.release(manager);
+                    this.streamReceiver.release(createdConnection);
+                });
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Enables or disables batching, when enabled messages sent to players from the server thread are
+     * queued and sent as a single bundle per player at the end of the server tick.
+     * <p>
+     * Sends that can't be resolved to individual players, such as sendToAllAround and tracking an
+     * entity, are never batched and may arrive before messages queued earlier in the same tick.
+     * Should only be changed from the server thread or before the server starts.
+     *
+     * @param batching true to enable batching, false to disable it.
+     */
+    public void setBatching(boolean batching) {
+        if (batching && this.batcher == null) {
+            this.batcher = new MessageBatcher(this);
+        } else if (!batching && this.batcher != null) {
+            this.batcher.flush(false);
+            this.batcher = null;
+        }
+    }
+
+    public boolean isBatching() {
+        return this.batcher != null;
+    }
+
+    /**
+     * Sets the most memory the fragments of unfinished transfers may hold per connection, transfers
+     * that would exceed this are dropped. Bundles received after an unfinished transfer wait for it so
+     * messages are handled in the order they were sent, connections exceeding this limit with waiting
+     * bundles are disconnected.
+     *
+     * @param maxPendingFragmentBytes the limit in bytes.
+     */
+    public void setMaxPendingFragmentBytes(long maxPendingFragmentBytes) {
+        this.maxPendingFragmentBytes = maxPendingFragmentBytes;
+    }
+
+    public long getMaxPendingFragmentBytes() {
+        return this.maxPendingFragmentBytes;
+    }
+
+    /**
+     * Limits the bytes of batched messages sent to each player, messages over the limit wait in the lane
+     * of their priority and are sent in later ticks with messages of a higher priority going first.
+     * <p>
+     * Only batched messages count towards the limit, fragments of oversized messages and streams are
+     * already sent a little at a time.
+     *
+     * @param bytesPerSecond the bytes sent to each player per second, or 0 for no limit.
+     * @param burstBytes     the bytes that may be sent to a player at once, or 0 to allow one second worth of bytes.
+     */
+    public void setBandwidthLimit(double bytesPerSecond, double burstBytes) {
+        this.bandwidthBurst = burstBytes > 0 ? burstBytes : bytesPerSecond;
+        this.bandwidthLimit = bytesPerSecond;
+    }
+
+    public double getBandwidthLimit() {
+        return this.bandwidthLimit;
+    }
+
+    public double getBandwidthBurst() {
+        return this.bandwidthBurst;
+    }
+
+    /**
+     * Sets the most bytes that may wait for a single player under the bandwidth limit, once exceeded the
+     * limit is ignored for that player until the backlog has been sent.
+     *
+     * @param maxBacklogBytes the limit in bytes.
+     */
+    public void setMaxBacklogBytes(long maxBacklogBytes) {
+        this.maxBacklogBytes = maxBacklogBytes;
+    }
+
+    public long getMaxBacklogBytes() {
+        return this.maxBacklogBytes;
+    }
+
+    /**
+     * Gets the bytes of batched messages waiting to be sent to all players.
+     *
+     * @return the queued bytes, or 0 if batching is disabled.
+     */
+    public long getQueuedBytes() {
+        MessageBatcher batcher = this.batcher;
+        return batcher != null ? batcher.getQueuedBytes() : 0;
+    }
+
+    /**
+     * Sets the most time the handlers of main thread messages may take each tick, messages left over
+     * are handled in the next tick.
+     *
+     * @param budgetNanos the budget in nanoseconds.
+     */
+    public void setHandlerBudgetNanos(long budgetNanos) {
+        this.dispatcher.setBudgetNanos(budgetNanos);
+    }
+
+    public long getHandlerBudgetNanos() {
+        return this.dispatcher.getBudgetNanos();
+    }
+
+    /**
+     * Sets the most main thread or worker messages that may be waiting to be handled per connection,
+     * messages received while the queue is full are dropped.
+     *
+     * @param queueCapacity the capacity of the queues.
+     */
+    public void setHandlerQueueCapacity(int queueCapacity) {
+        this.dispatcher.setQueueCapacity(queueCapacity);
+    }
+
+    public int getHandlerQueueCapacity() {
+        return this.dispatcher.getQueueCapacity();
+    }
+
+    /**
+     * Gets the number of messages dropped because too many were waiting to be handled.
+     *
+     * @return the number of dropped messages.
+     */
+    public long getDroppedMessages() {
+        return this.dispatcher.getDroppedMessages();
+    }
+
+    /**
+     * Sets how many of the given message a single player may send to the server per second, overriding
+     * the limit set by its annotation.
+     *
+     * @param msgClass the class of the server bound message to limit.
+     * @param rate     the messages allowed per second, or 0 for no limit.
+     * @param burst    the messages allowed at once, or 0 to allow one second worth of messages.
+     */
+    public void setRateLimit(Class<? extends Message> msgClass, double rate, int burst) {
+        this.inboundLimiter.setMessageLimit(this.getMsgConcept(msgClass), rate, burst);
+    }
+
+    /**
+     * Sets how many messages of this network a single player may send to the server per second in total.
+     *
+     * @param rate  the messages allowed per second, or 0 for no limit.
+     * @param burst the messages allowed at once, or 0 to allow one second worth of messages.
+     */
+    public void setConnectionRateLimit(double rate, int burst) {
+        this.inboundLimiter.setConnectionLimit(rate, burst);
+    }
+
+    /**
+     * Sets how many messages a player may have rejected at once before they are kicked, a tenth of
+     * this is forgiven every second so only sustained abuse leads to a kick.
+     *
+     * @param kickThreshold the rejected messages allowed at once, or 0 to never kick.
+     */
+    public void setRateLimitKickThreshold(int kickThreshold) {
+        this.inboundLimiter.setKickThreshold(kickThreshold);
+    }
+
+    public int getRateLimitKickThreshold() {
+        return this.inboundLimiter.getKickThreshold();
+    }
+
+    /**
+     * Gets the number of the given message rejected for exceeding a rate limit.
+     *
+     * @param msgClass the class of the message.
+     * @return the number of rejected messages.
+     */
+    public long getRejectedMessages(Class<? extends Message> msgClass) {
+        return this.inboundLimiter.getRejectedMessages(this.getMsgConcept(msgClass));
+    }
+
+    /**
+     * Gets the number of messages rejected for exceeding a rate limit.
+     *
+     * @return the number of rejected messages.
+     */
+    public long getRejectedMessages() {
+        return this.inboundLimiter.getRejectedMessages();
+    }
+
+    /**
+     * Gets the number of players kicked for exceeding the rate limits.
+     *
+     * @return the number of kicked players.
+     */
+    public long getKickedConnections() {
+        return this.inboundLimiter.getKickedConnections();
+    }
+
+    /**
+     * Sets how long requests sent without a timeout of their own wait for their response before failing.
+     *
+     * @param timeoutMillis the timeout in milliseconds, or 0 to wait until the connection closes.
+     */
+    public void setRequestTimeoutMillis(long timeoutMillis) {
+        this.requestTracker.setTimeoutMillis(timeoutMillis);
+    }
+
+    public long getRequestTimeoutMillis() {
+        return this.requestTracker.getTimeoutMillis();
+    }
+
+    /**
+     * Gets the number of requests sent by this side that are still waiting for a response.
+     *
+     * @return the number of pending requests.
+     */
+    public int getPendingRequests() {
+        return this.requestTracker.getPendingRequests();
+    }
+
+    RequestTracker getRequestTracker() {
+        return this.requestTracker;
+    }
+
+    /**
+     * Registers the handler of the streams opened with the given name by the other side, replacing any
+     * handler registered with the name before.
+     *
+     * @param name    the name of the streams to handle.
+     * @param thread  the thread the handler and the consumers it returns are called on.
+     * @param handler the handler of the streams.
+     */
+    public void registerStreamHandler(String name, EnumHandlerThread thread, IStreamHandler handler) {
+        this.streamReceiver.register(name, thread, handler);
+    }
+
+    /**
+     * Sets how many chunks of a stream this side lets the sender send ahead of what has been consumed,
+     * only applies to streams opened afterwards.
+     *
+     * @param chunks the size of the window in chunks of {@link StreamPacket#CHUNK_SIZE} bytes.
+     */
+    public void setStreamWindow(int chunks) {
+        this.streamReceiver.setWindow(chunks);
+    }
+
+    public int getStreamWindow() {
+        return this.streamReceiver.getWindow();
+    }
+
+    /**
+     * Gets the number of streams sent by this side that have not finished yet.
+     *
+     * @return the number of open streams.
+     */
+    public int getOpenStreams() {
+        return this.streamSender.getOpenStreams();
+    }
+
+    /**
+     * Streams the given source to the given player, the source is only read as fast as the client
+     * consumes it.
+     *
+     * @param player the player to stream to.
+     * @param name   the name the client registered the handler of the stream with.
+     * @param source the data to stream, closed once the stream is done.
+     * @param length the number of bytes in the source, or -1 if unknown.
+     * @return a future completed once the source has been sent, cancel it to abort the stream.
+     */
+    public CompletableFuture<Void> openStream(ServerPlayerEntity player, String name, ReadableByteChannel source, long length) {
+        NetworkManager manager = player.connection.netManager;
+        CompletableFuture<Void> future = this.streamSender.open(name, source, length, manager,
+                p -> this.networkChannel.sendTo(p, manager, NetworkDirection.PLAY_TO_CLIENT));
+        // Makes sure the stream fails when the connection closes.
+        this.getConnection(manager);
+        return future;
+    }
+
+    /**
+     * Streams the given source to the given player, see {@link #openStream(ServerPlayerEntity, String, ReadableByteChannel, long)}.
+     *
+     * @param player the player to stream to.
+     * @param name   the name the client registered the handler of the stream with.
+     * @param source the data to stream, closed once the stream is done.
+     * @return a future completed once the source has been sent, cancel it to abort the stream.
+     */
+    public CompletableFuture<Void> openStream(ServerPlayerEntity player, String name, InputStream source) {
+        return this.openStream(player, name, Channels.newChannel(source), -1);
+    }
+
+    /**
+     * Streams the given source to the server, the source is only read as fast as the server consumes it.
+     *
+     * @param name   the name the server registered the handler of the stream with.
+     * @param source the data to stream, closed once the stream is done.
+     * @param length the number of bytes in the source, or -1 if unknown.
+     * @return a future completed once the source has been sent, cancel it to abort the stream.
+     */
+    public CompletableFuture<Void> openStreamToServer(String name, ReadableByteChannel source, long length) {
+        return this.streamSender.open(name, source, length, null, this.networkChannel::sendToServer);
+    }
+
+    /**
+     * Streams the given source to the server, see {@link #openStreamToServer(String, ReadableByteChannel, long)}.
+     *
+     * @param name   the name the server registered the handler of the stream with.
+     * @param source the data to stream, closed once the stream is done.
+     * @return a future completed once the source has been sent, cancel it to abort the stream.
+     */
+    public CompletableFuture<Void> openStreamToServer(String name, InputStream source) {
+        return this.openStreamToServer(name, Channels.newChannel(source), -1);
+    }
+
+    MessageDispatcher getDispatcher() {
+        return this.dispatcher;
+    }
+
+    ICompoundNetworkHandler getHandler(LogicalSide side) {
+        return this.handlers.get(side);
+    }
+
+    InboundLimiter getInboundLimiter() {
+        return this.inboundLimiter;
+    }
+
+    /**
+     * Gets the live metrics of the given message in the given direction, totals since the network was
+     * created.
+     *
+     * @param msgClass  the class of the message.
+     * @param direction the direction of the message.
+     * @return the metrics of the message.
+     */
+    public MessageMetrics getMetrics(Class<? extends Message> msgClass, EnumMessageDirection direction) {
+        return this.getMsgConcept(msgClass).getMetrics(direction);
+    }
+
+    /**
+     * Gets what was recorded for the given message in the given direction over the last seconds.
+     *
+     * @param msgClass      the class of the message.
+     * @param direction     the direction of the message.
+     * @param windowSeconds the length of the window in seconds, at most a minute.
+     * @return the metrics of the message over the window.
+     */
+    public MetricsSnapshot getMetrics(Class<? extends Message> msgClass, EnumMessageDirection direction, int windowSeconds) {
+        return this.metrics.getWindow(this.getMetrics(msgClass, direction), windowSeconds);
+    }
+
+    /**
+     * Gets the messages that used the most bandwidth in the given direction over the last seconds.
+     *
+     * @param direction     the direction of the messages.
+     * @param count         the most messages to return.
+     * @param windowSeconds the length of the window in seconds, at most a minute.
+     * @return the metrics of the messages over the window, largest first.
+     */
+    public List<MetricsSnapshot> getTopMessages(EnumMessageDirection direction, int count, int windowSeconds) {
+        return this.metrics.getTop(direction, count, windowSeconds);
+    }
+
+    /**
+     * Starts recording every message sent or received by this network to a memory-mapped ring file at
+     * the given path, replacing any capture that is already running. Once the file is full the oldest
+     * messages are overwritten.
+     * <p>
+     * Messages are recorded as they are encoded, so a message sent to several players at once is only
+     * recorded once without a player. Captures can be replayed with a {@link CaptureReplayer} on a
+     * network created with the same messages.
+     *
+     * @param file     the path of the capture file.
+     * @param capacity the size of the file in bytes, at most 2GB.
+     */
+    public synchronized void startCapture(Path file, int capacity) {
+        this.stopCapture();
+        try {
+            this.capture = new CaptureWriter(file, capacity);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to start capture of %s to %s", this.name, file), e);
+        }
+    }
+
+    /**
+     * Stops the running capture and flushes it to disk, does nothing if no capture is running.
+     */
+    public synchronized void stopCapture() {
+        CaptureWriter capture = this.capture;
+        if (capture == null) {
+            return;
+        }
+        this.capture = null;
+        try {
+            capture.close();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to close capture of %s", this.name), e);
+        }
+    }
+
+    public boolean isCapturing() {
+        return this.capture != null;
+    }
+
+    @Nullable
+    CaptureWriter getCapture() {
+        return this.capture;
+    }
+
+    /**
+     * Gets the players in the given box of the given dimension, only looking at the players in the
+     * chunks the box covers.
+     * <p>
+     * Players are indexed by the chunk they were in at the start of the tick, must be called from the
+     * server thread.
+     *
+     * @param dimension the dimension the box is in.
+     * @param box       the box the players should be in.
+     * @return the players in the box.
+     */
+    public List<ServerPlayerEntity> getPlayersInBox(DimensionType dimension, AxisAlignedBB box) {
+        return this.getPlayerIndex().getPlayersInBox(dimension, box);
+    }
+
+    /**
+     * Gets the players within the given distance of the given point in the given dimension, only
+     * looking at the players in the chunks the radius covers.
+     * <p>
+     * Players are indexed by the chunk they were in at the start of the tick, must be called from the
+     * server thread.
+     *
+     * @param dimension the dimension the point is in.
+     * @param x         the x coordinate of the point.
+     * @param y         the y coordinate of the point.
+     * @param z         the z coordinate of the point.
+     * @param radius    the distance from the point the players should be within.
+     * @return the players within the radius.
+     */
+    public List<ServerPlayerEntity> getPlayersInRadius(DimensionType dimension, double x, double y, double z, double radius) {
+        return this.getPlayerIndex().getPlayersInRadius(dimension, x, y, z, radius);
+    }
+
+    /**
+     * Gets the players in any of the given chunks of the given dimension.
+     * <p>
+     * Players are indexed by the chunk they were in at the start of the tick, must be called from the
+     * server thread.
+     *
+     * @param dimension the dimension the chunks are in.
+     * @param chunks    the chunks the players should be in.
+     * @return the players in the chunks.
+     */
+    public List<ServerPlayerEntity> getPlayersInChunks(DimensionType dimension, Collection<ChunkPos> chunks) {
+        return this.getPlayerIndex().getPlayersInChunks(dimension, chunks);
+    }
+
+    private PlayerIndex getPlayerIndex() {
+        if (this.playerIndex == null) {
+            // Only networks that use spatial sends pay for keeping the index up to date.
+            this.playerIndex = new PlayerIndex();
+            this.playerIndex.update(this.getServerPlayers());
+        }
+        return this.playerIndex;
+    }
+
+    private List<ServerPlayerEntity> getServerPlayers() {
+        MinecraftServer server = LogicalSidedProvider.INSTANCE.get(LogicalSide.SERVER);
+        return server.getPlayerList().getPlayers();
+    }
+
+    /**
+     * Sends the given message to the given player, queueing it for the end of the tick if batching is
+     * enabled and this is called from the server thread.
+     * <p>
+     * Messages sent to a player are handled in the order they were sent, oversized messages included.
+     * Batched messages of different priorities may be reordered, messages of the same priority are not.
+     *
+     * @param msg    the message to send.
+     * @param player the player to send the message to.
+     */
+    public void sendTo(Message msg, ServerPlayerEntity player) {
+        NetworkManager manager = player.connection.netManager;
+        MessageBatcher batcher = this.batcher;
+        boolean onServerThread = player.server.isOnExecutionThread();
+        if (batcher != null && onServerThread) {
+            batcher.queue(manager, msg);
+            return;
+        }
+
+        // Deltas are only written on the server thread so the baselines see sends in the order they happen.
+        CompoundConnection connection = onServerThread ? this.getConnection(manager) : null;
+        ByteBuf payload = this.encode(msg, connection);
+        try {
+            this.sendPayload(payload, manager);
+        } catch (RuntimeException e) {
+            if (connection != null) {
+                // The entry already updated the baselines and dictionaries it was written against.
+                this.desync(connection, "failed to send %s after encoding it", msg.getClass().getName());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the given request to the given player, waiting for the response for the default request
+     * timeout.
+     *
+     * @param msg    the request to send.
+     * @param player the player to send the request to.
+     * @param <R>    the type of the response.
+     * @return the future response of the client.
+     */
+    public <R extends ResponseMessage> CompletableFuture<R> sendTo(RequestMessage<R> msg, ServerPlayerEntity player) {
+        return this.sendTo(msg, player, this.requestTracker.getTimeoutMillis());
+    }
+
+    /**
+     * Sends the given request to the given player.
+     *
+     * @param msg           the request to send.
+     * @param player        the player to send the request to.
+     * @param timeoutMillis the time to wait for the response, or 0 to wait until the player disconnects.
+     * @param <R>           the type of the response.
+     * @return the future response of the client.
+     */
+    public <R extends ResponseMessage> CompletableFuture<R> sendTo(RequestMessage<R> msg, ServerPlayerEntity player, long timeoutMillis) {
+        NetworkManager manager = player.connection.netManager;
+        CompletableFuture<R> future = this.requestTracker.track(msg, manager, timeoutMillis);
+        // Makes sure the request fails when the connection closes.
+        this.getConnection(manager);
+        try {
+            this.sendTo((Message) msg, player);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            // The id is only meant for this send, the request is encoded by now.
+            msg.setRequestId(0);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the given message to all the given players, encoding it once and sharing the encoded
+     * payload between all of them.
+     * <p>
+     * Delta encoded messages sent from the server thread differ per player, so they are still encoded
+     * for each player.
+     *
+     * @param msg     the message to send.
+     * @param players the players to send the message to.
+     */
+    public void sendTo(Message msg, Collection<ServerPlayerEntity> players) {
+        if (players.isEmpty()) {
+            return;
+        }
+        boolean onServerThread = players.iterator().next().server.isOnExecutionThread();
+        if (players.size() == 1 || (onServerThread && this.getMsgConcept(msg).isDeltaEncoded())) {
+            players.forEach(p -> this.sendTo(msg, p));
+            return;
+        }
+
+        ByteBuf payload = this.encode(msg, null);
+        this.getMsgConcept(msg).getMetrics(EnumMessageDirection.SENT).recordCopies(players.size() - 1, payload.readableBytes());
+        MessageBatcher batcher = this.batcher;
+        if (batcher != null && onServerThread) {
+            try {
+                for (ServerPlayerEntity player : players) {
+                    batcher.queueEncoded(player.connection.netManager, payload, this.getMsgConcept(msg).getPriority());
+                }
+            } finally {
+                payload.release();
+            }
+        } else {
+            List<NetworkManager> managers = players.stream()
+                    .map(p -> p.connection.netManager)
+                    .collect(Collectors.toList());
+            this.sendPayload(payload, MessageFragment.MAX_CLIENTBOUND_PAYLOAD, LogicalSide.SERVER, p -> {
+                // Build the packet once, each connection copies its data when writing it.
+                IPacket<?> packet = this.networkChannel.toVanillaPacket(p, NetworkDirection.PLAY_TO_CLIENT);
+                managers.forEach(m -> m.sendPacket(packet));
+            });
+        }
+    }
+
+    /**
+     * Sends the given message to all the clients of the given target, each client handles it in the
+     * order it was sent along with the other messages sent to it.
+     *
+     * @param msg    the message to send.
+     * @param target the target to send the message to.
+     */
+    public void send(Message msg, PacketDistributor.PacketTarget target) {
+        ByteBuf payload = this.encode(msg, null);
+        this.sendPayload(payload, MessageFragment.MAX_CLIENTBOUND_PAYLOAD, LogicalSide.SERVER,
+                p -> this.networkChannel.send(target, p));
+    }
+
+    /**
+     * Sends the given message to the server, messages are handled in the order they were sent.
+     *
+     * @param msg the message to send.
+     */
+    public void sendToServer(Message msg) {
+        ByteBuf payload = this.encode(msg, null);
+        this.sendPayload(payload, MessageFragment.MAX_SERVERBOUND_PAYLOAD, LogicalSide.CLIENT,
+                this.networkChannel::sendToServer);
+    }
+
+    /**
+     * Sends the given request to the server, waiting for the response for the default request timeout.
+     *
+     * @param msg the request to send.
+     * @param <R> the type of the response.
+     * @return the future response of the server.
+     */
+    public <R extends ResponseMessage> CompletableFuture<R> sendToServer(RequestMessage<R> msg) {
+        return this.sendToServer(msg, this.requestTracker.getTimeoutMillis());
+    }
+
+    /**
+     * Sends the given request to the server.
+     *
+     * @param msg           the request to send.
+     * @param timeoutMillis the time to wait for the response, or 0 to wait forever.
+     * @param <R>           the type of the response.
+     * @return the future response of the server.
+     */
+    public <R extends ResponseMessage> CompletableFuture<R> sendToServer(RequestMessage<R> msg, long timeoutMillis) {
+        CompletableFuture<R> future = this.requestTracker.track(msg, null, timeoutMillis);
+        try {
+            this.sendToServer((Message) msg);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            msg.setRequestId(0);
+        }
+        return future;
+    }
+
+    private ByteBuf encode(Message msg, @Nullable CompoundConnection connection) {
+        ByteBuf payload = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            MessageBundle.writeEntry(this, this.getMsgConcept(msg), msg, payload, connection);
+        } catch (RuntimeException e) {
+            payload.release();
+            throw e;
+        }
+        return payload;
+    }
+
+    /**
+     * Sends the given bundle payload to the given client and releases it.
+     *
+     * @param payload the entries of the bundle.
+     * @param manager the connection of the client.
+     */
+    void sendPayload(ByteBuf payload, NetworkManager manager) {
+        this.sendPayload(payload, MessageFragment.MAX_CLIENTBOUND_PAYLOAD, LogicalSide.SERVER,
+                p -> this.networkChannel.sendTo(p, manager, NetworkDirection.PLAY_TO_CLIENT));
+    }
+
+    private void sendPayload(ByteBuf payload, int maxPayload, LogicalSide side, Consumer<Object> sink) {
+        try {
+            if (payload.readableBytes() <= maxPayload) {
+                // The channel encodes the bundle into a new packet before returning, so the payload can be released.
+                sink.accept(new MessageBundle(payload));
+            } else {
+                this.fragmentSenders.get(side).queue(payload, sink);
+            }
+        } finally {
+            payload.release();
+        }
+    }
+
+    private void onServerStarting(FMLServerStartingEvent e) {
+        MetricsCommand.register(e.getCommandDispatcher(), this.name, this.metrics);
+    }
+
+    private void onServerTick(TickEvent.ServerTickEvent e) {
+        if (e.phase == TickEvent.Phase.START) {
+            if (this.playerIndex != null) {
+                this.playerIndex.update(this.getServerPlayers());
+            }
+            this.dispatcher.tick(LogicalSide.SERVER);
+        } else if (e.phase == TickEvent.Phase.END) {
+            MessageBatcher batcher = this.batcher;
+            if (batcher != null) {
+                batcher.flush(true);
+            }
+            this.fragmentSenders.get(LogicalSide.SERVER).tick();
+            this.metrics.tick();
+        }
+    }
+
+    private void onClientTick(TickEvent.ClientTickEvent e) {
+        if (e.phase == TickEvent.Phase.START) {
+            this.dispatcher.tick(LogicalSide.CLIENT);
+        } else if (e.phase == TickEvent.Phase.END) {
+            this.fragmentSenders.get(LogicalSide.CLIENT).tick();
+            this.metrics.tick();
+        }
+    }
+
+    /**
+     * Gets the resolver used to find the marshaller for the type of a field, can be used to find the
+     * marshaller of a value whose type is only known at runtime.
+     *
+     * @return the marshaller resolver of this network.
+     */
+    public MarshallerResolver getMarshallerResolver() {
+        return this.marshallerResolver;
+    }
+
+    /**
+     * Gets the marshaller registered with the given id.
+     *
+     * @param id the id of the marshaller.
+     * @return the marshaller, or null if no marshaller has the id.
+     */
+    @Nullable
+    public Marshaller getMarshaller(String id) {
+        return this.marshallers.get(id);
+    }
 
     public Logger getLogger() {
         return this.logger;
     }
 
+    /**
+     * Disconnects the given connection because its baselines or dictionaries may no longer match the
+     * ones of the other side.
+     *
+     * @param connection the connection that is out of sync.
+     * @param reason     the reason logged for the disconnect.
+     * @param args       the arguments of the reason.
+     */
+    void desync(CompoundConnection connection, String reason, Object... args) {
+        if (connection.markOutOfSync()) {
+            this.logger.error("Disconnecting {}, {}", connection.getManager().getRemoteAddress(), String.format(reason, args));
+        }
+    }
+
     public SimpleChannel getNetworkChannel() {
         return this.networkChannel;
     }
@@ -292,5 +1322,9 @@ public class CompoundNetwork {
         return this.messageConcepts.get(msgClass);
     }
 
+    public MessageConcept getMsgConcept(int discriminator) {
+        return discriminator >= 0 && discriminator < this.discriminatedConcepts.length ? this.discriminatedConcepts[discriminator] : null;
+    }
+
 
 }
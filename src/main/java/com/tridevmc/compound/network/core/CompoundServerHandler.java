@@ -4,11 +4,14 @@ import com.tridevmc.compound.network.message.Message;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraftforge.fml.network.NetworkEvent.Context;
 
+/**
+ * Handles messages received by the server, called by the dispatcher on the thread chosen by the
+ * message once the packet it arrived in has been handled.
+ */
 public class CompoundServerHandler implements ICompoundNetworkHandler {
     @Override
     public <M extends Message> void handle(M m, Context ctx) {
         m.handle(this.getPlayer(ctx));
-        ctx.setPacketHandled(true);
     }
 
     @Override
@@ -0,0 +1,180 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Reassembles the fragments received over a single connection into complete payloads, limiting how
+ * much memory unfinished transfers may hold.
+ * <p>
+ * The first fragment of a transfer is sent in line with the bundles around it, bundles received after
+ * it are held back until the transfer is complete so every bundle is read in the order it was sent.
+ * <p>
+ * Only accessed from the network thread of the connection.
+ */
+class FragmentAssembler {
+
+    private final Map<Integer, Transfer> transfers;
+    private final Map<Integer, Integer> rejectedTransfers;
+    private final Deque<Transfer> order;
+    private long pendingBytes;
+
+    FragmentAssembler() {
+        this.transfers = Maps.newHashMap();
+        this.rejectedTransfers = Maps.newHashMap();
+        this.order = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds the given bundle behind any unfinished transfers.
+     *
+     * @param bundle          the bundle that was received.
+     * @param maxPendingBytes the most bytes unfinished transfers and the bundles behind them may hold in total.
+     * @return true if the bundle was added, false if it was released because too much is pending.
+     */
+    boolean offer(MessageBundle bundle, long maxPendingBytes) {
+        if (this.order.isEmpty()) {
+            this.order.add(new Transfer(bundle, 0));
+            return true;
+        }
+
+        int length = bundle.getLength();
+        if (this.pendingBytes + length > maxPendingBytes) {
+            bundle.release();
+            return false;
+        }
+        this.order.add(new Transfer(bundle, length));
+        this.pendingBytes += length;
+        return true;
+    }
+
+    /**
+     * Adds the given fragment to its transfer, releasing the data of the fragment.
+     *
+     * @param fragment        the fragment that was received.
+     * @param maxPendingBytes the most bytes unfinished transfers and the bundles behind them may hold in total.
+     */
+    void accept(MessageFragment fragment, long maxPendingBytes) {
+        ByteBuf data = fragment.getData();
+        int transferId = fragment.getTransferId();
+        Integer rejectedBytes = this.rejectedTransfers.get(transferId);
+        if (rejectedBytes != null) {
+            // Skip the rest of a transfer that was rejected when it started.
+            if (fragment.getTotalLength() == 0 || rejectedBytes <= data.readableBytes()) {
+                this.rejectedTransfers.remove(transferId);
+            } else {
+                this.rejectedTransfers.put(transferId, rejectedBytes - data.readableBytes());
+            }
+            data.release();
+            return;
+        }
+
+        Transfer transfer = this.transfers.get(transferId);
+        if (fragment.getTotalLength() == 0) {
+            // The sender failed part way, the transfer will not be finished.
+            data.release();
+            if (transfer != null) {
+                this.discard(transfer);
+            }
+            return;
+        }
+
+        if (transfer == null) {
+            if (fragment.getTotalLength() < 0 || this.pendingBytes + fragment.getTotalLength() > maxPendingBytes) {
+                if (fragment.getTotalLength() > data.readableBytes()) {
+                    this.rejectedTransfers.put(transferId, fragment.getTotalLength() - data.readableBytes());
+                }
+                data.release();
+                throw new RuntimeException(String.format(
+                        "Rejected transfer %s of %s bytes, %s bytes are already pending out of %s",
+                        transferId, fragment.getTotalLength(), this.pendingBytes, maxPendingBytes));
+            }
+
+            transfer = new Transfer(transferId, fragment.getTotalLength(), ByteBufAllocator.DEFAULT.compositeBuffer(Integer.MAX_VALUE));
+            this.transfers.put(transferId, transfer);
+            this.order.add(transfer);
+            this.pendingBytes += fragment.getTotalLength();
+        }
+
+        transfer.data.addComponent(true, data);
+        if (transfer.data.readableBytes() < transfer.length) {
+            return;
+        }
+
+        if (transfer.data.readableBytes() > transfer.length) {
+            this.discard(transfer);
+            throw new RuntimeException(String.format(
+                    "Transfer %s is larger than its declared length of %s",
+                    transferId, transfer.length));
+        }
+        this.transfers.remove(transferId);
+        transfer.bundle = new MessageBundle(transfer.data);
+    }
+
+    /**
+     * Takes the next bundle that can be read, bundles are only returned once every transfer before
+     * them is complete.
+     *
+     * @return the next bundle, or null if there is none or it is waiting on a transfer.
+     */
+    MessageBundle poll() {
+        Transfer next = this.order.peek();
+        if (next == null || next.bundle == null) {
+            return null;
+        }
+        this.order.poll();
+        this.pendingBytes -= next.length;
+        return next.bundle;
+    }
+
+    /**
+     * Releases all unfinished transfers and the bundles waiting on them.
+     */
+    void release() {
+        for (Transfer transfer : this.order) {
+            if (transfer.bundle != null) {
+                transfer.bundle.release();
+            } else {
+                transfer.data.release();
+            }
+        }
+        this.order.clear();
+        this.transfers.clear();
+        this.rejectedTransfers.clear();
+        this.pendingBytes = 0;
+    }
+
+    private void discard(Transfer transfer) {
+        this.transfers.remove(transfer.id);
+        this.order.remove(transfer);
+        this.pendingBytes -= transfer.length;
+        transfer.data.release();
+    }
+
+    /**
+     * A transfer or a bundle that has been received, in the order it was sent.
+     */
+    private static class Transfer {
+        private final int id;
+        private final int length;
+        private final CompositeByteBuf data;
+        private MessageBundle bundle;
+
+        private Transfer(int id, int length, CompositeByteBuf data) {
+            this.id = id;
+            this.length = length;
+            this.data = data;
+        }
+
+        private Transfer(MessageBundle bundle, int length) {
+            this(-1, length, null);
+            this.bundle = bundle;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Sends oversized payloads as fragments, a few per transfer every tick so other traffic can be sent
+ * in between instead of waiting for the whole transfer.
+ * <p>
+ * The first fragment is sent as soon as a transfer is queued so the receiver knows where the transfer
+ * belongs among the other bundles, the rest are only sent from the tick of one side. Transfers can be
+ * queued from any thread.
+ */
+class FragmentSender {
+
+    /**
+     * The number of fragments each transfer sends per tick.
+     */
+    private static final int FRAGMENTS_PER_TICK = 4;
+
+    private static final AtomicInteger NEXT_TRANSFER_ID = new AtomicInteger();
+
+    private final CompoundNetwork network;
+    private final Queue<Transfer> queuedTransfers;
+    private final List<Transfer> activeTransfers;
+
+    FragmentSender(CompoundNetwork network) {
+        this.network = network;
+        this.queuedTransfers = new ConcurrentLinkedQueue<>();
+        this.activeTransfers = Lists.newArrayList();
+    }
+
+    /**
+     * Queues the given payload to be sent as fragments through the given sink.
+     *
+     * @param payload the payload to send, retained until all of it has been sent.
+     * @param sink    sends a fragment to the recipients of the payload.
+     */
+    void queue(ByteBuf payload, Consumer<Object> sink) {
+        Transfer transfer = new Transfer(NEXT_TRANSFER_ID.getAndIncrement() & Integer.MAX_VALUE,
+                payload.retainedSlice(), sink);
+        try {
+            transfer.sendNext();
+        } catch (RuntimeException e) {
+            transfer.payload.release();
+            throw e;
+        }
+        this.queuedTransfers.add(transfer);
+    }
+
+    /**
+     * Sends the next fragments of every transfer.
+     */
+    void tick() {
+        Transfer queuedTransfer;
+        while ((queuedTransfer = this.queuedTransfers.poll()) != null) {
+            this.activeTransfers.add(queuedTransfer);
+        }
+
+        Iterator<Transfer> transfers = this.activeTransfers.iterator();
+        while (transfers.hasNext()) {
+            Transfer transfer = transfers.next();
+            try {
+                for (int i = 0; i < FRAGMENTS_PER_TICK && transfer.payload.isReadable(); i++) {
+                    transfer.sendNext();
+                }
+            } catch (Exception e) {
+                this.network.getLogger().error("Failed to send fragment of transfer {}, caused by {}", transfer.id, e);
+                transfer.payload.skipBytes(transfer.payload.readableBytes());
+                transfer.abort();
+            }
+
+            if (!transfer.payload.isReadable()) {
+                transfer.payload.release();
+                transfers.remove();
+            }
+        }
+    }
+
+    private static class Transfer {
+        private final int id;
+        private final int totalLength;
+        private final ByteBuf payload;
+        private final Consumer<Object> sink;
+
+        private Transfer(int id, ByteBuf payload, Consumer<Object> sink) {
+            this.id = id;
+            this.totalLength = payload.readableBytes();
+            this.payload = payload;
+            this.sink = sink;
+        }
+
+        private void sendNext() {
+            int length = Math.min(MessageFragment.FRAGMENT_SIZE, this.payload.readableBytes());
+            this.sink.accept(new MessageFragment(this.id, this.totalLength, this.payload.readSlice(length)));
+        }
+
+        private void abort() {
+            try {
+                // An empty fragment without a length tells the receiver to stop waiting for the transfer.
+                this.sink.accept(new MessageFragment(this.id, 0, Unpooled.EMPTY_BUFFER));
+            } catch (Exception e) {
+                // The receiver gives up on the transfer once the connection is closed.
+            }
+        }
+    }
+}
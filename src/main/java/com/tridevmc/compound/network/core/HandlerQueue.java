@@ -0,0 +1,72 @@
+package com.tridevmc.compound.network.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded queue of handlers waiting to run for a single connection, filled from the network thread
+ * and drained by one thread at a time so the handlers run in the order they were queued.
+ */
+class HandlerQueue {
+
+    private final Queue<Runnable> tasks;
+    private final AtomicInteger size;
+    private final AtomicBoolean scheduled;
+
+    HandlerQueue() {
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Adds the given task to the end of the queue unless the queue is full.
+     *
+     * @param task     the task to add.
+     * @param capacity the most tasks the queue may hold.
+     * @return true if the task was added, false if the queue is full.
+     */
+    boolean offer(Runnable task, int capacity) {
+        if (this.size.incrementAndGet() > capacity) {
+            this.size.decrementAndGet();
+            return false;
+        }
+        this.tasks.add(task);
+        return true;
+    }
+
+    Runnable poll() {
+        Runnable task = this.tasks.poll();
+        if (task != null) {
+            this.size.decrementAndGet();
+        }
+        return task;
+    }
+
+    boolean isEmpty() {
+        return this.tasks.isEmpty();
+    }
+
+    /**
+     * Marks this queue as scheduled to be drained.
+     *
+     * @return true if the queue was not scheduled yet and the caller must schedule it.
+     */
+    boolean schedule() {
+        return this.scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Marks this queue as no longer scheduled once it has been drained, rescheduling it if tasks were
+     * added in the meantime.
+     *
+     * @return true if the queue was rescheduled and the caller must keep draining it.
+     */
+    boolean unschedule() {
+        this.scheduled.set(false);
+        // Tasks added before the flag was cleared would otherwise be left waiting for the next one.
+        return !this.tasks.isEmpty() && this.schedule();
+    }
+}
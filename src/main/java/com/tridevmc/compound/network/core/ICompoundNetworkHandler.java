@@ -4,8 +4,18 @@ import com.tridevmc.compound.network.message.Message;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraftforge.fml.network.NetworkEvent.Context;
 
+/**
+ * Passes received messages to their handle method for one side, only called through the message
+ * dispatcher so every message goes through its handler thread, queue limits and pooling.
+ */
 public interface ICompoundNetworkHandler {
 
+    /**
+     * Handles the given message, the packet it arrived in has already been marked as handled.
+     *
+     * @param m   the message to handle, never null.
+     * @param ctx the context of the packet the message arrived in.
+     */
     <M extends Message> void handle(M m, Context ctx);
 
     PlayerEntity getPlayer(Context ctx);
@@ -0,0 +1,30 @@
+package com.tridevmc.compound.network.core;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reads a single stream as it arrives, every method is called in order on the thread the handler of the
+ * stream was registered with. The sender is only allowed to send more once earlier data was consumed.
+ */
+public interface IStreamConsumer {
+
+    /**
+     * Called with the next piece of the stream.
+     *
+     * @param data the data, only valid until this returns.
+     */
+    void accept(ByteBuf data);
+
+    /**
+     * Called once all of the stream has been accepted.
+     */
+    void end();
+
+    /**
+     * Called instead of end if the stream is not completed, no data is accepted afterwards.
+     *
+     * @param reason why the stream was not completed.
+     */
+    void abort(String reason);
+
+}
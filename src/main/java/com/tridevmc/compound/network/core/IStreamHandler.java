@@ -0,0 +1,23 @@
+package com.tridevmc.compound.network.core;
+
+import net.minecraft.entity.player.PlayerEntity;
+
+import javax.annotation.Nullable;
+
+/**
+ * Accepts the streams opened with the name the handler was registered with, see
+ * {@link CompoundNetwork#registerStreamHandler(String, com.tridevmc.compound.network.message.EnumHandlerThread, IStreamHandler)}.
+ */
+public interface IStreamHandler {
+
+    /**
+     * Called when the other side opens a stream, return a consumer to read the stream or null to reject it.
+     *
+     * @param player the player that opened the stream when received on the server, or the client player.
+     * @param length the number of bytes that will be streamed, or -1 if unknown.
+     * @return the consumer of the stream, or null to reject it.
+     */
+    @Nullable
+    IStreamConsumer open(@Nullable PlayerEntity player, long length);
+
+}
@@ -0,0 +1,155 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Maps;
+import com.tridevmc.compound.network.message.MessageConcept;
+import net.minecraftforge.fml.LogicalSide;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many server bound messages each player may send, checked before a message is decoded
+ * so rejected messages cost nothing but skipping their bytes.
+ * <p>
+ * Every player has a token bucket per limited message and one shared by all messages, a message is
+ * rejected if either is empty. Rejections drain a bucket of their own, players that empty it are
+ * kicked. Packets carrying a single message outside of a bundle are never sent by a network, each
+ * of them counts as a rejection.
+ */
+class InboundLimiter {
+
+    private final CompoundNetwork network;
+    private final Map<MessageConcept, Limit> messageLimits;
+    private final Map<MessageConcept, LongAdder> rejectedMessages;
+    private final LongAdder kickedConnections;
+    private volatile Limit connectionLimit;
+    private volatile int kickThreshold = 256;
+
+    InboundLimiter(CompoundNetwork network) {
+        this.network = network;
+        this.messageLimits = new ConcurrentHashMap<>();
+        this.rejectedMessages = new ConcurrentHashMap<>();
+        this.kickedConnections = new LongAdder();
+    }
+
+    /**
+     * Takes a token for the given message from the buckets of the given connection.
+     *
+     * @param connection the connection the message was received from.
+     * @param concept    the concept of the received message.
+     * @return true if the message may be decoded and handled, false if it was rejected.
+     */
+    boolean tryAccept(CompoundConnection connection, MessageConcept concept) {
+        if (concept.getMessageSide() != LogicalSide.SERVER) {
+            return true;
+        }
+
+        State state = connection.getLimiterState();
+        if (state.kicked) {
+            return false;
+        }
+
+        Limit connectionLimit = this.connectionLimit;
+        Limit messageLimit = this.messageLimits.get(concept);
+        boolean accepted = (connectionLimit == null || state.connectionBucket.tryAcquire(connectionLimit.rate, connectionLimit.burst))
+                && (messageLimit == null || state.messageBuckets.computeIfAbsent(concept, c -> new TokenBucket(messageLimit.burst))
+                .tryAcquire(messageLimit.rate, messageLimit.burst));
+        if (accepted) {
+            return true;
+        }
+
+        this.reject(connection, state, concept);
+        return false;
+    }
+
+    /**
+     * Rejects a message that was sent in a packet of its own instead of a bundle, such packets are
+     * never sent by a network so they are always counted as a violation.
+     *
+     * @param connection the connection the packet was received from.
+     * @param concept    the concept of the message the packet claimed to carry.
+     */
+    void rejectUnbundled(CompoundConnection connection, MessageConcept concept) {
+        State state = connection.getLimiterState();
+        if (!state.kicked) {
+            this.reject(connection, state, concept);
+        }
+    }
+
+    private void reject(CompoundConnection connection, State state, MessageConcept concept) {
+        this.rejectedMessages.computeIfAbsent(concept, c -> new LongAdder()).increment();
+        int kickThreshold = this.kickThreshold;
+        if (kickThreshold > 0 && !state.violations.tryAcquire(kickThreshold / 10D, kickThreshold)) {
+            state.kicked = true;
+            this.kick(connection);
+        }
+    }
+
+    private void kick(CompoundConnection connection) {
+        this.kickedConnections.increment();
+        this.network.getLogger().warn("Disconnecting {} for exceeding message rate limits", connection.getManager().getRemoteAddress());
+        connection.disconnect("Sent too many packets");
+    }
+
+    void setMessageLimit(MessageConcept concept, double rate, int burst) {
+        if (rate > 0) {
+            this.messageLimits.put(concept, new Limit(rate, burst));
+        } else {
+            this.messageLimits.remove(concept);
+        }
+    }
+
+    void setConnectionLimit(double rate, int burst) {
+        this.connectionLimit = rate > 0 ? new Limit(rate, burst) : null;
+    }
+
+    void setKickThreshold(int kickThreshold) {
+        this.kickThreshold = kickThreshold;
+    }
+
+    int getKickThreshold() {
+        return this.kickThreshold;
+    }
+
+    long getRejectedMessages(MessageConcept concept) {
+        LongAdder rejected = this.rejectedMessages.get(concept);
+        return rejected != null ? rejected.sum() : 0;
+    }
+
+    long getRejectedMessages() {
+        return this.rejectedMessages.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    long getKickedConnections() {
+        return this.kickedConnections.sum();
+    }
+
+    private static class Limit {
+        private final double rate;
+        private final double burst;
+
+        private Limit(double rate, int burst) {
+            this.rate = rate;
+            // A burst smaller than one message would reject everything.
+            this.burst = Math.max(1, burst > 0 ? burst : Math.ceil(rate));
+        }
+    }
+
+    /**
+     * The buckets of a single connection, only accessed from the network thread of the connection.
+     */
+    static class State {
+        private final Map<MessageConcept, TokenBucket> messageBuckets;
+        private final TokenBucket connectionBucket;
+        private final TokenBucket violations;
+        private boolean kicked;
+
+        State() {
+            this.messageBuckets = Maps.newHashMap();
+            // Start full, the first use clamps them to the capacity of their limit.
+            this.connectionBucket = new TokenBucket(Double.MAX_VALUE);
+            this.violations = new TokenBucket(Double.MAX_VALUE);
+        }
+    }
+}
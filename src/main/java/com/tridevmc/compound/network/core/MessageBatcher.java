@@ -0,0 +1,226 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Maps;
+import com.tridevmc.compound.network.message.EnumMessagePriority;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.MessageConcept;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import net.minecraft.network.NetworkManager;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Collects the messages sent to each connection during a server tick and sends them as a single
+ * bundle per connection when the tick ends.
+ * <p>
+ * Messages wait in a lane per priority, the lanes are drained by deficit round robin so each lane gets
+ * a share of the bundle by the weight of its priority with INTERACTIVE messages going first. When a
+ * bandwidth limit is set the lanes are drained until the budget of the player runs out, whatever is
+ * left is sent in the following ticks.
+ * <p>
+ * Only accessed from the server thread.
+ */
+class MessageBatcher {
+
+    /**
+     * The bytes a lane may send per round for each point of weight of its priority.
+     */
+    private static final int QUANTUM = 1024;
+
+    private final CompoundNetwork network;
+    private final Map<NetworkManager, PendingConnection> pendingConnections;
+
+    MessageBatcher(CompoundNetwork network) {
+        this.network = network;
+        this.pendingConnections = Maps.newLinkedHashMap();
+    }
+
+    /**
+     * Encodes the given message into the lane of its priority for the given connection.
+     *
+     * @param manager the connection to send the message to.
+     * @param msg     the message to send.
+     */
+    void queue(NetworkManager manager, Message msg) {
+        MessageConcept concept = this.network.getMsgConcept(msg);
+        Lane lane = this.getPendingConnection(manager).getLane(concept.getPriority());
+        int entryStart = lane.entries.writerIndex();
+        try {
+            MessageBundle.writeEntry(this.network, concept, msg, lane.entries, this.network.getConnection(manager));
+        } catch (RuntimeException e) {
+            lane.entries.writerIndex(entryStart);
+            throw e;
+        }
+        lane.add(lane.entries.writerIndex() - entryStart);
+    }
+
+    /**
+     * Copies an already encoded entry into the lane of the given priority for the given connection, used
+     * to send the same message to several connections without encoding it for each of them.
+     *
+     * @param manager  the connection to send the entry to.
+     * @param entry    the encoded entry, left unchanged.
+     * @param priority the priority of the message of the entry.
+     */
+    void queueEncoded(NetworkManager manager, ByteBuf entry, EnumMessagePriority priority) {
+        Lane lane = this.getPendingConnection(manager).getLane(priority);
+        lane.entries.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+        lane.add(entry.readableBytes());
+    }
+
+    /**
+     * Sends the pending messages of every connection, called at the end of every server tick.
+     *
+     * @param shaped false to send everything regardless of the bandwidth limit.
+     */
+    void flush(boolean shaped) {
+        if (this.pendingConnections.isEmpty()) {
+            return;
+        }
+
+        double bytesPerSecond = this.network.getBandwidthLimit();
+        Iterator<Map.Entry<NetworkManager, PendingConnection>> pendingConnections = this.pendingConnections.entrySet().iterator();
+        while (pendingConnections.hasNext()) {
+            Map.Entry<NetworkManager, PendingConnection> pendingConnection = pendingConnections.next();
+            NetworkManager manager = pendingConnection.getKey();
+            PendingConnection pending = pendingConnection.getValue();
+            if (!manager.isChannelOpen()) {
+                pending.release();
+                pendingConnections.remove();
+                continue;
+            }
+
+            // Past the backlog limit the budget is ignored, holding on to messages any longer would only grow it.
+            TokenBucket budget = shaped && bytesPerSecond > 0 && pending.queuedBytes <= this.network.getMaxBacklogBytes()
+                    ? this.network.getConnection(manager).getBandwidthBudget(this.network.getBandwidthBurst()) : null;
+            try {
+                this.send(manager, pending, budget, bytesPerSecond);
+            } catch (Exception e) {
+                this.network.getLogger().error("Failed to send message bundle, caused by {}", e);
+                // The entries already updated the baselines and dictionaries they were written against.
+                this.network.desync(this.network.getConnection(manager), "failed to send a message bundle");
+                pending.queuedBytes = 0;
+            }
+
+            if (pending.queuedBytes == 0) {
+                pending.release();
+                pendingConnections.remove();
+            } else {
+                pending.compact();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes waiting to be sent to all connections.
+     *
+     * @return the queued bytes.
+     */
+    long getQueuedBytes() {
+        return this.pendingConnections.values().stream().mapToLong(p -> p.queuedBytes).sum();
+    }
+
+    private void send(NetworkManager manager, PendingConnection pending, TokenBucket budget, double bytesPerSecond) {
+        ByteBuf payload = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            rounds:
+            while (pending.queuedBytes > 0) {
+                for (Lane lane : pending.lanes) {
+                    if (lane.lengths.isEmpty()) {
+                        // Empty lanes don't save up, or they could later crowd out the others.
+                        lane.deficit = 0;
+                        continue;
+                    }
+
+                    lane.deficit += lane.priority.getWeight() * QUANTUM;
+                    while (!lane.lengths.isEmpty() && lane.lengths.peek() <= lane.deficit) {
+                        int length = lane.lengths.peek();
+                        if (budget != null && !budget.tryConsume(length, bytesPerSecond, this.network.getBandwidthBurst())) {
+                            break rounds;
+                        }
+                        if (payload.isReadable() && payload.readableBytes() + length > MessageFragment.MAX_CLIENTBOUND_PAYLOAD) {
+                            // Send everything before this entry now so only oversized messages are fragmented.
+                            ByteBuf full = payload;
+                            payload = ByteBufAllocator.DEFAULT.heapBuffer();
+                            this.network.sendPayload(full, manager);
+                        }
+
+                        lane.lengths.poll();
+                        payload.writeBytes(lane.entries, length);
+                        lane.deficit -= length;
+                        pending.queuedBytes -= length;
+                    }
+                }
+            }
+        } finally {
+            if (payload.isReadable()) {
+                this.network.sendPayload(payload, manager);
+            } else {
+                payload.release();
+            }
+        }
+    }
+
+    private PendingConnection getPendingConnection(NetworkManager manager) {
+        return this.pendingConnections.computeIfAbsent(manager, m -> new PendingConnection());
+    }
+
+    /**
+     * The messages waiting to be sent to a single connection.
+     */
+    private static class PendingConnection {
+        private final Lane[] lanes;
+        private long queuedBytes;
+
+        private PendingConnection() {
+            EnumMessagePriority[] priorities = EnumMessagePriority.values();
+            this.lanes = new Lane[priorities.length];
+            for (int i = 0; i < priorities.length; i++) {
+                this.lanes[i] = new Lane(this, priorities[i]);
+            }
+        }
+
+        private Lane getLane(EnumMessagePriority priority) {
+            return this.lanes[priority.ordinal()];
+        }
+
+        private void compact() {
+            for (Lane lane : this.lanes) {
+                lane.entries.discardReadBytes();
+            }
+        }
+
+        private void release() {
+            for (Lane lane : this.lanes) {
+                lane.entries.release();
+            }
+        }
+    }
+
+    /**
+     * The encoded entries of a single priority waiting to be sent, in the order they were queued.
+     */
+    private static class Lane {
+        private final PendingConnection connection;
+        private final EnumMessagePriority priority;
+        private final ByteBuf entries;
+        private final Queue<Integer> lengths;
+        private int deficit;
+
+        private Lane(PendingConnection connection, EnumMessagePriority priority) {
+            this.connection = connection;
+            this.priority = priority;
+            this.entries = ByteBufAllocator.DEFAULT.heapBuffer();
+            this.lengths = new ArrayDeque<>();
+        }
+
+        private void add(int length) {
+            this.lengths.add(length);
+            this.connection.queuedBytes += length;
+        }
+    }
+}
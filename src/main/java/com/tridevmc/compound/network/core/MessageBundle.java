@@ -0,0 +1,205 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Lists;
+import com.tridevmc.compound.network.capture.CaptureWriter;
+import com.tridevmc.compound.network.marshallers.ConnectionDictionary;
+import com.tridevmc.compound.network.marshallers.VarIntCodec;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.MessageBaseline;
+import com.tridevmc.compound.network.message.MessageConcept;
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import io.netty.buffer.ByteBuf;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * A single payload carrying one or more messages, each entry is the discriminator of the message and
+ * a flag marking deltas followed by the length of its encoded body and the body itself.
+ * <p>
+ * Delta encoded messages are only written as deltas when the bundle is sent to a single connection,
+ * otherwise they are written in full. The same goes for values written with the dictionary marshallers,
+ * which are only sent as references to the connection dictionary in full entries sent to a single connection.
+ * <p>
+ * For internal use only.
+ */
+public class MessageBundle {
+
+    /**
+     * The discriminator bundles are registered with, messages may not use this.
+     */
+    public static final int DISCRIMINATOR = 255;
+
+    private final ByteBuf payload;
+
+    MessageBundle(ByteBuf payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * Appends an entry for the given message to the given bundle payload.
+     *
+     * @param network    the network the message is sent on.
+     * @param concept    the concept of the message.
+     * @param msg        the message to append.
+     * @param payload    the payload to append the entry to.
+     * @param connection the connection the bundle will be sent to, or null if it is sent to several.
+     */
+    static void writeEntry(CompoundNetwork network, MessageConcept concept, Message msg, ByteBuf payload,
+                           @Nullable CompoundConnection connection) {
+        long start = System.nanoTime();
+        int entryIndex = payload.writerIndex();
+        boolean delta = connection != null && concept.isDeltaEncoded();
+        if (delta) {
+            writeEntry(concept, msg, payload, connection.getSentBaseline(concept));
+            if (payload.writerIndex() - entryIndex > MessageFragment.MAX_CLIENTBOUND_PAYLOAD) {
+                // Entries that have to be fragmented may be rejected by the pending limit of the receiver,
+                // so they are sent in full and the next delta starts over from an empty baseline.
+                payload.writerIndex(entryIndex);
+                connection.resetSentBaseline(concept);
+                writeEntry(concept, msg, payload, (MessageBaseline) null);
+            }
+        } else if (connection != null) {
+            // Baselines would keep references to dictionary slots that are overwritten later, so only
+            // full entries use the dictionary.
+            ConnectionDictionary dictionary = connection.getSentDictionary(concept.getPriority());
+            dictionary.begin();
+            ConnectionDictionary previous = ConnectionDictionary.enter(dictionary);
+            try {
+                writeEntry(concept, msg, payload, (MessageBaseline) null);
+            } catch (RuntimeException e) {
+                dictionary.rollback();
+                throw e;
+            } finally {
+                ConnectionDictionary.exit(previous);
+            }
+            if (payload.writerIndex() - entryIndex > MessageFragment.MAX_CLIENTBOUND_PAYLOAD) {
+                // Same as above, a rejected entry must not have stored any values.
+                payload.writerIndex(entryIndex);
+                dictionary.rollback();
+                writeEntry(concept, msg, payload, (MessageBaseline) null);
+            }
+        } else {
+            writeEntry(concept, msg, payload, (MessageBaseline) null);
+        }
+        concept.getMetrics(EnumMessageDirection.SENT).recordCodec(payload.writerIndex() - entryIndex, System.nanoTime() - start);
+
+        CaptureWriter capture = network.getCapture();
+        if (capture != null) {
+            ByteBuf entry = payload.slice(entryIndex, payload.writerIndex() - entryIndex);
+            int header = VarIntCodec.readVarInt(entry);
+            int length = VarIntCodec.readVarInt(entry);
+            capture.record(EnumMessageDirection.SENT, header >>> 1, (header & 1) != 0,
+                    connection != null ? connection.getPlayerId() : null, entry.readSlice(length));
+        }
+    }
+
+    private static void writeEntry(MessageConcept concept, Message msg, ByteBuf payload, @Nullable MessageBaseline baseline) {
+        VarIntCodec.writeVarInt(payload, concept.getDiscriminator() << 1 | (baseline != null ? 1 : 0));
+
+        // The length is written as a padded 3 byte var int so it can be filled in after encoding.
+        int lengthIndex = payload.writerIndex();
+        payload.writeMedium(0);
+        if (baseline != null) {
+            concept.toBytes(msg, payload, baseline);
+        } else {
+            concept.toBytes(msg, payload);
+        }
+        int length = payload.writerIndex() - lengthIndex - 3;
+        if (length < 1 << 21) {
+            payload.setMedium(lengthIndex, (length & 0x7F | 0x80) << 16
+                    | (length >>> 7 & 0x7F | 0x80) << 8
+                    | length >>> 14);
+        } else {
+            // Too large for the padded length, move the body to make room for a full var int.
+            byte[] body = new byte[length];
+            payload.getBytes(lengthIndex + 3, body);
+            payload.writerIndex(lengthIndex);
+            VarIntCodec.writeVarInt(payload, length);
+            payload.writeBytes(body);
+        }
+    }
+
+    static MessageBundle decode(ByteBuf source) {
+        // Entries are decoded by the consumer, which knows the connection the bundle came from.
+        return new MessageBundle(source.readRetainedSlice(source.readableBytes()));
+    }
+
+    /**
+     * Decodes the messages in this bundle and releases its payload.
+     *
+     * @param network    the network the bundle was received on.
+     * @param connection the connection the bundle was received from.
+     * @return the messages in the order they were sent.
+     */
+    List<Message> readMessages(CompoundNetwork network, CompoundConnection connection) {
+        ByteBuf source = this.payload;
+        List<Message> messages = Lists.newArrayList();
+        try {
+            while (source.isReadable() && !connection.isOutOfSync()) {
+                int header = VarIntCodec.readVarInt(source);
+                int discriminator = header >>> 1;
+                int length = VarIntCodec.readVarInt(source);
+                ByteBuf body = source.readSlice(length);
+                MessageConcept concept = network.getMsgConcept(discriminator);
+                boolean delta = (header & 1) != 0;
+                if (concept == null || (delta && !concept.isDeltaEncoded())) {
+                    network.getLogger().error("Skipping bundled message with unknown discriminator {}", discriminator);
+                    continue;
+                }
+                if (!network.getInboundLimiter().tryAccept(connection, concept)) {
+                    continue;
+                }
+                CaptureWriter capture = network.getCapture();
+                if (capture != null) {
+                    capture.record(EnumMessageDirection.RECEIVED, discriminator, delta, connection.getPlayerId(), body);
+                }
+
+                long start = System.nanoTime();
+                Message msg;
+                // Each entry is read all or nothing, values stored by an entry that failed are undone.
+                ConnectionDictionary dictionary = connection.getReceivedDictionary(concept.getPriority());
+                dictionary.begin();
+                ConnectionDictionary previous = ConnectionDictionary.enter(dictionary);
+                try {
+                    msg = delta ? concept.fromBytes(body, connection.getReceivedBaseline(concept)) : concept.fromBytes(body);
+                } finally {
+                    ConnectionDictionary.exit(previous);
+                }
+                if (msg != null) {
+                    concept.getMetrics(EnumMessageDirection.RECEIVED).recordCodec(length, System.nanoTime() - start);
+                    messages.add(msg);
+                } else {
+                    dictionary.rollback();
+                    if (delta) {
+                        // The sender already moved its baseline to this message, every later delta would
+                        // read its unchanged fields from values the sender no longer has.
+                        network.desync(connection, "failed to read delta of %s", concept.getMessageClass().getName());
+                    } else if (concept.isDictionaryEncoded()) {
+                        // The sender may have stored values past the point the entry failed at, every slot
+                        // after them would refer to the wrong value.
+                        network.desync(connection, "failed to read dictionary encoded %s", concept.getMessageClass().getName());
+                    }
+                }
+            }
+        } finally {
+            source.release();
+        }
+        return messages;
+    }
+
+    int getLength() {
+        return this.payload.readableBytes();
+    }
+
+    /**
+     * Releases the payload of a bundle that will not be read.
+     */
+    void release() {
+        this.payload.release();
+    }
+
+    void encode(ByteBuf target) {
+        target.writeBytes(this.payload, this.payload.readerIndex(), this.payload.readableBytes());
+    }
+}
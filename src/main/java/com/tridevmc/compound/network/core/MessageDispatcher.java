@@ -0,0 +1,186 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tridevmc.compound.network.message.EnumHandlerThread;
+import com.tridevmc.compound.network.message.Message;
+import com.tridevmc.compound.network.message.MessageConcept;
+import com.tridevmc.compound.network.message.ResponseMessage;
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands received messages to their handlers on the thread chosen by their message.
+ * <p>
+ * Main thread messages are queued per connection and handled at the start of each tick of their side,
+ * taking one message from each waiting connection in turn until the tick budget runs out. Worker
+ * messages are queued per connection as well, each connection is drained by one worker at a time.
+ */
+class MessageDispatcher {
+
+    private final CompoundNetwork network;
+    private final Map<LogicalSide, Queue<HandlerQueue>> readyQueues;
+    private final LongAdder droppedMessages;
+    private volatile ExecutorService workers;
+    private volatile long budgetNanos = 10000000L;
+    private volatile int queueCapacity = 1024;
+
+    MessageDispatcher(CompoundNetwork network) {
+        this.network = network;
+        this.readyQueues = Maps.newEnumMap(LogicalSide.class);
+        this.readyQueues.put(LogicalSide.CLIENT, new ConcurrentLinkedQueue<>());
+        this.readyQueues.put(LogicalSide.SERVER, new ConcurrentLinkedQueue<>());
+        this.droppedMessages = new LongAdder();
+    }
+
+    /**
+     * Handles the given message on the given thread, or queues it to be handled there.
+     *
+     * @param thread     the thread to handle the message on.
+     * @param side       the side the message is received on.
+     * @param handler    the handler of the side the message is received on.
+     * @param msg        the message to handle.
+     * @param ctx        the context the message was received in.
+     * @param connection the connection the message was received from.
+     */
+    void dispatch(EnumHandlerThread thread, LogicalSide side, ICompoundNetworkHandler handler, Message msg,
+                  NetworkEvent.Context ctx, CompoundConnection connection) {
+        if (!this.execute(thread, side, connection, () -> this.handle(handler, msg, ctx), this.queueCapacity)) {
+            this.droppedMessages.increment();
+            this.network.getLogger().debug("Dropped {}, too many messages are waiting to be handled", msg.getClass().getName());
+            this.network.getMsgConcept(msg).release(msg);
+        }
+    }
+
+    /**
+     * Runs the given task on the given thread, or queues it to run there after everything queued before
+     * it for the same connection.
+     *
+     * @param thread     the thread to run the task on.
+     * @param side       the side the task was received on.
+     * @param connection the connection the task was received from.
+     * @param task       the task to run.
+     * @param capacity   the most tasks that may be waiting for the connection on the given thread.
+     * @return true if the task was run or queued, false if too many tasks are waiting.
+     */
+    boolean execute(EnumHandlerThread thread, LogicalSide side, CompoundConnection connection, Runnable task, int capacity) {
+        switch (thread) {
+            case MAIN:
+                HandlerQueue mainQueue = connection.getMainQueue();
+                if (!mainQueue.offer(task, capacity)) {
+                    return false;
+                }
+                if (mainQueue.schedule()) {
+                    this.readyQueues.get(side).add(mainQueue);
+                }
+                return true;
+            case WORKER:
+                HandlerQueue workerQueue = connection.getWorkerQueue();
+                if (!workerQueue.offer(task, capacity)) {
+                    return false;
+                }
+                if (workerQueue.schedule()) {
+                    this.getWorkers().execute(() -> this.drain(workerQueue));
+                }
+                return true;
+            default:
+                task.run();
+                return true;
+        }
+    }
+
+    /**
+     * Handles the main thread messages queued for the given side until the budget runs out, called at
+     * the start of every tick of the side. At least one message is handled per tick.
+     *
+     * @param side the side that is ticking.
+     */
+    void tick(LogicalSide side) {
+        Queue<HandlerQueue> readyQueue = this.readyQueues.get(side);
+        long deadline = System.nanoTime() + this.budgetNanos;
+        HandlerQueue queue;
+        while ((queue = readyQueue.poll()) != null) {
+            Runnable task = queue.poll();
+            if (task != null) {
+                task.run();
+            }
+
+            if (!queue.isEmpty() || queue.unschedule()) {
+                // Back of the line, so one busy connection can't use the whole budget.
+                readyQueue.add(queue);
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+    }
+
+    private void drain(HandlerQueue queue) {
+        do {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                task.run();
+            }
+        } while (queue.unschedule());
+    }
+
+    private void handle(ICompoundNetworkHandler handler, Message msg, NetworkEvent.Context ctx) {
+        MessageConcept concept = this.network.getMsgConcept(msg);
+        long start = System.nanoTime();
+        try {
+            if (msg instanceof ResponseMessage) {
+                this.network.getRequestTracker().complete((ResponseMessage) msg, ctx);
+            } else {
+                handler.handle(msg, ctx);
+            }
+        } catch (Exception e) {
+            this.network.getLogger().error("Failed to handle {}, caused by {}", msg.getClass().getName(), e);
+        } finally {
+            concept.getMetrics(EnumMessageDirection.RECEIVED).recordHandler(System.nanoTime() - start);
+            concept.release(msg);
+        }
+    }
+
+    private ExecutorService getWorkers() {
+        if (this.workers == null) {
+            synchronized (this) {
+                if (this.workers == null) {
+                    this.workers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat(this.network.getLogger().getName() + "-Worker-%d")
+                                    .setDaemon(true)
+                                    .build());
+                }
+            }
+        }
+        return this.workers;
+    }
+
+    long getBudgetNanos() {
+        return this.budgetNanos;
+    }
+
+    void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    long getDroppedMessages() {
+        return this.droppedMessages.sum();
+    }
+}
@@ -0,0 +1,71 @@
+package com.tridevmc.compound.network.core;
+
+import com.tridevmc.compound.network.marshallers.VarIntCodec;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A piece of a bundle payload too large to be sent in a single packet, fragments of a transfer are
+ * sent in order and reassembled by the receiver before the bundle is read. Bundles received after the
+ * first fragment of a transfer are only read once the transfer is complete.
+ * <p>
+ * A fragment with a total length of 0 aborts its transfer.
+ * <p>
+ * For internal use only.
+ */
+public class MessageFragment {
+
+    /**
+     * The discriminator fragments are registered with, messages may not use this.
+     */
+    public static final int DISCRIMINATOR = 254;
+
+    /**
+     * The largest payload that can be sent to a client in one packet, leaving room for the packet header.
+     */
+    public static final int MAX_CLIENTBOUND_PAYLOAD = 1048576 - 64;
+
+    /**
+     * The largest payload that can be sent to the server in one packet, leaving room for the packet header.
+     */
+    public static final int MAX_SERVERBOUND_PAYLOAD = 32767 - 64;
+
+    /**
+     * The amount of payload carried by each fragment, small enough to fit in either direction.
+     */
+    public static final int FRAGMENT_SIZE = 32000;
+
+    private final int transferId;
+    private final int totalLength;
+    private final ByteBuf data;
+
+    MessageFragment(int transferId, int totalLength, ByteBuf data) {
+        this.transferId = transferId;
+        this.totalLength = totalLength;
+        this.data = data;
+    }
+
+    static MessageFragment decode(ByteBuf source) {
+        int transferId = VarIntCodec.readVarInt(source);
+        int totalLength = VarIntCodec.readVarInt(source);
+        // Retained so the receiver can assemble the transfer without copying, released by the assembler.
+        return new MessageFragment(transferId, totalLength, source.readRetainedSlice(source.readableBytes()));
+    }
+
+    void encode(ByteBuf target) {
+        VarIntCodec.writeVarInt(target, this.transferId);
+        VarIntCodec.writeVarInt(target, this.totalLength);
+        target.writeBytes(this.data, this.data.readerIndex(), this.data.readableBytes());
+    }
+
+    int getTransferId() {
+        return this.transferId;
+    }
+
+    int getTotalLength() {
+        return this.totalLength;
+    }
+
+    ByteBuf getData() {
+        return this.data;
+    }
+}
@@ -0,0 +1,194 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Indexes connected players by the chunk they are in for each dimension, so spatial sends only have to
+ * look at the players in the chunks they cover.
+ * <p>
+ * The index is updated at the start of every server tick, only players that moved to another chunk or
+ * dimension since the last update are moved in the index. Only accessed from the server thread.
+ */
+class PlayerIndex {
+
+    private final Map<DimensionType, Map<Long, List<ServerPlayerEntity>>> cells;
+    private final Map<ServerPlayerEntity, Location> locations;
+    private int generation;
+
+    PlayerIndex() {
+        this.cells = Maps.newHashMap();
+        this.locations = Maps.newIdentityHashMap();
+    }
+
+    /**
+     * Moves the given players to the chunks they are currently in and removes any players that are no
+     * longer connected.
+     *
+     * @param players all the players connected to the server.
+     */
+    void update(Collection<ServerPlayerEntity> players) {
+        int generation = ++this.generation;
+        for (ServerPlayerEntity player : players) {
+            int chunkX = chunkCoord(player.posX);
+            int chunkZ = chunkCoord(player.posZ);
+            Location location = this.locations.get(player);
+            if (location == null) {
+                location = new Location(player.dimension, chunkX, chunkZ);
+                this.locations.put(player, location);
+                this.addToCell(player, location);
+            } else if (location.dimension != player.dimension || location.chunkX != chunkX || location.chunkZ != chunkZ) {
+                this.removeFromCell(player, location);
+                location.dimension = player.dimension;
+                location.chunkX = chunkX;
+                location.chunkZ = chunkZ;
+                this.addToCell(player, location);
+            }
+            location.generation = generation;
+        }
+
+        if (this.locations.size() > players.size()) {
+            this.locations.entrySet().removeIf(e -> {
+                if (e.getValue().generation != generation) {
+                    this.removeFromCell(e.getKey(), e.getValue());
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * Gets the players in the given box of the given dimension.
+     *
+     * @param dimension the dimension the box is in.
+     * @param box       the box the players should be in.
+     * @return the players in the box.
+     */
+    List<ServerPlayerEntity> getPlayersInBox(DimensionType dimension, AxisAlignedBB box) {
+        List<ServerPlayerEntity> players = Lists.newArrayList();
+        this.visitCells(dimension, chunkCoord(box.minX), chunkCoord(box.minZ), chunkCoord(box.maxX), chunkCoord(box.maxZ), p -> {
+            if (p.dimension == dimension && box.contains(p.posX, p.posY, p.posZ)) {
+                players.add(p);
+            }
+        });
+        return players;
+    }
+
+    /**
+     * Gets the players within the given distance of the given point in the given dimension.
+     *
+     * @param dimension the dimension the point is in.
+     * @param x         the x coordinate of the point.
+     * @param y         the y coordinate of the point.
+     * @param z         the z coordinate of the point.
+     * @param radius    the distance from the point the players should be within.
+     * @return the players within the radius.
+     */
+    List<ServerPlayerEntity> getPlayersInRadius(DimensionType dimension, double x, double y, double z, double radius) {
+        List<ServerPlayerEntity> players = Lists.newArrayList();
+        double radiusSq = radius * radius;
+        this.visitCells(dimension, chunkCoord(x - radius), chunkCoord(z - radius), chunkCoord(x + radius), chunkCoord(z + radius), p -> {
+            double dX = p.posX - x;
+            double dY = p.posY - y;
+            double dZ = p.posZ - z;
+            if (p.dimension == dimension && dX * dX + dY * dY + dZ * dZ <= radiusSq) {
+                players.add(p);
+            }
+        });
+        return players;
+    }
+
+    /**
+     * Gets the players in any of the given chunks of the given dimension.
+     *
+     * @param dimension the dimension the chunks are in.
+     * @param chunks    the chunks the players should be in.
+     * @return the players in the chunks.
+     */
+    List<ServerPlayerEntity> getPlayersInChunks(DimensionType dimension, Collection<ChunkPos> chunks) {
+        List<ServerPlayerEntity> players = Lists.newArrayList();
+        Map<Long, List<ServerPlayerEntity>> dimensionCells = this.cells.get(dimension);
+        if (dimensionCells != null) {
+            // Collapse duplicate chunks so no player is added twice.
+            chunks.stream().map(ChunkPos::asLong).distinct().forEach(c -> {
+                List<ServerPlayerEntity> cell = dimensionCells.get(c);
+                if (cell != null) {
+                    players.addAll(cell);
+                }
+            });
+        }
+        return players;
+    }
+
+    private void visitCells(DimensionType dimension, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ,
+                            Consumer<ServerPlayerEntity> visitor) {
+        Map<Long, List<ServerPlayerEntity>> dimensionCells = this.cells.get(dimension);
+        if (dimensionCells == null) {
+            return;
+        }
+
+        long area = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (area > dimensionCells.size()) {
+            // Fewer occupied cells than covered chunks, the occupied cells are cheaper to check.
+            dimensionCells.forEach((c, cell) -> {
+                int chunkX = (int) (long) c;
+                int chunkZ = (int) (c >>> 32);
+                if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ) {
+                    cell.forEach(visitor);
+                }
+            });
+        } else {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    List<ServerPlayerEntity> cell = dimensionCells.get(ChunkPos.asLong(chunkX, chunkZ));
+                    if (cell != null) {
+                        cell.forEach(visitor);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addToCell(ServerPlayerEntity player, Location location) {
+        this.cells.computeIfAbsent(location.dimension, d -> Maps.newHashMap())
+                .computeIfAbsent(ChunkPos.asLong(location.chunkX, location.chunkZ), c -> Lists.newArrayListWithCapacity(2))
+                .add(player);
+    }
+
+    private void removeFromCell(ServerPlayerEntity player, Location location) {
+        Map<Long, List<ServerPlayerEntity>> dimensionCells = this.cells.get(location.dimension);
+        long key = ChunkPos.asLong(location.chunkX, location.chunkZ);
+        List<ServerPlayerEntity> cell = dimensionCells.get(key);
+        cell.remove(player);
+        if (cell.isEmpty()) {
+            dimensionCells.remove(key);
+        }
+    }
+
+    private static int chunkCoord(double coord) {
+        return (int) Math.floor(coord) >> 4;
+    }
+
+    private static class Location {
+        private DimensionType dimension;
+        private int chunkX;
+        private int chunkZ;
+        private int generation;
+
+        private Location(DimensionType dimension, int chunkX, int chunkZ) {
+            this.dimension = dimension;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+    }
+}
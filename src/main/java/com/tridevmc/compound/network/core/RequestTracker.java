@@ -0,0 +1,150 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tridevmc.compound.network.message.RequestMessage;
+import com.tridevmc.compound.network.message.ResponseMessage;
+import net.minecraft.network.NetworkManager;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the requests sent by a network that are waiting for a response, matching received responses to
+ * their request by the id sent along with both.
+ * <p>
+ * Requests are tracked from any thread, responses complete their request on the thread they are handled
+ * on. Timeouts run on a single shared timer thread.
+ */
+class RequestTracker {
+
+    private static ScheduledThreadPoolExecutor timer;
+
+    private final CompoundNetwork network;
+    private final Map<Integer, PendingRequest> pendingRequests;
+    private final AtomicInteger lastRequestId;
+    private volatile long timeoutMillis = 30000L;
+
+    RequestTracker(CompoundNetwork network) {
+        this.network = network;
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.lastRequestId = new AtomicInteger();
+    }
+
+    /**
+     * Gives the given request a new id and starts waiting for its response, the id should be cleared
+     * once the request has been encoded.
+     *
+     * @param request       the request that is about to be sent.
+     * @param manager       the connection of the client the request is sent to, or null if sent to the server.
+     * @param timeoutMillis the time to wait for the response, or 0 to wait until the connection closes.
+     * @param <R>           the type of the response.
+     * @return the future response.
+     */
+    <R extends ResponseMessage> CompletableFuture<R> track(RequestMessage<R> request, @Nullable NetworkManager manager,
+                                                           long timeoutMillis) {
+        Class<? extends ResponseMessage> responseClass = this.network.getMsgConcept(request).getResponseClass();
+        PendingRequest<R> pending = new PendingRequest<>(responseClass, manager);
+        int requestId;
+        do {
+            // Ids are kept to 30 bits so the response can pack its failed flag alongside.
+            requestId = this.lastRequestId.incrementAndGet() & 0x3FFFFFFF;
+        } while (requestId == 0 || this.pendingRequests.putIfAbsent(requestId, pending) != null);
+
+        int trackedId = requestId;
+        if (timeoutMillis > 0) {
+            pending.timeout = getTimer().schedule(() -> pending.future.completeExceptionally(new TimeoutException(String.format(
+                    "No response to %s after %sms", request.getClass().getName(), timeoutMillis))),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        // Cancelled, timed out or answered, either way the request is done.
+        pending.future.whenComplete((r, e) -> {
+            this.pendingRequests.remove(trackedId, pending);
+            if (pending.timeout != null) {
+                pending.timeout.cancel(false);
+            }
+        });
+        request.setRequestId(requestId);
+        return pending.future;
+    }
+
+    /**
+     * Completes the request the given response belongs to, responses from any other connection than the
+     * one the request was sent to are ignored.
+     *
+     * @param response the response that was received.
+     * @param ctx      the context the response was received in.
+     */
+    void complete(ResponseMessage response, NetworkEvent.Context ctx) {
+        PendingRequest pending = this.pendingRequests.get(response.getRequestId());
+        boolean fromTarget = pending != null && (pending.manager != null
+                ? pending.manager == ctx.getNetworkManager()
+                : ctx.getDirection().getReceptionSide() == LogicalSide.CLIENT);
+        if (!fromTarget || pending.responseClass != response.getClass()) {
+            this.network.getLogger().debug("Ignored {} for unknown request {}", response.getClass().getName(), response.getRequestId());
+            return;
+        }
+
+        if (response.getError() != null) {
+            pending.future.completeExceptionally(new RuntimeException(String.format(
+                    "Request %s failed on the other side, caused by %s", response.getRequestId(), response.getError())));
+        } else {
+            pending.future.complete(response);
+        }
+    }
+
+    /**
+     * Fails all requests sent to the client of the given connection, called once the connection is closed.
+     *
+     * @param manager the connection that was closed.
+     */
+    void release(NetworkManager manager) {
+        this.pendingRequests.values().stream()
+                .filter(p -> p.manager == manager)
+                .forEach(p -> p.future.completeExceptionally(new RuntimeException("The connection was closed before a response arrived")));
+    }
+
+    int getPendingRequests() {
+        return this.pendingRequests.size();
+    }
+
+    long getTimeoutMillis() {
+        return this.timeoutMillis;
+    }
+
+    void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                    .setNameFormat("CompoundNetwork-RequestTimer")
+                    .setDaemon(true)
+                    .build());
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    private static class PendingRequest<R extends ResponseMessage> {
+        private final Class<? extends ResponseMessage> responseClass;
+        private final NetworkManager manager;
+        private final CompletableFuture<R> future;
+        private volatile ScheduledFuture<?> timeout;
+
+        private PendingRequest(Class<? extends ResponseMessage> responseClass, @Nullable NetworkManager manager) {
+            this.responseClass = responseClass;
+            this.manager = manager;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
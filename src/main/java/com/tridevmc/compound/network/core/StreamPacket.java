@@ -0,0 +1,159 @@
+package com.tridevmc.compound.network.core;
+
+import com.tridevmc.compound.network.marshallers.VarIntCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A packet of a stream, either a piece of the streamed data or the control packets used to open, close
+ * and pace a stream.
+ * <p>
+ * For internal use only.
+ */
+public class StreamPacket {
+
+    /**
+     * The discriminator stream packets are registered with, messages may not use this.
+     */
+    public static final int DISCRIMINATOR = 253;
+
+    /**
+     * The most data carried by each packet, small enough to fit in either direction.
+     */
+    public static final int CHUNK_SIZE = MessageFragment.FRAGMENT_SIZE;
+
+    // Sent by the side writing the stream.
+    static final int OPEN = 0;
+    static final int DATA = 1;
+    static final int END = 2;
+    static final int ABORT = 3;
+    // Sent by the side reading the stream.
+    static final int CREDIT = 4;
+    static final int REJECT = 5;
+
+    private static final int MAX_TEXT_LENGTH = 256;
+
+    private final int type;
+    private final int streamId;
+    private final long value;
+    private final String text;
+    private final ByteBuf data;
+
+    private StreamPacket(int type, int streamId, long value, String text, ByteBuf data) {
+        this.type = type;
+        this.streamId = streamId;
+        this.value = value;
+        this.text = text;
+        this.data = data;
+    }
+
+    static StreamPacket open(int streamId, String name, long length) {
+        return new StreamPacket(OPEN, streamId, length, name, null);
+    }
+
+    static StreamPacket data(int streamId, ByteBuf data) {
+        return new StreamPacket(DATA, streamId, 0, null, data);
+    }
+
+    static StreamPacket end(int streamId) {
+        return new StreamPacket(END, streamId, 0, null, null);
+    }
+
+    static StreamPacket abort(int streamId, String reason) {
+        return new StreamPacket(ABORT, streamId, 0, reason, null);
+    }
+
+    static StreamPacket credit(int streamId, int chunks) {
+        return new StreamPacket(CREDIT, streamId, chunks, null, null);
+    }
+
+    static StreamPacket reject(int streamId, String reason) {
+        return new StreamPacket(REJECT, streamId, 0, reason, null);
+    }
+
+    static StreamPacket decode(ByteBuf source) {
+        int type = source.readUnsignedByte();
+        int streamId = VarIntCodec.readVarInt(source);
+        switch (type) {
+            case OPEN:
+                long length = VarIntCodec.readVarLong(source);
+                return new StreamPacket(type, streamId, length - 1, readText(source), null);
+            case DATA:
+                // Retained so the data can be handed to the consumer without copying, released once consumed.
+                return new StreamPacket(type, streamId, 0, null, source.readRetainedSlice(source.readableBytes()));
+            case CREDIT:
+                return new StreamPacket(type, streamId, VarIntCodec.readVarInt(source), null, null);
+            case ABORT:
+            case REJECT:
+                return new StreamPacket(type, streamId, 0, readText(source), null);
+            default:
+                return new StreamPacket(type, streamId, 0, null, null);
+        }
+    }
+
+    void encode(ByteBuf target) {
+        target.writeByte(this.type);
+        VarIntCodec.writeVarInt(target, this.streamId);
+        switch (this.type) {
+            case OPEN:
+                // Unknown lengths are sent as 0.
+                VarIntCodec.writeVarLong(target, this.value + 1);
+                writeText(target, this.text);
+                break;
+            case DATA:
+                target.writeBytes(this.data, this.data.readerIndex(), this.data.readableBytes());
+                break;
+            case CREDIT:
+                VarIntCodec.writeVarInt(target, (int) this.value);
+                break;
+            case ABORT:
+            case REJECT:
+                writeText(target, this.text);
+                break;
+        }
+    }
+
+    private static void writeText(ByteBuf target, String text) {
+        text = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+        int length = ByteBufUtil.utf8Bytes(text);
+        VarIntCodec.writeVarInt(target, length);
+        ByteBufUtil.reserveAndWriteUtf8(target, text, length);
+    }
+
+    private static String readText(ByteBuf source) {
+        int length = VarIntCodec.readVarInt(source);
+        if (length < 0 || length > MAX_TEXT_LENGTH * 3) {
+            throw new RuntimeException(String.format(
+                    "Received stream text of %s bytes, max %s", length, MAX_TEXT_LENGTH * 3));
+        }
+        return source.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+
+    int getType() {
+        return this.type;
+    }
+
+    int getStreamId() {
+        return this.streamId;
+    }
+
+    /**
+     * Gets the length of an opened stream or the number of chunks granted by a credit.
+     */
+    long getValue() {
+        return this.value;
+    }
+
+    /**
+     * Gets the name of an opened stream or the reason a stream was aborted or rejected.
+     */
+    String getText() {
+        return this.text;
+    }
+
+    ByteBuf getData() {
+        return this.data;
+    }
+}
@@ -0,0 +1,223 @@
+package com.tridevmc.compound.network.core;
+
+import com.tridevmc.compound.network.message.EnumHandlerThread;
+import io.netty.buffer.ByteBuf;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.network.NetworkDirection;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reads the streams opened by the other side of a connection, handing their data to the consumer of
+ * each stream and granting the sender more credit as the data is consumed.
+ * <p>
+ * Packets are received on the network thread, the handlers and consumers run on the thread they were
+ * registered with. Data sent beyond the granted credit aborts the stream, so no more than a window of
+ * chunks per stream is ever waiting to be consumed.
+ */
+class StreamReceiver {
+
+    /**
+     * The most streams a single connection may have open at once.
+     */
+    private static final int MAX_STREAMS_PER_CONNECTION = 8;
+
+    private final CompoundNetwork network;
+    private final Map<String, Registration> registrations;
+    private volatile int window = 16;
+
+    StreamReceiver(CompoundNetwork network) {
+        this.network = network;
+        this.registrations = new ConcurrentHashMap<>();
+    }
+
+    void register(String name, EnumHandlerThread thread, IStreamHandler handler) {
+        this.registrations.put(name, new Registration(thread, handler));
+    }
+
+    /**
+     * Handles a packet sent by the writer of a stream.
+     *
+     * @param packet     the received packet.
+     * @param ctx        the context the packet was received in.
+     * @param connection the connection the packet was received from.
+     */
+    void accept(StreamPacket packet, NetworkEvent.Context ctx, CompoundConnection connection) {
+        Map<Integer, IncomingStream> streams = connection.getIncomingStreams();
+        IncomingStream stream = streams.get(packet.getStreamId());
+        switch (packet.getType()) {
+            case StreamPacket.OPEN:
+                this.open(packet, ctx, connection);
+                break;
+            case StreamPacket.DATA:
+                ByteBuf data = packet.getData();
+                if (stream == null) {
+                    // Data sent before the sender heard the stream was closed.
+                    data.release();
+                } else if (stream.credit.decrementAndGet() < 0) {
+                    data.release();
+                    streams.remove(stream.id);
+                    this.execute(stream, connection, () -> this.close(stream, "Sent more than the granted credit"));
+                } else {
+                    this.execute(stream, connection, () -> {
+                        try {
+                            if (!stream.closed) {
+                                stream.consumer.accept(data);
+                                this.consumed(stream);
+                            }
+                        } finally {
+                            data.release();
+                        }
+                    });
+                }
+                break;
+            case StreamPacket.END:
+            case StreamPacket.ABORT:
+                if (stream != null) {
+                    streams.remove(stream.id);
+                    this.execute(stream, connection, () -> {
+                        if (!stream.closed) {
+                            stream.closed = true;
+                            if (packet.getType() == StreamPacket.END) {
+                                stream.consumer.end();
+                            } else {
+                                stream.consumer.abort(packet.getText());
+                            }
+                        }
+                    });
+                }
+                break;
+        }
+    }
+
+    /**
+     * Aborts all streams opened over the given connection, called once the connection is closed.
+     *
+     * @param connection the connection that was closed.
+     */
+    void release(CompoundConnection connection) {
+        Map<Integer, IncomingStream> streams = connection.getIncomingStreams();
+        for (IncomingStream stream : streams.values()) {
+            this.execute(stream, connection, () -> {
+                if (!stream.closed && stream.consumer != null) {
+                    stream.closed = true;
+                    stream.consumer.abort("The connection was closed");
+                }
+            });
+        }
+        streams.clear();
+    }
+
+    int getWindow() {
+        return this.window;
+    }
+
+    void setWindow(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    private void open(StreamPacket packet, NetworkEvent.Context ctx, CompoundConnection connection) {
+        Map<Integer, IncomingStream> streams = connection.getIncomingStreams();
+        Consumer<Object> sink = this.getSink(ctx);
+        Registration registration = this.registrations.get(packet.getText());
+        if (registration == null || streams.size() >= MAX_STREAMS_PER_CONNECTION || streams.containsKey(packet.getStreamId())) {
+            sink.accept(StreamPacket.reject(packet.getStreamId(), registration == null
+                    ? "No handler for streams named " + packet.getText() : "Too many open streams"));
+            return;
+        }
+
+        LogicalSide side = ctx.getDirection().getReceptionSide();
+        IncomingStream stream = new IncomingStream(packet.getStreamId(), registration.thread, side, this.window, sink);
+        streams.put(stream.id, stream);
+        ICompoundNetworkHandler handler = this.network.getHandler(side);
+        this.execute(stream, connection, () -> {
+            stream.consumer = registration.handler.open(handler.getPlayer(ctx), packet.getValue());
+            if (stream.consumer == null) {
+                streams.remove(stream.id, stream);
+                stream.closed = true;
+                sink.accept(StreamPacket.reject(stream.id, "Rejected by the handler"));
+            } else {
+                stream.credit.addAndGet(stream.window);
+                sink.accept(StreamPacket.credit(stream.id, stream.window));
+            }
+        });
+    }
+
+    private void consumed(IncomingStream stream) {
+        // Credit is granted in batches of half a window so the sender isn't sent a packet per chunk.
+        if (++stream.consumed >= Math.max(1, stream.window / 2)) {
+            int granted = stream.consumed;
+            stream.consumed = 0;
+            stream.credit.addAndGet(granted);
+            stream.sink.accept(StreamPacket.credit(stream.id, granted));
+        }
+    }
+
+    private void close(IncomingStream stream, String reason) {
+        if (!stream.closed) {
+            stream.closed = true;
+            stream.sink.accept(StreamPacket.reject(stream.id, reason));
+            if (stream.consumer != null) {
+                stream.consumer.abort(reason);
+            }
+        }
+    }
+
+    private void execute(IncomingStream stream, CompoundConnection connection, Runnable task) {
+        // Queued without a limit, the credit limits how many tasks a stream can have waiting.
+        this.network.getDispatcher().execute(stream.thread, stream.side, connection, () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                this.network.getLogger().error("Failed to consume stream {}, caused by {}", stream.id, e);
+                connection.getIncomingStreams().remove(stream.id, stream);
+                this.close(stream, e.toString());
+            }
+        }, Integer.MAX_VALUE);
+    }
+
+    private Consumer<Object> getSink(NetworkEvent.Context ctx) {
+        if (ctx.getDirection().getReceptionSide() == LogicalSide.SERVER) {
+            return p -> this.network.getNetworkChannel().sendTo(p, ctx.getNetworkManager(), NetworkDirection.PLAY_TO_CLIENT);
+        }
+        return this.network.getNetworkChannel()::sendToServer;
+    }
+
+    private static class Registration {
+        private final EnumHandlerThread thread;
+        private final IStreamHandler handler;
+
+        private Registration(EnumHandlerThread thread, IStreamHandler handler) {
+            this.thread = thread;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * A stream being read, the consumer and consumed count are only used on the thread of the stream.
+     */
+    static class IncomingStream {
+        private final int id;
+        private final EnumHandlerThread thread;
+        private final LogicalSide side;
+        private final int window;
+        private final Consumer<Object> sink;
+        private final AtomicInteger credit;
+        private IStreamConsumer consumer;
+        private int consumed;
+        private volatile boolean closed;
+
+        private IncomingStream(int id, EnumHandlerThread thread, LogicalSide side, int window, Consumer<Object> sink) {
+            this.id = id;
+            this.thread = thread;
+            this.side = side;
+            this.window = window;
+            this.sink = sink;
+            this.credit = new AtomicInteger();
+        }
+    }
+}
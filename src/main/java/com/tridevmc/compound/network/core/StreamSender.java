@@ -0,0 +1,235 @@
+package com.tridevmc.compound.network.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.NetworkManager;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.network.NetworkEvent;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Writes the streams opened by a network, reading each source only as far as the receiver has granted
+ * credit for so a large stream never has more than a window of chunks in flight.
+ * <p>
+ * Sources are read on a small shared pool of stream threads, a few chunks at a time per stream so
+ * streams take turns. Streams can be opened from any thread.
+ */
+class StreamSender {
+
+    /**
+     * The number of chunks a stream sends before giving the other streams a turn.
+     */
+    private static final int CHUNKS_PER_TURN = 4;
+
+    /**
+     * How long to wait before reading again from a source that had nothing to read.
+     */
+    private static final long IDLE_DELAY_MILLIS = 50;
+
+    private static ScheduledThreadPoolExecutor executor;
+
+    private final CompoundNetwork network;
+    private final Map<Integer, OutgoingStream> streams;
+    private final AtomicInteger lastStreamId;
+
+    StreamSender(CompoundNetwork network) {
+        this.network = network;
+        this.streams = new ConcurrentHashMap<>();
+        this.lastStreamId = new AtomicInteger();
+    }
+
+    /**
+     * Opens a stream that writes the given source, nothing is sent until the receiver accepts it.
+     *
+     * @param name    the name the receiver handles the stream with.
+     * @param source  the data to stream, closed once the stream is done.
+     * @param length  the number of bytes in the source, or -1 if unknown.
+     * @param manager the connection of the client the stream is sent to, or null if sent to the server.
+     * @param sink    sends a packet of the stream to the receiver.
+     * @return a future completed once all of the source was sent, cancel it to abort the stream.
+     */
+    CompletableFuture<Void> open(String name, ReadableByteChannel source, long length, @Nullable NetworkManager manager,
+                                 Consumer<Object> sink) {
+        OutgoingStream stream = new OutgoingStream(source, manager, sink);
+        int streamId;
+        do {
+            streamId = this.lastStreamId.incrementAndGet() & Integer.MAX_VALUE;
+        } while (this.streams.putIfAbsent(streamId, stream) != null);
+        stream.id = streamId;
+
+        stream.future.whenComplete((r, e) -> {
+            this.streams.remove(stream.id, stream);
+            if (e != null && !stream.closedByReceiver) {
+                // Cancelled or failed on this side, let the receiver know instead of leaving it waiting.
+                this.send(stream, StreamPacket.abort(stream.id, e.toString()));
+            }
+            try {
+                source.close();
+            } catch (IOException ex) {
+                this.network.getLogger().debug("Failed to close source of stream {}, caused by {}", stream.id, ex);
+            }
+        });
+        if (!this.send(stream, StreamPacket.open(streamId, name, length))) {
+            stream.future.completeExceptionally(new RuntimeException("Failed to open stream " + name));
+        }
+        return stream.future;
+    }
+
+    /**
+     * Handles a credit or rejection sent back by the receiver of a stream, packets from any other
+     * connection than the one the stream was sent to are ignored.
+     *
+     * @param packet the received packet.
+     * @param ctx    the context the packet was received in.
+     */
+    void accept(StreamPacket packet, NetworkEvent.Context ctx) {
+        OutgoingStream stream = this.streams.get(packet.getStreamId());
+        boolean fromTarget = stream != null && (stream.manager != null
+                ? stream.manager == ctx.getNetworkManager()
+                : ctx.getDirection().getReceptionSide() == LogicalSide.CLIENT);
+        if (!fromTarget) {
+            return;
+        }
+
+        if (packet.getType() == StreamPacket.CREDIT) {
+            stream.credit.addAndGet((int) Math.min(packet.getValue(), Integer.MAX_VALUE / 2));
+            stream.schedule();
+        } else {
+            stream.closedByReceiver = true;
+            stream.future.completeExceptionally(new RuntimeException(String.format(
+                    "Stream %s was rejected by the receiver, caused by %s", stream.id, packet.getText())));
+        }
+    }
+
+    /**
+     * Fails all streams sent to the client of the given connection, called once the connection is closed.
+     *
+     * @param manager the connection that was closed.
+     */
+    void release(NetworkManager manager) {
+        this.streams.values().stream()
+                .filter(s -> s.manager == manager)
+                .forEach(s -> {
+                    s.closedByReceiver = true;
+                    s.future.completeExceptionally(new RuntimeException("The connection was closed before the stream was sent"));
+                });
+    }
+
+    int getOpenStreams() {
+        return this.streams.size();
+    }
+
+    private boolean send(OutgoingStream stream, StreamPacket packet) {
+        try {
+            stream.sink.accept(packet);
+            return true;
+        } catch (RuntimeException e) {
+            this.network.getLogger().error("Failed to send packet of stream {}, caused by {}", stream.id, e);
+            return false;
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(2, new ThreadFactoryBuilder()
+                    .setNameFormat("CompoundNetwork-Stream-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return executor;
+    }
+
+    private class OutgoingStream {
+        private final ReadableByteChannel source;
+        private final NetworkManager manager;
+        private final Consumer<Object> sink;
+        private final CompletableFuture<Void> future;
+        private final AtomicInteger credit;
+        private final AtomicBoolean scheduled;
+        private final ByteBuffer chunk;
+        private int id;
+        private volatile boolean closedByReceiver;
+
+        private OutgoingStream(ReadableByteChannel source, @Nullable NetworkManager manager, Consumer<Object> sink) {
+            this.source = source;
+            this.manager = manager;
+            this.sink = sink;
+            this.future = new CompletableFuture<>();
+            this.credit = new AtomicInteger();
+            this.scheduled = new AtomicBoolean();
+            this.chunk = ByteBuffer.allocate(StreamPacket.CHUNK_SIZE);
+        }
+
+        private void schedule() {
+            if (this.scheduled.compareAndSet(false, true)) {
+                getExecutor().execute(this::pump);
+            }
+        }
+
+        private void pump() {
+            try {
+                for (int i = 0; i < CHUNKS_PER_TURN; i++) {
+                    if (this.future.isDone()) {
+                        return;
+                    }
+                    if (this.credit.get() <= 0) {
+                        this.scheduled.set(false);
+                        // Credit granted while we were finishing up would otherwise go unused.
+                        if (this.credit.get() > 0) {
+                            this.schedule();
+                        }
+                        return;
+                    }
+
+                    this.chunk.clear();
+                    boolean ended = false;
+                    while (this.chunk.hasRemaining()) {
+                        int read = this.source.read(this.chunk);
+                        if (read < 0) {
+                            ended = true;
+                            break;
+                        } else if (read == 0) {
+                            break;
+                        }
+                    }
+                    this.chunk.flip();
+
+                    int size = this.chunk.remaining();
+                    if (size > 0) {
+                        // The packet is encoded before the sink returns, so the chunk can be reused.
+                        this.credit.decrementAndGet();
+                        if (!StreamSender.this.send(this, StreamPacket.data(this.id, Unpooled.wrappedBuffer(this.chunk)))) {
+                            this.future.completeExceptionally(new RuntimeException("Failed to send data of stream " + this.id));
+                            return;
+                        }
+                    }
+                    if (ended) {
+                        StreamSender.this.send(this, StreamPacket.end(this.id));
+                        this.future.complete(null);
+                        return;
+                    } else if (size == 0) {
+                        // Nothing to read from a non blocking source, try again later.
+                        getExecutor().schedule(this::pump, IDLE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                }
+                // Out of turns, go to the back of the line.
+                getExecutor().execute(this::pump);
+            } catch (IOException | RuntimeException e) {
+                this.future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.tridevmc.compound.network.core;
+
+/**
+ * A token bucket that refills continuously, the rate and capacity are passed on each use so changes
+ * to a limit apply to existing buckets straight away.
+ * <p>
+ * Not thread safe, each bucket belongs to a single connection.
+ */
+class TokenBucket {
+
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double capacity) {
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token from the bucket if one is available.
+     *
+     * @param rate     the tokens added per second.
+     * @param capacity the most tokens the bucket may hold.
+     * @return true if a token was taken, false if the bucket is empty.
+     */
+    boolean tryAcquire(double rate, double capacity) {
+        this.refill(rate, capacity);
+        if (this.tokens < 1) {
+            return false;
+        }
+        this.tokens--;
+        return true;
+    }
+
+    /**
+     * Takes the given number of tokens from the bucket unless it is empty, the bucket may be left in debt
+     * so amounts larger than its capacity can still be taken.
+     *
+     * @param amount   the number of tokens to take.
+     * @param rate     the tokens added per second.
+     * @param capacity the most tokens the bucket may hold.
+     * @return true if the tokens were taken, false if the bucket is empty.
+     */
+    boolean tryConsume(double amount, double rate, double capacity) {
+        this.refill(rate, capacity);
+        if (this.tokens <= 0) {
+            return false;
+        }
+        this.tokens -= amount;
+        return true;
+    }
+
+    private void refill(double rate, double capacity) {
+        long now = System.nanoTime();
+        this.tokens = Math.min(capacity, this.tokens + (now - this.lastRefill) * rate / 1.0E9D);
+        this.lastRefill = now;
+    }
+}
@@ -0,0 +1,42 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+import java.lang.reflect.Array;
+
+/**
+ * Marshals arrays of objects by writing the length of the array followed by each element using the
+ * marshaller of the component type.
+ * <p>
+ * Elements of the array must not be null.
+ *
+ * @param <T> the component type of the array.
+ */
+public class ArrayMarshaller<T> extends Marshaller<T[]> {
+
+    private final Class<T> componentType;
+    private final Marshaller<T> elementMarshaller;
+
+    public ArrayMarshaller(Class<T> componentType, Marshaller<T> elementMarshaller) {
+        this.componentType = componentType;
+        this.elementMarshaller = elementMarshaller;
+    }
+
+    @Override
+    public T[] readFrom(ByteBuf buf) {
+        int length = DefaultMarshallers.readLength(buf, 1);
+        T[] values = (T[]) Array.newInstance(this.componentType, length);
+        for (int i = 0; i < length; i++) {
+            values[i] = this.elementMarshaller.readFrom(buf);
+        }
+        return values;
+    }
+
+    @Override
+    public void writeTo(ByteBuf buf, T[] obj) {
+        DefaultMarshallers.writeLength(buf, obj.length);
+        for (T value : obj) {
+            this.elementMarshaller.writeTo(buf, value);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of byte values, the primitive methods are used directly for fields of
+ * type byte so their values are never boxed.
+ */
+public abstract class ByteMarshaller extends Marshaller<Byte> {
+
+    /**
+     * Read a previously written byte from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract byte readByte(ByteBuf buf);
+
+    /**
+     * Write the given byte to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeByte(ByteBuf buf, byte value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return byte.class;
+    }
+
+    @Override
+    public final Byte readFrom(ByteBuf buf) {
+        return this.readByte(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Byte obj) {
+        this.writeByte(buf, obj);
+    }
+}
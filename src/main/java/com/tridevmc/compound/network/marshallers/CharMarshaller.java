@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of char values, the primitive methods are used directly for fields of
+ * type char so their values are never boxed.
+ */
+public abstract class CharMarshaller extends Marshaller<Character> {
+
+    /**
+     * Read a previously written char from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract char readChar(ByteBuf buf);
+
+    /**
+     * Write the given char to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeChar(ByteBuf buf, char value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return char.class;
+    }
+
+    @Override
+    public final Character readFrom(ByteBuf buf) {
+        return this.readChar(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Character obj) {
+        this.writeChar(buf, obj);
+    }
+}
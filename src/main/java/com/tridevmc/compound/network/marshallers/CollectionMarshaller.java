@@ -0,0 +1,69 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Marshals collections by writing the size of the collection followed by each element using the
+ * marshaller of the element type, the element type is resolved from the generic type of the field.
+ * <p>
+ * Elements of the collection must not be null.
+ *
+ * @param <T> the element type of the collection.
+ */
+public class CollectionMarshaller<T> extends Marshaller<Collection<T>> {
+
+    private final Marshaller<T> elementMarshaller;
+    private final IntFunction<Collection<T>> factory;
+
+    public CollectionMarshaller(Marshaller<T> elementMarshaller, IntFunction<Collection<T>> factory) {
+        this.elementMarshaller = elementMarshaller;
+        this.factory = factory;
+    }
+
+    /**
+     * Finds a factory for collections that can be assigned to the given type.
+     *
+     * @param collectionType the declared type of the collection.
+     * @return a factory that creates a collection with the given expected size, or null if the type
+     * is not supported.
+     */
+    @Nullable
+    public static <T> IntFunction<Collection<T>> getFactory(Class<?> collectionType) {
+        if (collectionType.isAssignableFrom(ArrayList.class)) {
+            return ArrayList::new;
+        } else if (collectionType.isAssignableFrom(HashSet.class)) {
+            return size -> new HashSet<>(Math.max((int) (size / .75F) + 1, 16));
+        } else if (collectionType.isAssignableFrom(LinkedHashSet.class)) {
+            return size -> new LinkedHashSet<>(Math.max((int) (size / .75F) + 1, 16));
+        } else if (collectionType.isAssignableFrom(TreeSet.class)) {
+            return size -> new TreeSet<>();
+        } else if (collectionType.isAssignableFrom(ArrayDeque.class)) {
+            return ArrayDeque::new;
+        } else if (collectionType.isAssignableFrom(LinkedList.class)) {
+            return size -> new LinkedList<>();
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<T> readFrom(ByteBuf buf) {
+        int size = DefaultMarshallers.readLength(buf, 1);
+        Collection<T> values = this.factory.apply(size);
+        for (int i = 0; i < size; i++) {
+            values.add(this.elementMarshaller.readFrom(buf));
+        }
+        return values;
+    }
+
+    @Override
+    public void writeTo(ByteBuf buf, Collection<T> obj) {
+        DefaultMarshallers.writeLength(buf, obj.size());
+        for (T value : obj) {
+            this.elementMarshaller.writeTo(buf, value);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.tridevmc.compound.network.marshallers;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.ResourceLocation;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the strings, resource locations and item stacks recently sent over a single connection, so
+ * the dictionary marshallers can send a repeated value as a reference to the slot it was stored in.
+ * <p>
+ * Each side of a connection keeps its own copy of the dictionary. Every table has a fixed number of
+ * slots that are filled in order, once full the oldest slot is overwritten. As both sides store
+ * values in the same order they always evict the same slots without having to tell each other.
+ * <p>
+ * Values are written as a var int header followed by the value, 0 for a value that is not stored,
+ * 1 for a value that is stored in the next slot or the index of a slot plus 2 for a stored value.
+ * Item stacks are stored without their count, references to a stack are followed by the count.
+ * <p>
+ * For internal use only.
+ */
+public class ConnectionDictionary {
+
+    public static final int STRING_SLOTS = 1024;
+    public static final int LOCATION_SLOTS = 512;
+    public static final int ITEM_SLOTS = 1024;
+
+    public static final String STRING_MARSHALLER = "DictionaryString";
+    public static final String LOCATION_MARSHALLER = "DictionaryResourceLocation";
+    public static final String ITEM_MARSHALLER = "DictionaryItemStack";
+
+    /**
+     * The longest string that is stored, longer strings are always sent in full.
+     */
+    public static final int MAX_STRING_LENGTH = 256;
+
+    private static final ThreadLocal<ConnectionDictionary> CURRENT = new ThreadLocal<>();
+
+    private final boolean sending;
+    private final Table strings;
+    private final Table locations;
+    private final Table items;
+    private final List<Undo> undoLog;
+
+    /**
+     * Creates an empty dictionary.
+     *
+     * @param sending true for the dictionary of the sending side, which has to find stored values.
+     */
+    public ConnectionDictionary(boolean sending) {
+        this.sending = sending;
+        this.strings = new Table(STRING_SLOTS);
+        this.locations = new Table(LOCATION_SLOTS);
+        this.items = new Table(ITEM_SLOTS);
+        this.undoLog = Lists.newArrayList();
+    }
+
+    /**
+     * Sets the dictionary used by the dictionary marshallers on this thread.
+     *
+     * @param dictionary the dictionary to use, or null to send and expect every value in full.
+     * @return the dictionary that was used before, to be passed to {@link #exit(ConnectionDictionary)}.
+     */
+    @Nullable
+    public static ConnectionDictionary enter(@Nullable ConnectionDictionary dictionary) {
+        ConnectionDictionary previous = CURRENT.get();
+        CURRENT.set(dictionary);
+        return previous;
+    }
+
+    /**
+     * Restores the dictionary that was used before the last call to {@link #enter(ConnectionDictionary)}.
+     *
+     * @param previous the dictionary returned by enter.
+     */
+    public static void exit(@Nullable ConnectionDictionary previous) {
+        CURRENT.set(previous);
+    }
+
+    /**
+     * Checks if the marshaller with the given id reads and writes values through the connection dictionary.
+     *
+     * @param marshallerId the id of the marshaller.
+     * @return true if the marshaller is one of the dictionary marshallers.
+     */
+    public static boolean isDictionaryMarshaller(String marshallerId) {
+        return STRING_MARSHALLER.equals(marshallerId) || LOCATION_MARSHALLER.equals(marshallerId)
+                || ITEM_MARSHALLER.equals(marshallerId);
+    }
+
+    /**
+     * Starts recording the values stored in this dictionary, so they can be undone if the message
+     * being written or read fails part way.
+     */
+    public void begin() {
+        this.undoLog.clear();
+    }
+
+    /**
+     * Undoes every value stored since the last call to {@link #begin()}.
+     */
+    public void rollback() {
+        for (int i = this.undoLog.size() - 1; i >= 0; i--) {
+            Undo undo = this.undoLog.get(i);
+            undo.table.restore(undo);
+        }
+        this.undoLog.clear();
+    }
+
+    static void writeString(ByteBuf buf, String str) {
+        ConnectionDictionary dictionary = CURRENT.get();
+        if (dictionary == null || str.length() > MAX_STRING_LENGTH) {
+            buf.writeByte(0);
+            DefaultMarshallers.writeString(buf, str);
+            return;
+        }
+
+        int slot = dictionary.strings.find(str);
+        if (slot != -1) {
+            VarIntCodec.writeVarInt(buf, slot + 2);
+        } else {
+            buf.writeByte(1);
+            DefaultMarshallers.writeString(buf, str);
+            dictionary.store(dictionary.strings, str, str);
+        }
+    }
+
+    static String readString(ByteBuf buf) {
+        int header = VarIntCodec.readVarInt(buf);
+        if (header >= 2) {
+            return (String) getDictionary().strings.get(header - 2);
+        }
+
+        String str = DefaultMarshallers.readString(buf);
+        if (header == 1) {
+            getDictionary().store(getDictionary().strings, str, str);
+        }
+        return str;
+    }
+
+    static void writeResourceLocation(ByteBuf buf, ResourceLocation location) {
+        ConnectionDictionary dictionary = CURRENT.get();
+        if (dictionary == null) {
+            buf.writeByte(0);
+            DefaultMarshallers.writeResourceLocation(buf, location);
+            return;
+        }
+
+        int slot = dictionary.locations.find(location);
+        if (slot != -1) {
+            VarIntCodec.writeVarInt(buf, slot + 2);
+        } else {
+            buf.writeByte(1);
+            DefaultMarshallers.writeResourceLocation(buf, location);
+            dictionary.store(dictionary.locations, location, location);
+        }
+    }
+
+    static ResourceLocation readResourceLocation(ByteBuf buf) {
+        int header = VarIntCodec.readVarInt(buf);
+        if (header >= 2) {
+            return (ResourceLocation) getDictionary().locations.get(header - 2);
+        }
+
+        ResourceLocation location = DefaultMarshallers.readResourceLocation(buf);
+        if (header == 1) {
+            getDictionary().store(getDictionary().locations, location, location);
+        }
+        return location;
+    }
+
+    static void writeItemStack(ByteBuf buf, ItemStack stack) {
+        ConnectionDictionary dictionary = CURRENT.get();
+        if (dictionary == null || stack.isEmpty()) {
+            buf.writeByte(0);
+            DefaultMarshallers.writeItemStack(buf, stack);
+            return;
+        }
+
+        int slot = dictionary.items.find(new ItemKey(stack.getItem(), stack.getTag()));
+        if (slot != -1) {
+            VarIntCodec.writeVarInt(buf, slot + 2);
+            VarIntCodec.writeVarInt(buf, stack.getCount());
+        } else {
+            buf.writeByte(1);
+            DefaultMarshallers.writeItemStack(buf, stack);
+            // Copy the tag so changes to the stack after it was sent don't change the key.
+            CompoundNBT tag = stack.getTag();
+            dictionary.store(dictionary.items, new ItemKey(stack.getItem(), tag != null ? tag.copy() : null), null);
+        }
+    }
+
+    static ItemStack readItemStack(ByteBuf buf) {
+        int header = VarIntCodec.readVarInt(buf);
+        if (header >= 2) {
+            ItemStack stack = ((ItemStack) getDictionary().items.get(header - 2)).copy();
+            stack.setCount(VarIntCodec.readVarInt(buf));
+            return stack;
+        }
+
+        ItemStack stack = DefaultMarshallers.readItemStack(buf);
+        if (header == 1) {
+            getDictionary().store(getDictionary().items, null, stack.copy());
+        }
+        return stack;
+    }
+
+    private static ConnectionDictionary getDictionary() {
+        ConnectionDictionary dictionary = CURRENT.get();
+        if (dictionary == null) {
+            throw new RuntimeException("Received a dictionary encoded value outside of a connection");
+        }
+        return dictionary;
+    }
+
+    private void store(Table table, Object key, Object value) {
+        // The sending side only needs the keys to find slots, the receiving side only the values.
+        this.undoLog.add(table.store(this.sending ? key : null, this.sending ? null : value));
+    }
+
+    /**
+     * A table of slots filled in order, overwriting the oldest slot once full.
+     */
+    private static class Table {
+        private final Object[] keys;
+        private final Object[] values;
+        private final Map<Object, Integer> slots;
+        private int next;
+
+        private Table(int size) {
+            this.keys = new Object[size];
+            this.values = new Object[size];
+            this.slots = Maps.newHashMap();
+        }
+
+        private int find(Object key) {
+            Integer slot = this.slots.get(key);
+            return slot != null ? slot : -1;
+        }
+
+        private Object get(int slot) {
+            Object value = slot < this.values.length ? this.values[slot] : null;
+            if (value == null) {
+                throw new RuntimeException(String.format("Received a reference to empty dictionary slot %s", slot));
+            }
+            return value;
+        }
+
+        private Undo store(@Nullable Object key, @Nullable Object value) {
+            int slot = this.next;
+            Undo undo = new Undo(this, slot, this.keys[slot], this.values[slot]);
+            this.replace(slot, key, value);
+            this.next = (slot + 1) % this.keys.length;
+            return undo;
+        }
+
+        private void restore(Undo undo) {
+            this.replace(undo.slot, undo.key, undo.value);
+            this.next = undo.slot;
+        }
+
+        private void replace(int slot, @Nullable Object key, @Nullable Object value) {
+            if (this.keys[slot] != null) {
+                this.slots.remove(this.keys[slot]);
+            }
+            this.keys[slot] = key;
+            this.values[slot] = value;
+            if (key != null) {
+                this.slots.put(key, slot);
+            }
+        }
+    }
+
+    private static class Undo {
+        private final Table table;
+        private final int slot;
+        private final Object key;
+        private final Object value;
+
+        private Undo(Table table, int slot, Object key, Object value) {
+            this.table = table;
+            this.slot = slot;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Identifies a stack by its item and tag, leaving out its count.
+     */
+    private static class ItemKey {
+        private final Item item;
+        private final CompoundNBT tag;
+
+        private ItemKey(Item item, @Nullable CompoundNBT tag) {
+            this.item = item;
+            this.tag = tag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ItemKey)) {
+                return false;
+            }
+            ItemKey other = (ItemKey) o;
+            return this.item == other.item && Objects.equals(this.tag, other.tag);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.item) + Objects.hashCode(this.tag);
+        }
+    }
+}
@@ -2,15 +2,22 @@ package com.tridevmc.compound.network.marshallers;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps.EntryTransformer;
 import com.tridevmc.compound.network.message.MessageField;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTSizeTracker;
 import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3i;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.BiConsumer;
@@ -20,60 +27,150 @@ import java.util.function.BiConsumer;
  */
 public class DefaultMarshallers {
 
+    private static final int MAX_STRING_LENGTH = 32767;
+    private static final long MAX_TAG_SIZE = 2097152L;
+
     public static List<MarshallerMetadata> genDefaultMarshallers() {
         List<MarshallerMetadata> out = Lists.newArrayList();
 
         // Register the var int/long stuff first so its less likely to be used.
-        out.add(new MarshallerMetadata(new String[]{"varint"}, new StaticSimpleMarshaller<Integer>(
-                DefaultMarshallers::readVarInt,
-                DefaultMarshallers::writeVarInt),
-                new Class[]{Integer.class, int.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"varlong"}, new StaticSimpleMarshaller<Long>(
-                DefaultMarshallers::readVarLong,
-                DefaultMarshallers::writeVarLong),
-                new Class[]{Long.class, long.class}));
+        out.add(new MarshallerMetadata(new String[]{"varint"}, new IntMarshaller() {
+            @Override
+            public int readInt(ByteBuf buf) {
+                return readVarInt(buf);
+            }
+
+            @Override
+            public void writeInt(ByteBuf buf, int value) {
+                writeVarInt(buf, value);
+            }
+        }, new Class[]{Integer.class, int.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"varlong"}, new LongMarshaller() {
+            @Override
+            public long readLong(ByteBuf buf) {
+                return readVarLong(buf);
+            }
+
+            @Override
+            public void writeLong(ByteBuf buf, long value) {
+                writeVarLong(buf, value);
+            }
+        }, new Class[]{Long.class, long.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"zigzag32"}, new IntMarshaller() {
+            @Override
+            public int readInt(ByteBuf buf) {
+                return VarIntCodec.readZigZagInt(buf);
+            }
+
+            @Override
+            public void writeInt(ByteBuf buf, int value) {
+                VarIntCodec.writeZigZagInt(buf, value);
+            }
+        }, new Class[]{Integer.class, int.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"zigzag64"}, new LongMarshaller() {
+            @Override
+            public long readLong(ByteBuf buf) {
+                return VarIntCodec.readZigZagLong(buf);
+            }
+
+            @Override
+            public void writeLong(ByteBuf buf, long value) {
+                VarIntCodec.writeZigZagLong(buf, value);
+            }
+        }, new Class[]{Long.class, long.class}));
 
         // Register all of the normal marshallers.
-        out.add(new MarshallerMetadata(new String[]{"float"}, new SimpleMarshaller<Float>(
-                ByteBuf::readFloat,
-                ByteBuf::writeFloat),
-                new Class[]{Float.class, float.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"double"}, new SimpleMarshaller<Double>(
-                ByteBuf::readDouble,
-                ByteBuf::writeDouble),
-                new Class[]{Double.class, double.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"byte", "i8"}, new SimpleMarshaller<Byte>(
-                ByteBuf::readByte,
-                ByteBuf::writeByte),
-                new Class[]{Byte.class, byte.class, Integer.class, int.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"short", "i16"}, new SimpleMarshaller<Short>(
-                ByteBuf::readShort,
-                ByteBuf::writeShort),
-                new Class[]{Short.class, short.class, Integer.class, int.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"long", "i64"}, new SimpleMarshaller<Long>(
-                ByteBuf::readLong,
-                ByteBuf::writeLong),
-                new Class[]{Long.class, long.class, Integer.class, int.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"int", "i32"}, new SimpleMarshaller<Integer>(
-                ByteBuf::readInt,
-                ByteBuf::writeInt
-        ), new Class[]{Integer.class, int.class}));
-
-        out.add(new MarshallerMetadata(new String[]{"boolean"}, new SimpleMarshaller<Boolean>(
+        out.add(new MarshallerMetadata(new String[]{"float"}, new FloatMarshaller() {
+            @Override
+            public float readFloat(ByteBuf buf) {
+                return buf.readFloat();
+            }
+
+            @Override
+            public void writeFloat(ByteBuf buf, float value) {
+                buf.writeFloat(value);
+            }
+        }, new Class[]{Float.class, float.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"double"}, new DoubleMarshaller() {
+            @Override
+            public double readDouble(ByteBuf buf) {
+                return buf.readDouble();
+            }
+
+            @Override
+            public void writeDouble(ByteBuf buf, double value) {
+                buf.writeDouble(value);
+            }
+        }, new Class[]{Double.class, double.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"byte", "i8"}, new ByteMarshaller() {
+            @Override
+            public byte readByte(ByteBuf buf) {
+                return buf.readByte();
+            }
+
+            @Override
+            public void writeByte(ByteBuf buf, byte value) {
+                buf.writeByte(value);
+            }
+        }, new Class[]{Byte.class, byte.class, Integer.class, int.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"short", "i16"}, new ShortMarshaller() {
+            @Override
+            public short readShort(ByteBuf buf) {
+                return buf.readShort();
+            }
+
+            @Override
+            public void writeShort(ByteBuf buf, short value) {
+                buf.writeShort(value);
+            }
+        }, new Class[]{Short.class, short.class, Integer.class, int.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"long", "i64"}, new LongMarshaller() {
+            @Override
+            public long readLong(ByteBuf buf) {
+                return buf.readLong();
+            }
+
+            @Override
+            public void writeLong(ByteBuf buf, long value) {
+                buf.writeLong(value);
+            }
+        }, new Class[]{Long.class, long.class, Integer.class, int.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"int", "i32"}, new IntMarshaller() {
+            @Override
+            public int readInt(ByteBuf buf) {
+                return buf.readInt();
+            }
+
+            @Override
+            public void writeInt(ByteBuf buf, int value) {
+                buf.writeInt(value);
+            }
+        }, new Class[]{Integer.class, int.class}));
+
+        out.add(new MarshallerMetadata(new String[]{"boolean"}, new StaticSimpleMarshaller<Boolean>(
                 ByteBuf::readBoolean,
                 ByteBuf::writeBoolean),
                 new Class[]{Boolean.class, boolean.class}));
 
-        out.add(new MarshallerMetadata(new String[]{"char"}, new SimpleMarshaller<Character>(
-                ByteBuf::readChar,
-                ByteBuf::writeChar
-        ), new Class[]{Character.class, char.class}));
+        out.add(new MarshallerMetadata(new String[]{"char"}, new CharMarshaller() {
+            @Override
+            public char readChar(ByteBuf buf) {
+                return buf.readChar();
+            }
+
+            @Override
+            public void writeChar(ByteBuf buf, char value) {
+                buf.writeChar(value);
+            }
+        }, new Class[]{Character.class, char.class}));
 
         out.add(new MarshallerMetadata(new String[]{"Enum", "enum"},
                 new EnumMarshaller(),
@@ -89,12 +186,40 @@ public class DefaultMarshallers {
                 DefaultMarshallers::writeItemStack),
                 new Class[]{ItemStack.class}));
 
+        out.add(new MarshallerMetadata(new String[]{"ResourceLocation"}, new StaticSimpleMarshaller<ResourceLocation>(
+                DefaultMarshallers::readResourceLocation,
+                DefaultMarshallers::writeResourceLocation),
+                new Class[]{ResourceLocation.class}));
+
+        // Only used when set on a field, repeated values are sent as references to the connection dictionary.
+        out.add(new MarshallerMetadata(new String[]{ConnectionDictionary.STRING_MARSHALLER}, new StaticSimpleMarshaller<String>(
+                ConnectionDictionary::readString,
+                ConnectionDictionary::writeString),
+                new Class[]{}));
+
+        out.add(new MarshallerMetadata(new String[]{ConnectionDictionary.LOCATION_MARSHALLER}, new StaticSimpleMarshaller<ResourceLocation>(
+                ConnectionDictionary::readResourceLocation,
+                ConnectionDictionary::writeResourceLocation),
+                new Class[]{}));
+
+        out.add(new MarshallerMetadata(new String[]{ConnectionDictionary.ITEM_MARSHALLER}, new StaticSimpleMarshaller<ItemStack>(
+                ConnectionDictionary::readItemStack,
+                ConnectionDictionary::writeItemStack),
+                new Class[]{}));
+
         out.add(new MarshallerMetadata(new String[]{"NBTTagCompound", "Tag", "NBT"},
                 new StaticSimpleMarshaller<CompoundNBT>(
                         DefaultMarshallers::readTag,
                         DefaultMarshallers::writeTag),
                 new Class[]{CompoundNBT.class}));
 
+        // Only used when set on a field, tags must be marked dirty in the cache when they change.
+        out.add(new MarshallerMetadata(new String[]{"CachedNBT", "CachedTag"},
+                new StaticSimpleMarshaller<CompoundNBT>(
+                        DefaultMarshallers::readTag,
+                        TagCache::writeTag),
+                new Class[]{}));
+
         out.add(new MarshallerMetadata(new String[]{"BlockPos", "Vec3i"},
                 new StaticSimpleMarshaller<BlockPos>(
                         DefaultMarshallers::readBlockPos,
@@ -102,47 +227,299 @@ public class DefaultMarshallers {
                 new Class[]{BlockPos.class, Vec3i.class}));
 
 
+        // Primitive arrays are written in bulk, with the length checked against the readable bytes.
+        out.add(new MarshallerMetadata(new String[]{"byte[]"}, new Marshaller<byte[]>() {
+            @Override
+            public byte[] readFrom(ByteBuf buf) {
+                byte[] values = new byte[readLength(buf, 1)];
+                buf.readBytes(values);
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, byte[] obj) {
+                writeLength(buf, obj.length);
+                buf.writeBytes(obj);
+            }
+        }, new Class[]{byte[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"int[]"}, new Marshaller<int[]>() {
+            @Override
+            public int[] readFrom(ByteBuf buf) {
+                int[] values = new int[readLength(buf, 4)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buf.readInt();
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, int[] obj) {
+                writeLength(buf, obj.length);
+                buf.ensureWritable(obj.length * 4);
+                for (int value : obj) {
+                    buf.writeInt(value);
+                }
+            }
+        }, new Class[]{int[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"long[]"}, new Marshaller<long[]>() {
+            @Override
+            public long[] readFrom(ByteBuf buf) {
+                long[] values = new long[readLength(buf, 8)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buf.readLong();
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, long[] obj) {
+                writeLength(buf, obj.length);
+                buf.ensureWritable(obj.length * 8);
+                for (long value : obj) {
+                    buf.writeLong(value);
+                }
+            }
+        }, new Class[]{long[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"float[]"}, new Marshaller<float[]>() {
+            @Override
+            public float[] readFrom(ByteBuf buf) {
+                float[] values = new float[readLength(buf, 4)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buf.readFloat();
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, float[] obj) {
+                writeLength(buf, obj.length);
+                buf.ensureWritable(obj.length * 4);
+                for (float value : obj) {
+                    buf.writeFloat(value);
+                }
+            }
+        }, new Class[]{float[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"double[]"}, new Marshaller<double[]>() {
+            @Override
+            public double[] readFrom(ByteBuf buf) {
+                double[] values = new double[readLength(buf, 8)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buf.readDouble();
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, double[] obj) {
+                writeLength(buf, obj.length);
+                buf.ensureWritable(obj.length * 8);
+                for (double value : obj) {
+                    buf.writeDouble(value);
+                }
+            }
+        }, new Class[]{double[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"short[]"}, new Marshaller<short[]>() {
+            @Override
+            public short[] readFrom(ByteBuf buf) {
+                short[] values = new short[readLength(buf, 2)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buf.readShort();
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, short[] obj) {
+                writeLength(buf, obj.length);
+                buf.ensureWritable(obj.length * 2);
+                for (short value : obj) {
+                    buf.writeShort(value);
+                }
+            }
+        }, new Class[]{short[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"char[]"}, new Marshaller<char[]>() {
+            @Override
+            public char[] readFrom(ByteBuf buf) {
+                char[] values = new char[readLength(buf, 2)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = buf.readChar();
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, char[] obj) {
+                writeLength(buf, obj.length);
+                buf.ensureWritable(obj.length * 2);
+                for (char value : obj) {
+                    buf.writeChar(value);
+                }
+            }
+        }, new Class[]{char[].class}));
+
+        out.add(new MarshallerMetadata(new String[]{"boolean[]"}, new Marshaller<boolean[]>() {
+            @Override
+            public boolean[] readFrom(ByteBuf buf) {
+                // Booleans are packed eight to a byte, so the usual length check doesn't apply.
+                int length = readVarInt(buf);
+                if (length < 0 || (length + 7) >>> 3 > buf.readableBytes()) {
+                    throw new RuntimeException(String.format(
+                            "Received boolean array of length %s with only %s readable bytes",
+                            length, buf.readableBytes()));
+                }
+                boolean[] values = new boolean[length];
+                int currentByte = 0;
+                for (int i = 0; i < length; i++) {
+                    if ((i & 7) == 0) {
+                        currentByte = buf.readUnsignedByte();
+                    }
+                    values[i] = (currentByte & (1 << (i & 7))) != 0;
+                }
+                return values;
+            }
+
+            @Override
+            public void writeTo(ByteBuf buf, boolean[] obj) {
+                writeLength(buf, obj.length);
+                int currentByte = 0;
+                for (int i = 0; i < obj.length; i++) {
+                    if (obj[i]) {
+                        currentByte |= (1 << (i & 7));
+                    }
+                    if ((i & 7) == 7 || i + 1 == obj.length) {
+                        buf.writeByte(currentByte);
+                        currentByte = 0;
+                    }
+                }
+            }
+        }, new Class[]{boolean[].class}));
+
         return out;
     }
 
     private static void writeVarInt(ByteBuf buf, int toWrite) {
-        new PacketBuffer(buf).writeVarInt(toWrite);
+        VarIntCodec.writeVarInt(buf, toWrite);
     }
 
     private static int readVarInt(ByteBuf buf) {
-        return new PacketBuffer(buf).readVarInt();
+        return VarIntCodec.readVarInt(buf);
     }
 
     private static void writeVarLong(ByteBuf buf, long toWrite) {
-        new PacketBuffer(buf).writeVarLong(toWrite);
+        VarIntCodec.writeVarLong(buf, toWrite);
     }
 
     private static long readVarLong(ByteBuf buf) {
-        return new PacketBuffer(buf).readVarLong();
+        return VarIntCodec.readVarLong(buf);
+    }
+
+    /**
+     * Writes the length of an array or collection.
+     *
+     * @param buf    the buffer to write to.
+     * @param length the length to write.
+     */
+    static void writeLength(ByteBuf buf, int length) {
+        writeVarInt(buf, length);
+    }
+
+    /**
+     * Reads the length of an array or collection, making sure the buffer holds enough bytes for that
+     * many elements so a malformed length can't cause a huge allocation.
+     *
+     * @param buf             the buffer to read from.
+     * @param minElementBytes the minimum number of bytes each element occupies.
+     * @return the length that was read.
+     */
+    static int readLength(ByteBuf buf, int minElementBytes) {
+        int length = readVarInt(buf);
+        if (length < 0 || length > buf.readableBytes() / minElementBytes) {
+            throw new RuntimeException(String.format(
+                    "Received length %s with only %s readable bytes",
+                    length, buf.readableBytes()));
+        }
+        return length;
     }
 
-    private static void writeString(ByteBuf buf, String str) {
-        new PacketBuffer(buf).writeString(str);
+    static void writeString(ByteBuf buf, String str) {
+        // Same wire format and limits as PacketBuffer, but encoded straight into the buffer.
+        int length = ByteBufUtil.utf8Bytes(str);
+        if (length > MAX_STRING_LENGTH) {
+            throw new RuntimeException(String.format(
+                    "String too big (was %s bytes encoded, max %s)", length, MAX_STRING_LENGTH));
+        }
+        writeVarInt(buf, length);
+        ByteBufUtil.reserveAndWriteUtf8(buf, str, length);
     }
 
-    private static String readString(ByteBuf buf) {
-        return new PacketBuffer(buf).readString(32767);
+    static String readString(ByteBuf buf) {
+        int length = readVarInt(buf);
+        if (length < 0 || length > MAX_STRING_LENGTH * 4) {
+            throw new RuntimeException(String.format(
+                    "The received encoded string buffer length is not valid (was %s, max %s)",
+                    length, MAX_STRING_LENGTH * 4));
+        }
+        String str = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        if (str.length() > MAX_STRING_LENGTH) {
+            throw new RuntimeException(String.format(
+                    "The received string length is longer than maximum allowed (%s > %s)",
+                    str.length(), MAX_STRING_LENGTH));
+        }
+        return str;
     }
 
-    private static void writeTag(ByteBuf buf, CompoundNBT tag) {
-        new PacketBuffer(buf).writeCompoundTag(tag);
+    static void writeTag(ByteBuf buf, CompoundNBT tag) {
+        if (tag == null) {
+            buf.writeByte(0);
+            return;
+        }
+
+        try {
+            CompressedStreamTools.write(tag, new ByteBufOutputStream(buf));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write compound tag", e);
+        }
     }
 
     private static CompoundNBT readTag(ByteBuf buf) {
-        return new PacketBuffer(buf).readCompoundTag();
+        if (buf.getByte(buf.readerIndex()) == 0) {
+            buf.skipBytes(1);
+            return null;
+        }
+
+        try {
+            return CompressedStreamTools.read(new ByteBufInputStream(buf), new NBTSizeTracker(MAX_TAG_SIZE));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read compound tag", e);
+        }
     }
 
-    private static void writeItemStack(ByteBuf buf, ItemStack stack) {
-        new PacketBuffer(buf).writeItemStack(stack, false);
+    static void writeItemStack(ByteBuf buf, ItemStack stack) {
+        // Stacks go through PacketBuffer for Forge's share tag handling, reuse the buffer when we can.
+        asPacketBuffer(buf).writeItemStack(stack, false);
     }
 
-    private static ItemStack readItemStack(ByteBuf buf) {
-        return new PacketBuffer(buf).readItemStack();
+    static ItemStack readItemStack(ByteBuf buf) {
+        return asPacketBuffer(buf).readItemStack();
+    }
+
+    static void writeResourceLocation(ByteBuf buf, ResourceLocation location) {
+        writeString(buf, location.toString());
+    }
+
+    static ResourceLocation readResourceLocation(ByteBuf buf) {
+        return new ResourceLocation(readString(buf));
+    }
+
+    private static PacketBuffer asPacketBuffer(ByteBuf buf) {
+        return buf instanceof PacketBuffer ? (PacketBuffer) buf : new PacketBuffer(buf);
     }
 
     private static BlockPos readBlockPos(ByteBuf buf) {
@@ -153,13 +530,13 @@ public class DefaultMarshallers {
         writeVarLong(buf, value.toLong());
     }
 
-    private static class SimpleMarshaller<T> extends Marshaller<T> {
+    private static class StaticSimpleMarshaller<T> extends Marshaller<T> {
 
         private final Function<ByteBuf, T> readMethod;
-        private final EntryTransformer<ByteBuf, T, ByteBuf> writeMethod;
+        private final BiConsumer<ByteBuf, T> writeMethod;
 
-        public SimpleMarshaller(Function<ByteBuf, T> readMethod,
-                                EntryTransformer<ByteBuf, T, ByteBuf> writeMethod) {
+        public StaticSimpleMarshaller(Function<ByteBuf, T> readMethod,
+                                      BiConsumer<ByteBuf, T> writeMethod) {
             this.readMethod = readMethod;
             this.writeMethod = writeMethod;
 
@@ -174,45 +551,41 @@ public class DefaultMarshallers {
 
         @Override
         public void writeTo(ByteBuf buf, T obj) {
-            this.writeMethod.transformEntry(buf, obj);
+            this.writeMethod.accept(buf, obj);
         }
     }
 
-    private static class StaticSimpleMarshaller<T> extends Marshaller<T> {
+    private static class EnumMarshaller<T extends Enum> extends Marshaller<T> {
 
-        private final Function<ByteBuf, T> readMethod;
-        private final BiConsumer<ByteBuf, T> writeMethod;
+        private final T[] constants;
 
-        public StaticSimpleMarshaller(Function<ByteBuf, T> readMethod,
-                                      BiConsumer<ByteBuf, T> writeMethod) {
-            this.readMethod = readMethod;
-            this.writeMethod = writeMethod;
-
-            Objects.requireNonNull(readMethod);
-            Objects.requireNonNull(writeMethod);
+        public EnumMarshaller() {
+            this.constants = null;
         }
 
-        @Override
-        public T readFrom(ByteBuf buf) {
-            return this.readMethod.apply(buf);
+        public EnumMarshaller(Class<T> enumClass) {
+            this.constants = enumClass.getEnumConstants();
         }
 
         @Override
-        public void writeTo(ByteBuf buf, T obj) {
-            this.writeMethod.accept(buf, obj);
+        public Marshaller<T> specialize(Class<?> type) {
+            return type.isEnum() ? new EnumMarshaller<>((Class<T>) type) : this;
         }
-    }
-
-    private static class EnumMarshaller<T extends Enum> extends Marshaller<T> {
 
         @Override
         public T readFrom(MessageField field, ByteBuf buf) {
+            if (this.constants != null) {
+                return this.readFrom(buf);
+            }
             return (T) field.getType().getEnumConstants()[buf.readInt()];
         }
 
         @Override
         public T readFrom(ByteBuf buf) {
-            throw new RuntimeException("Unable to read enum with no field context.");
+            if (this.constants == null) {
+                throw new RuntimeException("Unable to read enum with no field context.");
+            }
+            return this.constants[buf.readInt()];
         }
 
         @Override
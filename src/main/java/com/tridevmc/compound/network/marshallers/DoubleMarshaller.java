@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of double values, the primitive methods are used directly for fields of
+ * type double so their values are never boxed.
+ */
+public abstract class DoubleMarshaller extends Marshaller<Double> {
+
+    /**
+     * Read a previously written double from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract double readDouble(ByteBuf buf);
+
+    /**
+     * Write the given double to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeDouble(ByteBuf buf, double value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return double.class;
+    }
+
+    @Override
+    public final Double readFrom(ByteBuf buf) {
+        return this.readDouble(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Double obj) {
+        this.writeDouble(buf, obj);
+    }
+}
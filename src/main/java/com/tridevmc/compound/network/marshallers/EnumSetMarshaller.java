@@ -0,0 +1,50 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.EnumSet;
+
+/**
+ * Marshals enum sets as a bitmap with one bit for each constant of the enum.
+ *
+ * @param <E> the type of enum in the set.
+ */
+public class EnumSetMarshaller<E extends Enum<E>> extends Marshaller<EnumSet<E>> {
+
+    private final Class<E> enumClass;
+    private final E[] constants;
+
+    public EnumSetMarshaller(Class<E> enumClass) {
+        this.enumClass = enumClass;
+        this.constants = enumClass.getEnumConstants();
+    }
+
+    @Override
+    public EnumSet<E> readFrom(ByteBuf buf) {
+        EnumSet<E> values = EnumSet.noneOf(this.enumClass);
+        int currentByte = 0;
+        for (int i = 0; i < this.constants.length; i++) {
+            if ((i & 7) == 0) {
+                currentByte = buf.readUnsignedByte();
+            }
+            if ((currentByte & (1 << (i & 7))) != 0) {
+                values.add(this.constants[i]);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void writeTo(ByteBuf buf, EnumSet<E> obj) {
+        int currentByte = 0;
+        for (int i = 0; i < this.constants.length; i++) {
+            if (obj.contains(this.constants[i])) {
+                currentByte |= (1 << (i & 7));
+            }
+            if ((i & 7) == 7 || i + 1 == this.constants.length) {
+                buf.writeByte(currentByte);
+                currentByte = 0;
+            }
+        }
+    }
+}
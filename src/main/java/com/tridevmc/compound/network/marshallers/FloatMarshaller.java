@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of float values, the primitive methods are used directly for fields of
+ * type float so their values are never boxed.
+ */
+public abstract class FloatMarshaller extends Marshaller<Float> {
+
+    /**
+     * Read a previously written float from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract float readFloat(ByteBuf buf);
+
+    /**
+     * Write the given float to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeFloat(ByteBuf buf, float value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return float.class;
+    }
+
+    @Override
+    public final Float readFrom(ByteBuf buf) {
+        return this.readFloat(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Float obj) {
+        this.writeFloat(buf, obj);
+    }
+}
@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of int values, the primitive methods are used directly for fields of
+ * type int so their values are never boxed.
+ */
+public abstract class IntMarshaller extends Marshaller<Integer> {
+
+    /**
+     * Read a previously written int from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract int readInt(ByteBuf buf);
+
+    /**
+     * Write the given int to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeInt(ByteBuf buf, int value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return int.class;
+    }
+
+    @Override
+    public final Integer readFrom(ByteBuf buf) {
+        return this.readInt(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Integer obj) {
+        this.writeInt(buf, obj);
+    }
+}
@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of long values, the primitive methods are used directly for fields of
+ * type long so their values are never boxed.
+ */
+public abstract class LongMarshaller extends Marshaller<Long> {
+
+    /**
+     * Read a previously written long from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract long readLong(ByteBuf buf);
+
+    /**
+     * Write the given long to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeLong(ByteBuf buf, long value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return long.class;
+    }
+
+    @Override
+    public final Long readFrom(ByteBuf buf) {
+        return this.readLong(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Long obj) {
+        this.writeLong(buf, obj);
+    }
+}
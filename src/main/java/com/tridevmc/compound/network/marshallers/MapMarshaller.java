@@ -0,0 +1,71 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Marshals maps by writing the size of the map followed by each key and value using the marshallers
+ * of the key and value types, which are resolved from the generic type of the field.
+ * <p>
+ * Keys and values of the map must not be null.
+ *
+ * @param <K> the key type of the map.
+ * @param <V> the value type of the map.
+ */
+public class MapMarshaller<K, V> extends Marshaller<Map<K, V>> {
+
+    private final Marshaller<K> keyMarshaller;
+    private final Marshaller<V> valueMarshaller;
+    private final IntFunction<Map<K, V>> factory;
+
+    public MapMarshaller(Marshaller<K> keyMarshaller, Marshaller<V> valueMarshaller, IntFunction<Map<K, V>> factory) {
+        this.keyMarshaller = keyMarshaller;
+        this.valueMarshaller = valueMarshaller;
+        this.factory = factory;
+    }
+
+    /**
+     * Finds a factory for maps that can be assigned to the given type.
+     *
+     * @param mapType the declared type of the map.
+     * @return a factory that creates a map with the given expected size, or null if the type is not
+     * supported.
+     */
+    @Nullable
+    public static <K, V> IntFunction<Map<K, V>> getFactory(Class<?> mapType) {
+        if (mapType.isAssignableFrom(HashMap.class)) {
+            return size -> new HashMap<>(Math.max((int) (size / .75F) + 1, 16));
+        } else if (mapType.isAssignableFrom(LinkedHashMap.class)) {
+            return size -> new LinkedHashMap<>(Math.max((int) (size / .75F) + 1, 16));
+        } else if (mapType.isAssignableFrom(TreeMap.class)) {
+            return size -> new TreeMap<>();
+        } else if (mapType.isAssignableFrom(ConcurrentHashMap.class)) {
+            return size -> new ConcurrentHashMap<>(Math.max((int) (size / .75F) + 1, 16));
+        }
+        return null;
+    }
+
+    @Override
+    public Map<K, V> readFrom(ByteBuf buf) {
+        int size = DefaultMarshallers.readLength(buf, 2);
+        Map<K, V> values = this.factory.apply(size);
+        for (int i = 0; i < size; i++) {
+            K key = this.keyMarshaller.readFrom(buf);
+            values.put(key, this.valueMarshaller.readFrom(buf));
+        }
+        return values;
+    }
+
+    @Override
+    public void writeTo(ByteBuf buf, Map<K, V> obj) {
+        DefaultMarshallers.writeLength(buf, obj.size());
+        for (Map.Entry<K, V> entry : obj.entrySet()) {
+            this.keyMarshaller.writeTo(buf, entry.getKey());
+            this.valueMarshaller.writeTo(buf, entry.getValue());
+        }
+    }
+}
@@ -51,6 +51,28 @@ public abstract class Marshaller<T> {
      */
     public abstract void writeTo(ByteBuf buf, T obj);
 
+    /**
+     * Gets the primitive type this marshaller can read and write without boxing, marshallers that
+     * support this extend one of the primitive marshaller classes such as {@link IntMarshaller}.
+     *
+     * @return the primitive type this marshaller handles, or null if it only handles objects.
+     */
+    public Class<?> getPrimitiveType() {
+        return null;
+    }
+
+    /**
+     * Gets a marshaller for the given concrete type, called when this marshaller is selected for a
+     * subtype of a type it was registered for. Override this if the marshaller needs to know the exact
+     * type to read values without the context of a field, such as the elements of a collection.
+     *
+     * @param type the concrete type that will be marshalled.
+     * @return a marshaller for the given type, by default this marshaller.
+     */
+    public Marshaller<T> specialize(Class<?> type) {
+        return this;
+    }
+
     /**
      * Creates a message field for the given field using this marshaller.
      *
@@ -0,0 +1,137 @@
+package com.tridevmc.compound.network.marshallers;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the id of the marshaller to use for a type from the types marshallers were registered for.
+ * <p>
+ * A type registered directly is always used, otherwise the superclasses and interfaces of the type are
+ * searched nearest first. Of the registered types found at the same distance the one with the highest
+ * {@link EnumMarshallerPriority} wins, followed by the one registered first. Registering the same type
+ * again replaces its marshaller unless it was registered with a higher priority.
+ * <p>
+ * Resolved ids are remembered for each type, so resolving a type again is a single lookup.
+ */
+public class MarshallerResolver {
+
+    private static final Registration NONE = new Registration(null, EnumMarshallerPriority.LOW, -1);
+
+    private final Map<Class<?>, Registration> registrations;
+    private volatile ClassValue<Registration> resolved;
+
+    public MarshallerResolver() {
+        this.registrations = Maps.newHashMap();
+        this.resolved = this.createCache();
+    }
+
+    /**
+     * Registers the marshaller with the given id for the given type and its subtypes.
+     *
+     * @param type     the type the marshaller accepts.
+     * @param id       the id of the marshaller.
+     * @param priority the priority of the marshaller.
+     */
+    public synchronized void register(Class<?> type, String id, EnumMarshallerPriority priority) {
+        Registration existing = this.registrations.get(type);
+        if (existing != null && existing.priority.getRank() > priority.getRank()) {
+            return;
+        }
+        int order = existing != null ? existing.order : this.registrations.size();
+        this.registrations.put(type, new Registration(id, priority, order));
+
+        // Anything resolved so far may now resolve differently.
+        this.resolved = this.createCache();
+    }
+
+    /**
+     * Gets the id of the marshaller registered for exactly the given type.
+     *
+     * @param type the type to find the marshaller for.
+     * @return the id of the marshaller, or null if none was registered for the type itself.
+     */
+    @Nullable
+    public synchronized String getRegisteredId(Class<?> type) {
+        Registration registration = this.registrations.get(type);
+        return registration != null ? registration.id : null;
+    }
+
+    /**
+     * Resolves the id of the marshaller for the given type, searching its superclasses and interfaces
+     * if it was not registered itself.
+     *
+     * @param type the type to resolve the marshaller for.
+     * @return the id of the marshaller, or null if no marshaller accepts the type.
+     */
+    @Nullable
+    public String resolve(Class<?> type) {
+        return this.resolved.get(type).id;
+    }
+
+    private ClassValue<Registration> createCache() {
+        return new ClassValue<Registration>() {
+            @Override
+            protected Registration computeValue(Class<?> type) {
+                return MarshallerResolver.this.search(type);
+            }
+        };
+    }
+
+    private synchronized Registration search(Class<?> type) {
+        // Breadth first, so every type at one distance is looked at before any further away.
+        List<Class<?>> level = Lists.newArrayList(type);
+        Set<Class<?>> visited = Sets.newHashSet(type);
+        while (!level.isEmpty()) {
+            Registration best = null;
+            for (Class<?> candidate : level) {
+                Registration registration = this.registrations.get(candidate);
+                if (registration != null && (best == null || registration.isPreferredTo(best))) {
+                    best = registration;
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+
+            List<Class<?>> next = Lists.newArrayList();
+            for (Class<?> candidate : level) {
+                Class<?> superclass = candidate.getSuperclass();
+                if (superclass != null && visited.add(superclass)) {
+                    next.add(superclass);
+                }
+                for (Class<?> implemented : candidate.getInterfaces()) {
+                    if (visited.add(implemented)) {
+                        next.add(implemented);
+                    }
+                }
+            }
+            level = next;
+        }
+        return NONE;
+    }
+
+    private static class Registration {
+        private final String id;
+        private final EnumMarshallerPriority priority;
+        private final int order;
+
+        private Registration(String id, EnumMarshallerPriority priority, int order) {
+            this.id = id;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        private boolean isPreferredTo(Registration other) {
+            if (this.priority.getRank() != other.priority.getRank()) {
+                return this.priority.getRank() > other.priority.getRank();
+            }
+            return this.order < other.order;
+        }
+    }
+}
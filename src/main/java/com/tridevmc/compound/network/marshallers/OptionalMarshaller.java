@@ -0,0 +1,33 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Optional;
+
+/**
+ * Marshals optionals by writing whether a value is present followed by the value itself using the
+ * marshaller of the value type.
+ *
+ * @param <T> the type of value in the optional.
+ */
+public class OptionalMarshaller<T> extends Marshaller<Optional<T>> {
+
+    private final Marshaller<T> valueMarshaller;
+
+    public OptionalMarshaller(Marshaller<T> valueMarshaller) {
+        this.valueMarshaller = valueMarshaller;
+    }
+
+    @Override
+    public Optional<T> readFrom(ByteBuf buf) {
+        return buf.readBoolean() ? Optional.of(this.valueMarshaller.readFrom(buf)) : Optional.empty();
+    }
+
+    @Override
+    public void writeTo(ByteBuf buf, Optional<T> obj) {
+        buf.writeBoolean(obj.isPresent());
+        if (obj.isPresent()) {
+            this.valueMarshaller.writeTo(buf, obj.get());
+        }
+    }
+}
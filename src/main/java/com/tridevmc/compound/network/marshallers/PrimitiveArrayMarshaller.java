@@ -0,0 +1,133 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Marshals arrays of primitives element by element using a primitive marshaller, used when a field
+ * holding a primitive array specifies the marshaller to use for its elements.
+ * <p>
+ * Primitive arrays without a specified marshaller use the bulk marshallers in {@link DefaultMarshallers}.
+ */
+public class PrimitiveArrayMarshaller extends Marshaller<Object> {
+
+    private final Marshaller elementMarshaller;
+    private final Class<?> componentType;
+
+    public PrimitiveArrayMarshaller(Marshaller elementMarshaller) {
+        this.elementMarshaller = elementMarshaller;
+        this.componentType = elementMarshaller.getPrimitiveType();
+        if (this.componentType == null) {
+            throw new IllegalArgumentException("Marshaller for elements of a primitive array must be primitive.");
+        }
+    }
+
+    @Override
+    public Object readFrom(ByteBuf buf) {
+        int length = DefaultMarshallers.readLength(buf, 1);
+        if (this.componentType == int.class) {
+            int[] values = new int[length];
+            IntMarshaller marshaller = (IntMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readInt(buf);
+            }
+            return values;
+        } else if (this.componentType == long.class) {
+            long[] values = new long[length];
+            LongMarshaller marshaller = (LongMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readLong(buf);
+            }
+            return values;
+        } else if (this.componentType == float.class) {
+            float[] values = new float[length];
+            FloatMarshaller marshaller = (FloatMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readFloat(buf);
+            }
+            return values;
+        } else if (this.componentType == double.class) {
+            double[] values = new double[length];
+            DoubleMarshaller marshaller = (DoubleMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readDouble(buf);
+            }
+            return values;
+        } else if (this.componentType == short.class) {
+            short[] values = new short[length];
+            ShortMarshaller marshaller = (ShortMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readShort(buf);
+            }
+            return values;
+        } else if (this.componentType == byte.class) {
+            byte[] values = new byte[length];
+            ByteMarshaller marshaller = (ByteMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readByte(buf);
+            }
+            return values;
+        } else if (this.componentType == char.class) {
+            char[] values = new char[length];
+            CharMarshaller marshaller = (CharMarshaller) this.elementMarshaller;
+            for (int i = 0; i < length; i++) {
+                values[i] = marshaller.readChar(buf);
+            }
+            return values;
+        }
+        throw new IllegalStateException("Unknown primitive type " + this.componentType);
+    }
+
+    @Override
+    public void writeTo(ByteBuf buf, Object obj) {
+        if (this.componentType == int.class) {
+            int[] values = (int[]) obj;
+            IntMarshaller marshaller = (IntMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (int value : values) {
+                marshaller.writeInt(buf, value);
+            }
+        } else if (this.componentType == long.class) {
+            long[] values = (long[]) obj;
+            LongMarshaller marshaller = (LongMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (long value : values) {
+                marshaller.writeLong(buf, value);
+            }
+        } else if (this.componentType == float.class) {
+            float[] values = (float[]) obj;
+            FloatMarshaller marshaller = (FloatMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (float value : values) {
+                marshaller.writeFloat(buf, value);
+            }
+        } else if (this.componentType == double.class) {
+            double[] values = (double[]) obj;
+            DoubleMarshaller marshaller = (DoubleMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (double value : values) {
+                marshaller.writeDouble(buf, value);
+            }
+        } else if (this.componentType == short.class) {
+            short[] values = (short[]) obj;
+            ShortMarshaller marshaller = (ShortMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (short value : values) {
+                marshaller.writeShort(buf, value);
+            }
+        } else if (this.componentType == byte.class) {
+            byte[] values = (byte[]) obj;
+            ByteMarshaller marshaller = (ByteMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (byte value : values) {
+                marshaller.writeByte(buf, value);
+            }
+        } else if (this.componentType == char.class) {
+            char[] values = (char[]) obj;
+            CharMarshaller marshaller = (CharMarshaller) this.elementMarshaller;
+            DefaultMarshallers.writeLength(buf, values.length);
+            for (char value : values) {
+                marshaller.writeChar(buf, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Base class for marshallers of short values, the primitive methods are used directly for fields of
+ * type short so their values are never boxed.
+ */
+public abstract class ShortMarshaller extends Marshaller<Short> {
+
+    /**
+     * Read a previously written short from the given ByteBuf.
+     *
+     * @param buf the buffer containing the value.
+     * @return the value read from the buffer.
+     */
+    public abstract short readShort(ByteBuf buf);
+
+    /**
+     * Write the given short to the given ByteBuf for sending over the network.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public abstract void writeShort(ByteBuf buf, short value);
+
+    @Override
+    public final Class<?> getPrimitiveType() {
+        return short.class;
+    }
+
+    @Override
+    public final Short readFrom(ByteBuf buf) {
+        return this.readShort(buf);
+    }
+
+    @Override
+    public final void writeTo(ByteBuf buf, Short obj) {
+        this.writeShort(buf, obj);
+    }
+}
@@ -0,0 +1,257 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.nbt.CompoundNBT;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the encoded bytes of compound tags sent with the "CachedNBT" marshaller, so a tag that is sent
+ * again unchanged, to the same or another player, is copied instead of serialized again.
+ * <p>
+ * Tags are cached by identity, so a tag should be marked dirty with {@link #markDirty(CompoundNBT)} after
+ * it is modified. Every tag has a version that changes when it is marked dirty, bytes encoded from an
+ * older version of a tag are never cached.
+ * <p>
+ * Tags modified without being marked dirty can be found with {@link #setValidating(boolean)}, the hash
+ * of a tag is then compared before its cached bytes are sent. Hashing walks the whole tag, so it is
+ * meant for debugging and is off by default.
+ * <p>
+ * The cache is shared by every network and limited to a number of bytes and tags, the least recently
+ * sent tags are evicted first once it is full. Tags are only weakly referenced, so the tags of unloaded
+ * chunks and tile entities are dropped from the cache once they are collected.
+ */
+public final class TagCache {
+
+    private static final int MAX_ENTRIES = 4096;
+    private static final Logger LOG = LogManager.getLogger("CompoundNetwork-TagCache");
+
+    // Access ordered, the first entries are the least recently sent tags.
+    private static final Map<TagKey, Entry> ENTRIES = new LinkedHashMap<>(64, 0.75F, true);
+    private static final ReferenceQueue<CompoundNBT> COLLECTED = new ReferenceQueue<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder STALE_HITS = new LongAdder();
+    private static volatile boolean validating;
+    private static long capacity = 8388608L;
+    private static long cachedBytes;
+    private static long lastVersion;
+
+    private TagCache() {
+    }
+
+    /**
+     * Marks the given tag as modified, the next time it is sent it is serialized again.
+     *
+     * @param tag the tag that was modified.
+     */
+    public static synchronized void markDirty(CompoundNBT tag) {
+        expunge();
+        Entry entry = ENTRIES.get(new TagKey(tag, null));
+        if (entry != null) {
+            entry.version = ++lastVersion;
+            if (entry.bytes != null) {
+                cachedBytes -= entry.bytes.length;
+                entry.bytes = null;
+            }
+        }
+    }
+
+    /**
+     * Sets the most bytes the cache may hold, evicting the least recently sent tags if it holds more.
+     *
+     * @param capacity the capacity in bytes, 0 disables caching.
+     */
+    public static synchronized void setCapacity(long capacity) {
+        TagCache.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Sets whether the hash of a tag is compared before its cached bytes are sent, a tag that was
+     * modified without being marked dirty is then serialized again and counted as stale.
+     *
+     * @param validating true to hash every tag that is sent, false to rely on marking tags dirty alone.
+     */
+    public static void setValidating(boolean validating) {
+        TagCache.validating = validating;
+    }
+
+    public static boolean isValidating() {
+        return validating;
+    }
+
+    public static synchronized long getCapacity() {
+        return capacity;
+    }
+
+    public static synchronized long getCachedBytes() {
+        expunge();
+        return cachedBytes;
+    }
+
+    /**
+     * Gets the number of times a tag was sent from the cache.
+     *
+     * @return the number of cache hits.
+     */
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    /**
+     * Gets the number of times a tag had to be serialized.
+     *
+     * @return the number of cache misses.
+     */
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Gets the number of times the cached bytes of a tag were outdated because the tag was modified
+     * without being marked dirty, these are counted as misses as well. Only counted while validating.
+     *
+     * @return the number of stale cache hits.
+     */
+    public static long getStaleHits() {
+        return STALE_HITS.sum();
+    }
+
+    /**
+     * Writes the given tag, copying its cached bytes if it has not been marked dirty since it was last
+     * serialized.
+     *
+     * @param buf the buffer to write to.
+     * @param tag the tag to write.
+     */
+    static void writeTag(ByteBuf buf, CompoundNBT tag) {
+        if (tag == null) {
+            DefaultMarshallers.writeTag(buf, null);
+            return;
+        }
+
+        TagKey key = new TagKey(tag, null);
+        boolean validating = TagCache.validating;
+        int hash = validating ? tag.hashCode() : 0;
+        byte[] bytes;
+        long version;
+        synchronized (TagCache.class) {
+            expunge();
+            Entry entry = ENTRIES.get(key);
+            if (entry == null) {
+                entry = new Entry(++lastVersion);
+                ENTRIES.put(new TagKey(tag, COLLECTED), entry);
+                if (ENTRIES.size() > MAX_ENTRIES) {
+                    evict();
+                }
+            } else if (validating && entry.bytes != null && entry.hashed && entry.hash != hash) {
+                // Modified without being marked dirty, the cached bytes belong to an older version.
+                entry.version = ++lastVersion;
+                cachedBytes -= entry.bytes.length;
+                entry.bytes = null;
+                if (STALE_HITS.sum() == 0) {
+                    LOG.warn("A cached tag was modified without being marked dirty, it is serialized again but "
+                            + "TagCache.markDirty should be called after modifying a tag");
+                }
+                STALE_HITS.increment();
+            } else if (validating && entry.bytes != null && !entry.hashed) {
+                // Cached before validating was turned on, compare against this version from now on.
+                entry.hash = hash;
+                entry.hashed = true;
+            }
+            bytes = entry.bytes;
+            version = entry.version;
+        }
+        if (bytes != null) {
+            HITS.increment();
+            buf.writeBytes(bytes);
+            return;
+        }
+
+        MISSES.increment();
+        int start = buf.writerIndex();
+        DefaultMarshallers.writeTag(buf, tag);
+        int length = buf.writerIndex() - start;
+        synchronized (TagCache.class) {
+            // Only keep the bytes if the tag was not marked dirty or evicted while it was serialized.
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && entry.version == version && entry.bytes == null && length <= capacity) {
+                entry.bytes = new byte[length];
+                entry.hash = hash;
+                entry.hashed = validating;
+                buf.getBytes(start, entry.bytes);
+                cachedBytes += length;
+                evict();
+            }
+        }
+    }
+
+    private static void expunge() {
+        Reference<? extends CompoundNBT> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            Entry entry = ENTRIES.remove(collected);
+            if (entry != null && entry.bytes != null) {
+                cachedBytes -= entry.bytes.length;
+            }
+        }
+    }
+
+    private static void evict() {
+        Iterator<Entry> entries = ENTRIES.values().iterator();
+        while (entries.hasNext() && (cachedBytes > capacity || ENTRIES.size() > MAX_ENTRIES)) {
+            Entry entry = entries.next();
+            if (entry.bytes != null) {
+                cachedBytes -= entry.bytes.length;
+            }
+            entries.remove();
+        }
+    }
+
+    /**
+     * Compares tags by identity, a modified tag is still the same tag. Keys whose tag was collected are
+     * only equal to themselves.
+     */
+    private static class TagKey extends WeakReference<CompoundNBT> {
+        private final int hash;
+
+        private TagKey(CompoundNBT tag, @Nullable ReferenceQueue<CompoundNBT> queue) {
+            super(tag, queue);
+            this.hash = System.identityHashCode(tag);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            CompoundNBT tag = this.get();
+            return tag != null && o instanceof TagKey && ((TagKey) o).get() == tag;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static class Entry {
+        private long version;
+        private byte[] bytes;
+        private int hash;
+        private boolean hashed;
+
+        private Entry(long version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.tridevmc.compound.network.marshallers;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reads and writes variable length integers directly on a ByteBuf, compatible with the encoding used
+ * by PacketBuffer but without wrapping the buffer for every value.
+ * <p>
+ * ZigZag variants are provided for signed values, these map small negative numbers to small positive
+ * numbers so they still encode to a single byte.
+ */
+public final class VarIntCodec {
+
+    private VarIntCodec() {
+    }
+
+    /**
+     * Gets the number of bytes the given value occupies when written as a var int.
+     *
+     * @param value the value to measure.
+     * @return the number of bytes between 1 and 5.
+     */
+    public static int varIntSize(int value) {
+        if ((value & 0xFFFFFF80) == 0) {
+            return 1;
+        } else if ((value & 0xFFFFC000) == 0) {
+            return 2;
+        } else if ((value & 0xFFE00000) == 0) {
+            return 3;
+        } else if ((value & 0xF0000000) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * Writes the given value as a var int, using a single write call for each size.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public static void writeVarInt(ByteBuf buf, int value) {
+        if ((value & 0xFFFFFF80) == 0) {
+            buf.writeByte(value);
+        } else if ((value & 0xFFFFC000) == 0) {
+            buf.writeShort((value & 0x7F | 0x80) << 8
+                    | value >>> 7);
+        } else if ((value & 0xFFE00000) == 0) {
+            buf.writeMedium((value & 0x7F | 0x80) << 16
+                    | (value >>> 7 & 0x7F | 0x80) << 8
+                    | value >>> 14);
+        } else if ((value & 0xF0000000) == 0) {
+            buf.writeInt((value & 0x7F | 0x80) << 24
+                    | (value >>> 7 & 0x7F | 0x80) << 16
+                    | (value >>> 14 & 0x7F | 0x80) << 8
+                    | value >>> 21);
+        } else {
+            buf.writeInt((value & 0x7F | 0x80) << 24
+                    | (value >>> 7 & 0x7F | 0x80) << 16
+                    | (value >>> 14 & 0x7F | 0x80) << 8
+                    | (value >>> 21 & 0x7F | 0x80));
+            buf.writeByte(value >>> 28);
+        }
+    }
+
+    /**
+     * Reads a var int, the decoding is unrolled when at least 5 bytes are readable.
+     *
+     * @param buf the buffer to read from.
+     * @return the value that was read.
+     */
+    public static int readVarInt(ByteBuf buf) {
+        int readerIndex = buf.readerIndex();
+        if (buf.writerIndex() - readerIndex < 5) {
+            return readVarIntSlow(buf);
+        }
+
+        int b = buf.getByte(readerIndex);
+        if (b >= 0) {
+            buf.readerIndex(readerIndex + 1);
+            return b;
+        }
+        int result = b & 0x7F;
+        if ((b = buf.getByte(readerIndex + 1)) >= 0) {
+            buf.readerIndex(readerIndex + 2);
+            return result | b << 7;
+        }
+        result |= (b & 0x7F) << 7;
+        if ((b = buf.getByte(readerIndex + 2)) >= 0) {
+            buf.readerIndex(readerIndex + 3);
+            return result | b << 14;
+        }
+        result |= (b & 0x7F) << 14;
+        if ((b = buf.getByte(readerIndex + 3)) >= 0) {
+            buf.readerIndex(readerIndex + 4);
+            return result | b << 21;
+        }
+        result |= (b & 0x7F) << 21;
+        if ((b = buf.getByte(readerIndex + 4)) >= 0) {
+            buf.readerIndex(readerIndex + 5);
+            return result | b << 28;
+        }
+        throw new RuntimeException("VarInt too big");
+    }
+
+    private static int readVarIntSlow(ByteBuf buf) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new RuntimeException("VarInt too big");
+    }
+
+    /**
+     * Writes the given value as a var long.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public static void writeVarLong(ByteBuf buf, long value) {
+        // Most values fit in an int, which has the unrolled path.
+        if ((value & 0xFFFFFFFFF0000000L) == 0) {
+            writeVarInt(buf, (int) value);
+            return;
+        }
+
+        while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+            buf.writeByte((int) value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    /**
+     * Reads a var long.
+     *
+     * @param buf the buffer to read from.
+     * @return the value that was read.
+     */
+    public static long readVarLong(ByteBuf buf) {
+        int readerIndex = buf.readerIndex();
+        int readable = buf.writerIndex() - readerIndex;
+        long result = 0;
+        for (int i = 0, shift = 0; i < 10; i++, shift += 7) {
+            if (i == readable) {
+                // Let the buffer raise its usual exception for reading past the end.
+                buf.readerIndex(readerIndex + i);
+                buf.readByte();
+            }
+            byte b = buf.getByte(readerIndex + i);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                buf.readerIndex(readerIndex + i + 1);
+                return result;
+            }
+        }
+        throw new RuntimeException("VarLong too big");
+    }
+
+    /**
+     * Writes the given signed value as a ZigZag encoded var int.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public static void writeZigZagInt(ByteBuf buf, int value) {
+        writeVarInt(buf, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a ZigZag encoded var int.
+     *
+     * @param buf the buffer to read from.
+     * @return the signed value that was read.
+     */
+    public static int readZigZagInt(ByteBuf buf) {
+        int value = readVarInt(buf);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes the given signed value as a ZigZag encoded var long.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the value to write.
+     */
+    public static void writeZigZagLong(ByteBuf buf, long value) {
+        writeVarLong(buf, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a ZigZag encoded var long.
+     *
+     * @param buf the buffer to read from.
+     * @return the signed value that was read.
+     */
+    public static long readZigZagLong(ByteBuf buf) {
+        long value = readVarLong(buf);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,80 @@
+package com.tridevmc.compound.network.message;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reads and writes values of arbitrary bit length in the bit block at the start of a message, bits are
+ * numbered from the least significant bit of the first byte of the block onwards.
+ * <p>
+ * Writes assume the block was zeroed beforehand, so values are only ever or'd into it.
+ * <p>
+ * For internal use only.
+ */
+public final class BitBlock {
+
+    private BitBlock() {
+    }
+
+    /**
+     * Writes the given value into the given bits of a block.
+     *
+     * @param target     the buffer holding the block.
+     * @param blockStart the index of the first byte of the block.
+     * @param bit        the index of the first bit to write within the block.
+     * @param bits       the number of bits to write.
+     * @param value      the value to write, as an unsigned number.
+     * @param span       the largest value the field may hold, as an unsigned number.
+     * @param fieldName  the name of the field being written, used if the value is out of range.
+     */
+    public static void write(ByteBuf target, int blockStart, int bit, int bits, long value, long span, String fieldName) {
+        checkRange(value, span, fieldName, "write");
+
+        int index = blockStart + (bit >>> 3);
+        int shift = bit & 7;
+        int remaining = bits;
+        while (remaining > 0) {
+            int written = Math.min(8 - shift, remaining);
+            target.setByte(index, target.getByte(index) | (int) ((value & ((1L << written) - 1)) << shift));
+            value >>>= written;
+            remaining -= written;
+            shift = 0;
+            index++;
+        }
+    }
+
+    /**
+     * Reads a value from the given bits of a block.
+     *
+     * @param source     the buffer holding the block.
+     * @param blockStart the index of the first byte of the block.
+     * @param bit        the index of the first bit to read within the block.
+     * @param bits       the number of bits to read.
+     * @param span       the largest value the field may hold, as an unsigned number.
+     * @param fieldName  the name of the field being read, used if the value is out of range.
+     * @return the value that was read, as an unsigned number.
+     */
+    public static long read(ByteBuf source, int blockStart, int bit, int bits, long span, String fieldName) {
+        int index = blockStart + (bit >>> 3);
+        int shift = bit & 7;
+        long value = 0;
+        int read = 0;
+        while (read < bits) {
+            int length = Math.min(8 - shift, bits - read);
+            long part = (source.getUnsignedByte(index) >>> shift) & ((1 << length) - 1);
+            value |= part << read;
+            read += length;
+            shift = 0;
+            index++;
+        }
+        checkRange(value, span, fieldName, "read");
+        return value;
+    }
+
+    private static void checkRange(long value, long span, String fieldName, String operation) {
+        if (Long.compareUnsigned(value, span) > 0) {
+            throw new RuntimeException(String.format(
+                    "Failed to %s field %s, %s is outside of its range of 0 to %s once offset by its minimum",
+                    operation, fieldName, Long.toUnsignedString(value), Long.toUnsignedString(span)));
+        }
+    }
+}
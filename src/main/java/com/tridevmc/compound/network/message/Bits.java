@@ -0,0 +1,25 @@
+package com.tridevmc.compound.network.message;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Attach to a primitive integer field of a message to pack it into the given number of bits alongside
+ * the boolean fields of the message, instead of writing it with its marshaller.
+ * <p>
+ * The field may only hold values from 0 up to but not including 2^n, sending or receiving any other value fails.
+ * Use {@link Range} for fields that can be negative.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface Bits {
+
+    /**
+     * Used to determine how many bits the field is packed into.
+     *
+     * @return the number of bits, between 1 and 64.
+     */
+    int value();
+}
@@ -0,0 +1,40 @@
+package com.tridevmc.compound.network.message;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.zip.Deflater;
+
+/**
+ * Attach to a registered message to deflate its payload whenever it is larger than the threshold,
+ * useful for messages carrying tags, stacks or other large repetitive data.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface Compressed {
+
+    /**
+     * Used to determine the size in bytes a payload must exceed before it is compressed, this only
+     * affects the sender and can be changed at runtime through the compressor of the message.
+     *
+     * @return the compression threshold in bytes.
+     */
+    int threshold() default 256;
+
+    /**
+     * Used to determine the deflate level to compress with.
+     *
+     * @return the compression level, between 0 and 9.
+     */
+    int level() default Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Used to determine the preset dictionary to compress with, a path to a classpath resource that
+     * must be identical on both sides. Dictionaries can be trained from sample payloads using the
+     * compressor of the message.
+     *
+     * @return the path to the dictionary resource, or an empty string to use no dictionary.
+     */
+    String dictionary() default "";
+}
@@ -0,0 +1,19 @@
+package com.tridevmc.compound.network.message;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Attach to a registered message to only send the fields that changed since the last time the message
+ * was sent to the same player, the receiver rebuilds the rest of the message from what it received last.
+ * <p>
+ * Best suited for periodic state updates where most fields stay the same between sends. Only messages
+ * sent to individual players from the server thread are delta encoded, any other send of the message
+ * is written in full and leaves the baselines untouched.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface DeltaEncoded {
+}
@@ -0,0 +1,120 @@
+package com.tridevmc.compound.network.message;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Builds preset deflate dictionaries from sample payloads.
+ * <p>
+ * Counts how many samples contain each run of 8 bytes, then greedily picks the segments of the samples
+ * covering the most common runs not covered yet. The best segments end up at the end of the dictionary
+ * where deflate can reference them most cheaply.
+ * <p>
+ * For internal use only.
+ */
+final class DictionaryTrainer {
+
+    private static final int KMER_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 64;
+
+    private DictionaryTrainer() {
+    }
+
+    static byte[] train(List<byte[]> samples, int dictionarySize) {
+        Map<Long, Integer> frequencies = Maps.newHashMap();
+        for (byte[] sample : samples) {
+            Set<Long> sampleKmers = Sets.newHashSet();
+            for (int i = 0; i + KMER_LENGTH <= sample.length; i++) {
+                sampleKmers.add(kmerAt(sample, i));
+            }
+            for (Long kmer : sampleKmers) {
+                frequencies.merge(kmer, 1, Integer::sum);
+            }
+        }
+
+        PriorityQueue<Segment> candidates = new PriorityQueue<>(Comparator.comparingLong((Segment s) -> s.score).reversed());
+        for (byte[] sample : samples) {
+            for (int start = 0; start + KMER_LENGTH <= sample.length; start += SEGMENT_LENGTH / 2) {
+                Segment segment = new Segment(sample, start, Math.min(SEGMENT_LENGTH, sample.length - start));
+                segment.score = segment.score(frequencies);
+                if (segment.score > 0) {
+                    candidates.add(segment);
+                }
+            }
+        }
+
+        // Scores only drop as runs get covered, so a rescored candidate still ahead of the rest is the best.
+        List<Segment> selected = Lists.newArrayList();
+        int selectedLength = 0;
+        while (selectedLength < dictionarySize && !candidates.isEmpty()) {
+            Segment segment = candidates.poll();
+            long score = segment.score(frequencies);
+            if (score <= 0) {
+                continue;
+            }
+            if (!candidates.isEmpty() && score < candidates.peek().score) {
+                segment.score = score;
+                candidates.add(segment);
+                continue;
+            }
+
+            selected.add(segment);
+            selectedLength += segment.length;
+            for (int i = segment.start; i + KMER_LENGTH <= segment.start + segment.length; i++) {
+                frequencies.remove(kmerAt(segment.sample, i));
+            }
+        }
+
+        byte[] dictionary = new byte[Math.min(selectedLength, dictionarySize)];
+        int end = dictionary.length;
+        for (Segment segment : selected) {
+            int length = Math.min(segment.length, end);
+            System.arraycopy(segment.sample, segment.start + segment.length - length, dictionary, end - length, length);
+            end -= length;
+            if (end == 0) {
+                break;
+            }
+        }
+        return dictionary;
+    }
+
+    private static long kmerAt(byte[] data, int index) {
+        long kmer = 0;
+        for (int i = 0; i < KMER_LENGTH; i++) {
+            kmer = kmer << 8 | (data[index + i] & 0xFF);
+        }
+        return kmer;
+    }
+
+    private static class Segment {
+        private final byte[] sample;
+        private final int start;
+        private final int length;
+        private long score;
+
+        private Segment(byte[] sample, int start, int length) {
+            this.sample = sample;
+            this.start = start;
+            this.length = length;
+        }
+
+        private long score(Map<Long, Integer> frequencies) {
+            long score = 0;
+            for (int i = this.start; i + KMER_LENGTH <= this.start + this.length; i++) {
+                int frequency = frequencies.getOrDefault(kmerAt(this.sample, i), 0);
+                // Runs seen in a single sample are not worth a place in the dictionary.
+                if (frequency > 1) {
+                    score += frequency;
+                }
+            }
+            return score;
+        }
+    }
+}
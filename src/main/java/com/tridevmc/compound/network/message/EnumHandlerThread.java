@@ -0,0 +1,11 @@
+package com.tridevmc.compound.network.message;
+
+/**
+ * An enum to specify the thread a received message is handled on, MAIN is the server or client thread,
+ * NETWORK is the network thread the message was received on and WORKER is a shared pool of threads.
+ */
+public enum EnumHandlerThread {
+    MAIN,
+    NETWORK,
+    WORKER
+}
@@ -0,0 +1,21 @@
+package com.tridevmc.compound.network.message;
+
+/**
+ * An enum to specify how urgent a message is, batched messages are sent from the lane of their priority
+ * with INTERACTIVE messages sent first and the lanes sharing the bandwidth of a player by their weight.
+ */
+public enum EnumMessagePriority {
+    INTERACTIVE(8),
+    NORMAL(4),
+    BULK(1);
+
+    int weight;
+
+    EnumMessagePriority(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return this.weight;
+    }
+}
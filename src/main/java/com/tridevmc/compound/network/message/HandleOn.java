@@ -0,0 +1,29 @@
+package com.tridevmc.compound.network.message;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Attach to a registered message to choose the thread it is handled on, messages without this are
+ * handled on the main thread.
+ * <p>
+ * Messages from the same connection are always handled in the order they were received by the
+ * threads they are handled on, main and worker messages are queued per connection and dropped if
+ * too many are waiting.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface HandleOn {
+
+    /**
+     * Used to determine the thread the annotated message is handled on.
+     * <p>
+     * NETWORK should only be used by messages that are safe to handle off the main thread and cheap
+     * enough not to hold up the connection.
+     *
+     * @return the thread to handle the message on.
+     */
+    EnumHandlerThread value();
+}
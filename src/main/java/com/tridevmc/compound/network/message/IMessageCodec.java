@@ -0,0 +1,28 @@
+package com.tridevmc.compound.network.message;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes and reads the fields of a message to and from a buffer, one codec exists per message concept.
+ * <p>
+ * For internal use only.
+ */
+public interface IMessageCodec {
+
+    /**
+     * Writes all the fields of the given message to the given buffer.
+     *
+     * @param msg    the message to write.
+     * @param target the buffer to write to.
+     */
+    void write(Message msg, ByteBuf target);
+
+    /**
+     * Reads all the fields of the given message from the given buffer.
+     *
+     * @param msg    the message to read into.
+     * @param source the buffer to read from.
+     */
+    void read(Message msg, ByteBuf source);
+
+}
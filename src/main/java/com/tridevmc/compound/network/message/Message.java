@@ -6,19 +6,23 @@ import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.ServerWorld;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.dimension.DimensionType;
 import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.fml.LogicalSide;
 import net.minecraftforge.fml.LogicalSidedProvider;
-import net.minecraftforge.fml.network.NetworkDirection;
 import net.minecraftforge.fml.network.PacketDistributor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 
 /**
@@ -35,6 +39,13 @@ public abstract class Message {
 
     public abstract void handle(@Nullable PlayerEntity player);
 
+    /**
+     * Called before a received instance of a pooled message is returned to its pool, override to clear
+     * any state that is not sent with the message.
+     */
+    public void reset() {
+    }
+
     @Nonnull
     public CompoundNetwork getNetwork() {
         if (this.network == null) {
@@ -51,15 +62,17 @@ public abstract class Message {
     }
 
     /**
-     * Sends this message to all clients matching the given predicate.
+     * Sends this message to all clients matching the given predicate, the message is only encoded once
+     * for all of them.
      *
      * @param playerPredicate the predicate that determines if the player should receive the packet.
      */
     public void sendToMatching(@Nonnull Predicate<ServerPlayerEntity> playerPredicate) {
         MinecraftServer server = LogicalSidedProvider.INSTANCE.get(LogicalSide.SERVER);
-        server.getPlayerList().getPlayers().stream()
+        List<ServerPlayerEntity> players = server.getPlayerList().getPlayers().stream()
                 .filter(playerPredicate)
-                .forEach(this::sendTo);
+                .collect(Collectors.toList());
+        this.getNetwork().sendTo(this, players);
     }
 
     /**
@@ -68,7 +81,7 @@ public abstract class Message {
      * @param player the player to send the message to.
      */
     public void sendTo(@Nonnull ServerPlayerEntity player) {
-        this.getNetwork().getNetworkChannel().sendTo(this, player.connection.netManager, NetworkDirection.PLAY_TO_CLIENT);
+        this.getNetwork().sendTo(this, player);
     }
 
     /**
@@ -80,7 +93,40 @@ public abstract class Message {
      */
     public void sendToAllAround(@Nonnull DimensionType dimension, @Nonnull BlockPos pos, double range) {
         PacketDistributor.TargetPoint target = new PacketDistributor.TargetPoint(pos.getX(), pos.getY(), pos.getZ(), range, dimension);
-        this.getNetwork().getNetworkChannel().send(PacketDistributor.NEAR.with(() -> target), this);
+        this.getNetwork().send(this, PacketDistributor.NEAR.with(() -> target));
+    }
+
+    /**
+     * Sends this message to all clients in the given box of the given dimension.
+     *
+     * @param dimension the dimension the box is in.
+     * @param box       the box that the target clients are in.
+     */
+    public void sendToBox(@Nonnull DimensionType dimension, @Nonnull AxisAlignedBB box) {
+        this.getNetwork().sendTo(this, this.getNetwork().getPlayersInBox(dimension, box));
+    }
+
+    /**
+     * Sends this message to all clients within the given distance of the given point in the given dimension.
+     *
+     * @param dimension the dimension the point is in.
+     * @param x         the x coordinate of the point.
+     * @param y         the y coordinate of the point.
+     * @param z         the z coordinate of the point.
+     * @param radius    the distance from the point that the target clients are within.
+     */
+    public void sendToRadius(@Nonnull DimensionType dimension, double x, double y, double z, double radius) {
+        this.getNetwork().sendTo(this, this.getNetwork().getPlayersInRadius(dimension, x, y, z, radius));
+    }
+
+    /**
+     * Sends this message to all clients in any of the given chunks of the given dimension.
+     *
+     * @param dimension the dimension the chunks are in.
+     * @param chunks    the chunks that the target clients are in.
+     */
+    public void sendToChunks(@Nonnull DimensionType dimension, @Nonnull Collection<ChunkPos> chunks) {
+        this.getNetwork().sendTo(this, this.getNetwork().getPlayersInChunks(dimension, chunks));
     }
 
     /**
@@ -89,7 +135,7 @@ public abstract class Message {
      * @param entity the entity that the target clients are tracking.
      */
     public void sendToAllTracking(@Nonnull Entity entity) {
-        this.getNetwork().getNetworkChannel().send(PacketDistributor.TRACKING_ENTITY_AND_SELF.with(() -> entity), this);
+        this.getNetwork().send(this, PacketDistributor.TRACKING_ENTITY_AND_SELF.with(() -> entity));
     }
 
     /**
@@ -123,7 +169,15 @@ public abstract class Message {
      * @param chunk the chunk that the target clients are tracking.
      */
     public void sendToAllTracking(@Nonnull Chunk chunk) {
-        this.getNetwork().getNetworkChannel().send(PacketDistributor.TRACKING_CHUNK.with(() -> chunk), this);
+        if (this.getNetwork().isBatching()) {
+            // Resolve the players ourselves so each of them gets the message in their bundle.
+            ServerWorld world = (ServerWorld) chunk.getWorld();
+            List<ServerPlayerEntity> players = world.getChunkProvider().chunkManager.getTrackingPlayers(chunk.getPos(), false)
+                    .collect(Collectors.toList());
+            this.getNetwork().sendTo(this, players);
+        } else {
+            this.getNetwork().send(this, PacketDistributor.TRACKING_CHUNK.with(() -> chunk));
+        }
     }
 
     /**
@@ -132,14 +186,18 @@ public abstract class Message {
      * @param dimension the dimension this message should be sent to.
      */
     public void sendToDimension(@Nonnull DimensionType dimension) {
-        this.getNetwork().getNetworkChannel().send(PacketDistributor.DIMENSION.with(() -> dimension), this);
+        if (this.getNetwork().isBatching()) {
+            this.sendToMatching((p) -> p.dimension == dimension);
+        } else {
+            this.getNetwork().send(this, PacketDistributor.DIMENSION.with(() -> dimension));
+        }
     }
 
     /**
      * Sends this message to the server to be executed.
      */
     public void sendToServer() {
-        this.getNetwork().getNetworkChannel().sendToServer(this);
+        this.getNetwork().sendToServer(this);
     }
 
 }
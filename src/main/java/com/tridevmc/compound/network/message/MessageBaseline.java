@@ -0,0 +1,30 @@
+package com.tridevmc.compound.network.message;
+
+/**
+ * Holds the encoded value of each field of a delta encoded message as it was last sent or received
+ * over a connection.
+ * <p>
+ * For internal use only.
+ */
+public class MessageBaseline {
+
+    private final byte[][] fieldValues;
+
+    public MessageBaseline(int fieldCount) {
+        this.fieldValues = new byte[fieldCount][];
+    }
+
+    /**
+     * Gets the last encoded value of the field at the given index.
+     *
+     * @param index the index of the field.
+     * @return the encoded value, or null if the field has not been sent yet.
+     */
+    public byte[] getFieldValue(int index) {
+        return this.fieldValues[index];
+    }
+
+    public void setFieldValue(int index, byte[] value) {
+        this.fieldValues[index] = value;
+    }
+}
@@ -0,0 +1,518 @@
+package com.tridevmc.compound.network.message;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.tridevmc.compound.network.marshallers.*;
+import io.netty.buffer.ByteBuf;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a codec class for a message that reads and writes each field with straight line
+ * bytecode instead of walking the fields of the message reflectively.
+ * <p>
+ * Field access goes through method handles stored in static final fields of the generated class,
+ * which the JIT treats as constants and reduces to plain field reads and writes. Each generated class
+ * also has its own call sites for every marshaller it uses, so marshaller calls stay monomorphic.
+ * Primitive fields with a primitive marshaller are passed to it unboxed.
+ * <p>
+ * For internal use only.
+ */
+public class MessageCodecGenerator {
+
+    private static final Map<String, Object[]> PENDING_CONSTANTS = Maps.newConcurrentMap();
+    private static final AtomicInteger CODEC_COUNT = new AtomicInteger();
+    private static final Map<Class<?>, Class<?>> PRIMITIVE_MARSHALLERS = ImmutableMap.<Class<?>, Class<?>>builder()
+            .put(int.class, IntMarshaller.class)
+            .put(long.class, LongMarshaller.class)
+            .put(float.class, FloatMarshaller.class)
+            .put(double.class, DoubleMarshaller.class)
+            .put(short.class, ShortMarshaller.class)
+            .put(byte.class, ByteMarshaller.class)
+            .put(char.class, CharMarshaller.class)
+            .build();
+
+    private static final String MESSAGE_FIELD = Type.getInternalName(MessageField.class);
+    private static final String BYTE_BUF = Type.getInternalName(ByteBuf.class);
+    private static final String MARSHALLER = Type.getInternalName(Marshaller.class);
+    private static final String METHOD_HANDLE = Type.getInternalName(MethodHandle.class);
+    private static final String GENERATOR = Type.getInternalName(MessageCodecGenerator.class);
+    private static final String BIT_BLOCK = Type.getInternalName(BitBlock.class);
+
+    private final String className;
+    private final String internalName;
+    private final MessageWirePlan plan;
+    private final List<Object> constants = Lists.newArrayList();
+    private final List<String[]> constantFields = Lists.newArrayList();
+
+    private MessageCodecGenerator(Class<? extends Message> msgClass, MessageWirePlan plan) {
+        this.className = msgClass.getName() + "$$CompoundCodec" + CODEC_COUNT.incrementAndGet();
+        this.internalName = this.className.replace('.', '/');
+        this.plan = plan;
+    }
+
+    /**
+     * Generates and instantiates a codec class for the given message.
+     *
+     * @param msgClass the class of the message the codec is for.
+     * @param plan     the wire plan of the message.
+     * @return an instance of the generated codec.
+     */
+    public static IMessageCodec generate(Class<? extends Message> msgClass, MessageWirePlan plan) {
+        MessageCodecGenerator generator = new MessageCodecGenerator(msgClass, plan);
+        byte[] classBytes = generator.genClass();
+
+        PENDING_CONSTANTS.put(generator.className, generator.constants.toArray());
+        try {
+            Class<?> codecClass = new CodecClassLoader(msgClass.getClassLoader()).define(generator.className, classBytes);
+            return (IMessageCodec) codecClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new RuntimeException(String.format(
+                    "Failed to load generated codec for %s",
+                    msgClass.getName()),
+                    e);
+        } finally {
+            PENDING_CONSTANTS.remove(generator.className);
+        }
+    }
+
+    /**
+     * Used by generated codecs to collect the constants they were generated with during static
+     * initialization.
+     *
+     * @param className the name of the generated codec class.
+     * @return the constants for the generated codec.
+     */
+    public static Object[] claimConstants(String className) {
+        return PENDING_CONSTANTS.remove(className);
+    }
+
+    private byte[] genClass() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // Generated methods never merge differing reference types, avoid loading classes here.
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, this.internalName, null,
+                "java/lang/Object", new String[]{Type.getInternalName(IMessageCodec.class)});
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        this.genWrite(cw.visitMethod(ACC_PUBLIC, "write", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Message.class), Type.getType(ByteBuf.class)), null, null));
+        this.genRead(cw.visitMethod(ACC_PUBLIC, "read", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Message.class), Type.getType(ByteBuf.class)), null, null));
+
+        // Constants are only known once both methods are generated, so the initializer goes last.
+        for (String[] constantField : this.constantFields) {
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, constantField[0], constantField[1], null, null).visitEnd();
+        }
+        MethodVisitor clinit = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        clinit.visitLdcInsn(this.className);
+        clinit.visitMethodInsn(INVOKESTATIC, GENERATOR, "claimConstants", "(Ljava/lang/String;)[Ljava/lang/Object;", false);
+        clinit.visitVarInsn(ASTORE, 0);
+        for (int i = 0; i < this.constantFields.size(); i++) {
+            String[] constantField = this.constantFields.get(i);
+            clinit.visitVarInsn(ALOAD, 0);
+            clinit.visitLdcInsn(i);
+            clinit.visitInsn(AALOAD);
+            clinit.visitTypeInsn(CHECKCAST, Type.getType(constantField[1]).getInternalName());
+            clinit.visitFieldInsn(PUTSTATIC, this.internalName, constantField[0], constantField[1]);
+        }
+        clinit.visitInsn(RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void genWrite(MethodVisitor mv) {
+        mv.visitCode();
+        MessageWirePlan plan = this.plan;
+
+        // Write the bitmap, local 3 holds the byte currently being built and local 5 the start of the block.
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, "writerIndex", "()I", false);
+        mv.visitVarInsn(ISTORE, 5);
+        int flag = 0;
+        for (int i = 0; i < plan.getBooleanCount(); i++, flag++) {
+            MessageField msgField = plan.getBooleanField(i);
+            this.visitStartFlag(mv, flag);
+            mv.visitVarInsn(ILOAD, 3);
+            this.visitGetValue(mv, msgField);
+            if (msgField.getType() == Boolean.class) {
+                mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z", false);
+            }
+            mv.visitLdcInsn(flag & 7);
+            mv.visitInsn(ISHL);
+            mv.visitInsn(IOR);
+            mv.visitVarInsn(ISTORE, 3);
+            this.visitEndFlag(mv, flag);
+        }
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            if (plan.getPresenceFlag(i) == -1) {
+                continue;
+            }
+            Label absent = new Label();
+            this.visitStartFlag(mv, flag);
+            this.visitGetValue(mv, plan.getValueField(i));
+            mv.visitJumpInsn(IFNULL, absent);
+            mv.visitVarInsn(ILOAD, 3);
+            mv.visitLdcInsn(1 << (flag & 7));
+            mv.visitInsn(IOR);
+            mv.visitVarInsn(ISTORE, 3);
+            mv.visitLabel(absent);
+            this.visitEndFlag(mv, flag);
+            flag++;
+        }
+
+        // Packed fields fill the rest of the block, the bits are or'd into zeroed bytes.
+        if (plan.getBlockLength() > plan.getBitmapLength()) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitLdcInsn(plan.getBlockLength() - plan.getBitmapLength());
+            mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, "writeZero", "(I)L" + BYTE_BUF + ";", false);
+            mv.visitInsn(POP);
+        }
+        for (int i = 0; i < plan.getPackedCount(); i++) {
+            MessageField msgField = plan.getPackedField(i);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ILOAD, 5);
+            mv.visitLdcInsn(plan.getPackedOffset(i));
+            mv.visitLdcInsn(plan.getPackedBits(i));
+            this.visitGetValue(mv, msgField);
+            if (msgField.getType().isEnum()) {
+                mv.visitTypeInsn(CHECKCAST, "java/lang/Enum");
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Enum", "ordinal", "()I", false);
+                mv.visitInsn(I2L);
+            } else {
+                this.visitPrimitiveCast(mv, msgField.getType(), long.class);
+            }
+            if (plan.getPackedMin(i) != 0) {
+                mv.visitLdcInsn(plan.getPackedMin(i));
+                mv.visitInsn(LSUB);
+            }
+            mv.visitLdcInsn(plan.getPackedSpan(i));
+            mv.visitLdcInsn(msgField.getField().getName());
+            mv.visitMethodInsn(INVOKESTATIC, BIT_BLOCK, "write", "(L" + BYTE_BUF + ";IIIJJLjava/lang/String;)V", false);
+        }
+
+        // Write the remaining fields, local 4 holds the value currently being written.
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            MessageField msgField = plan.getValueField(i);
+            if (msgField.isPrimitive()) {
+                // Primitives never need boxing or null checks, pass them straight to the marshaller.
+                Class<?> marshallerType = msgField.getMarshaller().getPrimitiveType();
+                Class<?> marshallerClass = PRIMITIVE_MARSHALLERS.get(marshallerType);
+                this.visitConstant(mv, msgField.getMarshaller(), marshallerClass);
+                mv.visitVarInsn(ALOAD, 2);
+                this.visitGetValue(mv, msgField);
+                this.visitPrimitiveCast(mv, msgField.getType(), marshallerType);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(marshallerClass),
+                        "write" + this.capitalize(marshallerType),
+                        Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(ByteBuf.class), Type.getType(marshallerType)), false);
+                continue;
+            }
+
+            Label absent = new Label();
+            this.visitGetValue(mv, msgField);
+            if (msgField.getType().isPrimitive()) {
+                this.visitBox(mv, msgField.getType());
+            }
+            mv.visitVarInsn(ASTORE, 4);
+            if (plan.getPresenceFlag(i) != -1) {
+                mv.visitVarInsn(ALOAD, 4);
+                mv.visitJumpInsn(IFNULL, absent);
+            }
+            this.visitConstant(mv, msgField.getMarshaller(), Marshaller.class);
+            this.visitConstant(mv, msgField, MessageField.class);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ALOAD, 4);
+            mv.visitMethodInsn(INVOKEVIRTUAL, MARSHALLER, "writeTo", "(L" + MESSAGE_FIELD + ";L" + BYTE_BUF + ";Ljava/lang/Object;)V", false);
+            mv.visitLabel(absent);
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private void genRead(MethodVisitor mv) {
+        mv.visitCode();
+        MessageWirePlan plan = this.plan;
+
+        // Read the whole bitmap up front, each byte is kept in its own local starting at 5. Local 3 holds
+        // the start of the block for reading packed fields.
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, "readerIndex", "()I", false);
+        mv.visitVarInsn(ISTORE, 3);
+        for (int i = 0; i < plan.getBitmapLength(); i++) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, "readUnsignedByte", "()S", false);
+            mv.visitVarInsn(ISTORE, 5 + i);
+        }
+        if (plan.getBlockLength() > plan.getBitmapLength()) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitLdcInsn(plan.getBlockLength() - plan.getBitmapLength());
+            mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, "skipBytes", "(I)L" + BYTE_BUF + ";", false);
+            mv.visitInsn(POP);
+        }
+
+        for (int i = 0; i < plan.getBooleanCount(); i++) {
+            MessageField msgField = plan.getBooleanField(i);
+            this.visitConstant(mv, msgField.getField().getSetter().asType(this.setterType(msgField)), MethodHandle.class);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitVarInsn(ILOAD, 5 + (i >>> 3));
+            mv.visitLdcInsn(i & 7);
+            mv.visitInsn(ISHR);
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IAND);
+            if (msgField.getType() == Boolean.class) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", this.setterType(msgField).toMethodDescriptorString(), false);
+        }
+
+        for (int i = 0; i < plan.getPackedCount(); i++) {
+            MessageField msgField = plan.getPackedField(i);
+            this.visitConstant(mv, msgField.getField().getSetter().asType(this.setterType(msgField)), MethodHandle.class);
+            mv.visitVarInsn(ALOAD, 1);
+            if (msgField.getType().isEnum()) {
+                this.visitConstant(mv, msgField.getType().getEnumConstants(), Object[].class);
+            }
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ILOAD, 3);
+            mv.visitLdcInsn(plan.getPackedOffset(i));
+            mv.visitLdcInsn(plan.getPackedBits(i));
+            mv.visitLdcInsn(plan.getPackedSpan(i));
+            mv.visitLdcInsn(msgField.getField().getName());
+            mv.visitMethodInsn(INVOKESTATIC, BIT_BLOCK, "read", "(L" + BYTE_BUF + ";IIIJLjava/lang/String;)J", false);
+            if (plan.getPackedMin(i) != 0) {
+                mv.visitLdcInsn(plan.getPackedMin(i));
+                mv.visitInsn(LADD);
+            }
+            if (msgField.getType().isEnum()) {
+                mv.visitInsn(L2I);
+                mv.visitInsn(AALOAD);
+            } else {
+                this.visitPrimitiveCast(mv, long.class, msgField.getType());
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", this.setterType(msgField).toMethodDescriptorString(), false);
+        }
+
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            MessageField msgField = plan.getValueField(i);
+            int presenceFlag = plan.getPresenceFlag(i);
+
+            // Nullable fields that were sent as null are cleared, a pooled instance may still hold an old value.
+            Label absent = new Label();
+            Label done = new Label();
+            if (presenceFlag != -1) {
+                mv.visitVarInsn(ILOAD, 5 + (presenceFlag >>> 3));
+                mv.visitLdcInsn(1 << (presenceFlag & 7));
+                mv.visitInsn(IAND);
+                mv.visitJumpInsn(IFEQ, absent);
+            }
+
+            this.visitConstant(mv, msgField.getField().getSetter().asType(this.setterType(msgField)), MethodHandle.class);
+            mv.visitVarInsn(ALOAD, 1);
+            if (msgField.isPrimitive()) {
+                Class<?> marshallerType = msgField.getMarshaller().getPrimitiveType();
+                Class<?> marshallerClass = PRIMITIVE_MARSHALLERS.get(marshallerType);
+                this.visitConstant(mv, msgField.getMarshaller(), marshallerClass);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(marshallerClass),
+                        "read" + this.capitalize(marshallerType),
+                        Type.getMethodDescriptor(Type.getType(marshallerType), Type.getType(ByteBuf.class)), false);
+                this.visitPrimitiveCast(mv, marshallerType, msgField.getType());
+            } else {
+                this.visitConstant(mv, msgField.getMarshaller(), Marshaller.class);
+                this.visitConstant(mv, msgField, MessageField.class);
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitMethodInsn(INVOKEVIRTUAL, MARSHALLER, "readFrom", "(L" + MESSAGE_FIELD + ";L" + BYTE_BUF + ";)Ljava/lang/Object;", false);
+                if (msgField.getType().isPrimitive()) {
+                    this.visitUnbox(mv, msgField.getType());
+                }
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", this.setterType(msgField).toMethodDescriptorString(), false);
+            if (presenceFlag != -1) {
+                mv.visitJumpInsn(GOTO, done);
+                mv.visitLabel(absent);
+                this.visitConstant(mv, msgField.getField().getSetter().asType(this.setterType(msgField)), MethodHandle.class);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitInsn(ACONST_NULL);
+                mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", this.setterType(msgField).toMethodDescriptorString(), false);
+            }
+            mv.visitLabel(done);
+        }
+
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Visits the instructions to reset the bitmap byte in local 3 if the given flag starts a new byte.
+     */
+    private void visitStartFlag(MethodVisitor mv, int flag) {
+        if ((flag & 7) == 0) {
+            mv.visitInsn(ICONST_0);
+            mv.visitVarInsn(ISTORE, 3);
+        }
+    }
+
+    /**
+     * Visits the instructions to write the bitmap byte in local 3 if the given flag completes it.
+     */
+    private void visitEndFlag(MethodVisitor mv, int flag) {
+        if ((flag & 7) == 7 || flag + 1 == this.plan.getFlagCount()) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitVarInsn(ILOAD, 3);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BYTE_BUF, "writeByte", "(I)L" + BYTE_BUF + ";", false);
+            mv.visitInsn(POP);
+        }
+    }
+
+    private void visitBox(MethodVisitor mv, Class<?> primitive) {
+        Type boxedType = Type.getType(this.boxedType(primitive));
+        mv.visitMethodInsn(INVOKESTATIC, boxedType.getInternalName(), "valueOf",
+                Type.getMethodDescriptor(boxedType, Type.getType(primitive)), false);
+    }
+
+    /**
+     * Visits the instructions to convert between two primitive types, used when a field is marshalled
+     * by a marshaller of a different primitive type.
+     */
+    private void visitPrimitiveCast(MethodVisitor mv, Class<?> from, Class<?> to) {
+        if (from == to) {
+            return;
+        }
+
+        if (from == double.class) {
+            if (to == float.class) {
+                mv.visitInsn(D2F);
+                return;
+            } else if (to == long.class) {
+                mv.visitInsn(D2L);
+                return;
+            }
+            mv.visitInsn(D2I);
+        } else if (from == float.class) {
+            if (to == double.class) {
+                mv.visitInsn(F2D);
+                return;
+            } else if (to == long.class) {
+                mv.visitInsn(F2L);
+                return;
+            }
+            mv.visitInsn(F2I);
+        } else if (from == long.class) {
+            if (to == double.class) {
+                mv.visitInsn(L2D);
+                return;
+            } else if (to == float.class) {
+                mv.visitInsn(L2F);
+                return;
+            }
+            mv.visitInsn(L2I);
+        } else if (to == double.class) {
+            mv.visitInsn(I2D);
+            return;
+        } else if (to == float.class) {
+            mv.visitInsn(I2F);
+            return;
+        } else if (to == long.class) {
+            mv.visitInsn(I2L);
+            return;
+        }
+
+        // Everything left is on the stack as an int, narrow it if the target is smaller.
+        if (to == byte.class) {
+            mv.visitInsn(I2B);
+        } else if (to == short.class) {
+            mv.visitInsn(I2S);
+        } else if (to == char.class) {
+            mv.visitInsn(I2C);
+        }
+    }
+
+    private String capitalize(Class<?> primitive) {
+        String name = primitive.getName();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void visitUnbox(MethodVisitor mv, Class<?> primitive) {
+        Type boxedType = Type.getType(this.boxedType(primitive));
+        Type primitiveType = Type.getType(primitive);
+        mv.visitTypeInsn(CHECKCAST, boxedType.getInternalName());
+        mv.visitMethodInsn(INVOKEVIRTUAL, boxedType.getInternalName(), primitiveType.getClassName() + "Value",
+                Type.getMethodDescriptor(primitiveType), false);
+    }
+
+    /**
+     * Visits the instructions to push the value of the given field on the message in local 1.
+     */
+    private void visitGetValue(MethodVisitor mv, MessageField msgField) {
+        MethodType getterType = MethodType.methodType(this.erasedType(msgField.getType()), Message.class);
+        this.visitConstant(mv, msgField.getField().getGetter().asType(getterType), MethodHandle.class);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact", getterType.toMethodDescriptorString(), false);
+    }
+
+    /**
+     * Visits the instructions to push the given constant, adding a static field for it to the codec.
+     */
+    private void visitConstant(MethodVisitor mv, Object constant, Class<?> constantType) {
+        String fieldName = "constant" + this.constants.size();
+        String fieldDesc = Type.getDescriptor(constantType);
+        this.constants.add(constant);
+        this.constantFields.add(new String[]{fieldName, fieldDesc});
+        mv.visitFieldInsn(GETSTATIC, this.internalName, fieldName, fieldDesc);
+    }
+
+    private MethodType setterType(MessageField msgField) {
+        return MethodType.methodType(void.class, Message.class, this.erasedType(msgField.getType()));
+    }
+
+    /**
+     * Erases reference types to Object so generated codecs never need to link against message
+     * specific types, which may not be accessible from the codec.
+     */
+    private Class<?> erasedType(Class<?> type) {
+        return type.isPrimitive() ? type : Object.class;
+    }
+
+    private Class<?> boxedType(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    private static class CodecClassLoader extends ClassLoader {
+
+        private CodecClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] classBytes) {
+            return this.defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+}
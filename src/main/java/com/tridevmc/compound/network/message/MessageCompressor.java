@@ -0,0 +1,300 @@
+package com.tridevmc.compound.network.message;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.tridevmc.compound.network.marshallers.VarIntCodec;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the payloads of a message that exceed a threshold, optionally using a preset dictionary.
+ * <p>
+ * Every payload starts with a var int holding its uncompressed length, or zero if the payload that
+ * follows was stored as is. Keeps track of how many bytes compression saved and how long it took.
+ * <p>
+ * For internal use only.
+ */
+public class MessageCompressor {
+
+    /**
+     * The largest payload that will be inflated, anything claiming to be larger is rejected.
+     */
+    private static final int MAX_UNCOMPRESSED_LENGTH = 2097152;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<byte[]> CHUNK = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final Class<? extends Message> messageClass;
+    private final int level;
+    private final byte[] dictionary;
+    private volatile int threshold;
+
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder deflateNanos = new LongAdder();
+    private final LongAdder inflateNanos = new LongAdder();
+
+    private volatile List<byte[]> samples;
+    private volatile int maxSamples;
+
+    public MessageCompressor(Class<? extends Message> messageClass, int threshold, int level, byte[] dictionary) {
+        this.messageClass = messageClass;
+        this.threshold = threshold;
+        this.level = level;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Creates a compressor for the given message class from its Compressed annotation.
+     *
+     * @param messageClass the class of the message.
+     * @return the compressor, or null if the message is not compressed.
+     */
+    public static MessageCompressor create(Class<? extends Message> messageClass) {
+        Compressed compressed = messageClass.getAnnotation(Compressed.class);
+        if (compressed == null) {
+            return null;
+        }
+
+        byte[] dictionary = null;
+        if (!compressed.dictionary().isEmpty()) {
+            String path = compressed.dictionary().startsWith("/") ? compressed.dictionary() : "/" + compressed.dictionary();
+            try (InputStream dictionaryStream = messageClass.getResourceAsStream(path)) {
+                if (dictionaryStream == null) {
+                    throw new RuntimeException(String.format(
+                            "Unable to find compression dictionary %s for %s",
+                            path, messageClass.getName()));
+                }
+                dictionary = ByteStreams.toByteArray(dictionaryStream);
+            } catch (IOException e) {
+                throw new RuntimeException(String.format(
+                        "Failed to read compression dictionary %s for %s",
+                        path, messageClass.getName()),
+                        e);
+            }
+        }
+        return new MessageCompressor(messageClass, compressed.threshold(), compressed.level(), dictionary);
+    }
+
+    /**
+     * Writes the given payload to the given buffer, compressing it if it exceeds the threshold.
+     *
+     * @param payload the uncompressed payload.
+     * @param target  the buffer to write to.
+     */
+    public void write(ByteBuf payload, ByteBuf target) {
+        int length = payload.readableBytes();
+        this.recordSample(payload);
+        if (length <= this.threshold) {
+            VarIntCodec.writeVarInt(target, 0);
+            target.writeBytes(payload);
+            return;
+        }
+
+        long start = System.nanoTime();
+        int lengthIndex = target.writerIndex();
+        VarIntCodec.writeVarInt(target, length);
+        int dataIndex = target.writerIndex();
+
+        Deflater deflater = DEFLATER.get();
+        byte[] chunk = CHUNK.get();
+        deflater.reset();
+        deflater.setLevel(this.level);
+        if (this.dictionary != null) {
+            deflater.setDictionary(this.dictionary);
+        }
+        if (payload.hasArray()) {
+            deflater.setInput(payload.array(), payload.arrayOffset() + payload.readerIndex(), length);
+        } else {
+            byte[] input = new byte[length];
+            payload.getBytes(payload.readerIndex(), input);
+            deflater.setInput(input);
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            int written = deflater.deflate(chunk);
+            target.writeBytes(chunk, 0, written);
+        }
+        payload.skipBytes(length);
+
+        int compressedLength = target.writerIndex() - dataIndex;
+        if (compressedLength >= length) {
+            // Didn't help, store it instead.
+            target.writerIndex(lengthIndex);
+            VarIntCodec.writeVarInt(target, 0);
+            target.writeBytes(payload, payload.readerIndex() - length, length);
+        } else {
+            this.compressedCount.increment();
+            this.uncompressedBytes.add(length);
+            this.compressedBytes.add(compressedLength);
+        }
+        this.deflateNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads a payload written by this compressor, inflating it if it was compressed.
+     *
+     * @param source the buffer to read from, the rest of which is the payload.
+     * @param output the buffer to write the uncompressed payload to.
+     */
+    public void read(ByteBuf source, ByteBuf output) {
+        int length = VarIntCodec.readVarInt(source);
+        if (length == 0) {
+            output.writeBytes(source);
+            return;
+        }
+        if (length < 0 || length > MAX_UNCOMPRESSED_LENGTH) {
+            throw new RuntimeException(String.format(
+                    "Received compressed %s claiming to be %s bytes, the maximum is %s",
+                    this.messageClass.getName(), length, MAX_UNCOMPRESSED_LENGTH));
+        }
+
+        long start = System.nanoTime();
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        if (source.hasArray()) {
+            inflater.setInput(source.array(), source.arrayOffset() + source.readerIndex(), source.readableBytes());
+        } else {
+            byte[] input = new byte[source.readableBytes()];
+            source.getBytes(source.readerIndex(), input);
+            inflater.setInput(input);
+        }
+        source.skipBytes(source.readableBytes());
+
+        output.ensureWritable(length);
+        byte[] chunk = CHUNK.get();
+        int remaining = length;
+        try {
+            while (remaining > 0) {
+                int read = inflater.inflate(chunk, 0, Math.min(chunk.length, remaining));
+                if (read == 0) {
+                    if (inflater.needsDictionary() && this.dictionary != null) {
+                        inflater.setDictionary(this.dictionary);
+                        continue;
+                    }
+                    break;
+                }
+                output.writeBytes(chunk, 0, read);
+                remaining -= read;
+            }
+            if (remaining == 0 && !inflater.finished()) {
+                // Consume the end of the stream, anything more than that means the length was wrong.
+                remaining -= inflater.inflate(chunk, 0, 1);
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new RuntimeException(String.format(
+                    "Failed to inflate payload of %s",
+                    this.messageClass.getName()),
+                    e);
+        }
+        if (remaining != 0 || !inflater.finished()) {
+            throw new RuntimeException(String.format(
+                    "Inflated payload of %s does not match its declared length of %s",
+                    this.messageClass.getName(), length));
+        }
+        this.inflateNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Starts recording uncompressed payloads sent with this compressor for dictionary training,
+     * discarding any samples recorded before.
+     *
+     * @param maxSamples the number of samples to record.
+     */
+    public void startSampling(int maxSamples) {
+        this.samples = Lists.newArrayList();
+        this.maxSamples = maxSamples;
+    }
+
+    /**
+     * Trains a dictionary from the samples recorded since sampling was started and stops sampling.
+     * <p>
+     * The dictionary is not used by this compressor, save it as a resource and reference it from the
+     * Compressed annotation so both sides use it.
+     *
+     * @param dictionarySize the maximum size of the dictionary in bytes.
+     * @return the trained dictionary.
+     */
+    public byte[] trainDictionary(int dictionarySize) {
+        List<byte[]> samples = this.samples;
+        this.samples = null;
+        if (samples == null) {
+            throw new IllegalStateException("Sampling was not started for " + this.messageClass.getName());
+        }
+        synchronized (samples) {
+            return DictionaryTrainer.train(samples, dictionarySize);
+        }
+    }
+
+    private void recordSample(ByteBuf payload) {
+        List<byte[]> samples = this.samples;
+        if (samples != null) {
+            synchronized (samples) {
+                if (samples.size() < this.maxSamples) {
+                    byte[] sample = new byte[payload.readableBytes()];
+                    payload.getBytes(payload.readerIndex(), sample);
+                    samples.add(sample);
+                }
+            }
+        }
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public boolean hasDictionary() {
+        return this.dictionary != null;
+    }
+
+    public long getCompressedCount() {
+        return this.compressedCount.sum();
+    }
+
+    public long getUncompressedBytes() {
+        return this.uncompressedBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return this.compressedBytes.sum();
+    }
+
+    /**
+     * Gets the number of bytes compression has saved so far.
+     *
+     * @return the number of bytes saved.
+     */
+    public long getBytesSaved() {
+        return this.getUncompressedBytes() - this.getCompressedBytes();
+    }
+
+    public long getDeflateNanos() {
+        return this.deflateNanos.sum();
+    }
+
+    public long getInflateNanos() {
+        return this.inflateNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        long uncompressed = this.getUncompressedBytes();
+        return String.format("%s: %s payloads compressed, %s -> %s bytes (%.1f%%), %.3fms deflating, %.3fms inflating",
+                this.messageClass.getSimpleName(), this.getCompressedCount(), uncompressed, this.getCompressedBytes(),
+                uncompressed == 0 ? 0D : 100D * this.getBytesSaved() / uncompressed,
+                this.getDeflateNanos() / 1E6, this.getInflateNanos() / 1E6);
+    }
+}
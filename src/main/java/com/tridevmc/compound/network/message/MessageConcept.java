@@ -1,14 +1,25 @@
 package com.tridevmc.compound.network.message;
 
+import com.google.common.reflect.TypeToken;
+import com.tridevmc.compound.core.reflect.WrappedField;
 import com.tridevmc.compound.network.core.CompoundNetwork;
+import com.tridevmc.compound.network.marshallers.ConnectionDictionary;
+import com.tridevmc.compound.network.marshallers.SetMarshaller;
+import com.tridevmc.compound.network.marshallers.VarIntCodec;
+import com.tridevmc.compound.network.metrics.EnumMessageDirection;
+import com.tridevmc.compound.network.metrics.MessageMetrics;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.LogicalSide;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Stores information about a message for use in serializing and deserializing.
@@ -17,100 +28,352 @@ import java.util.stream.Collectors;
  */
 public class MessageConcept {
 
+    private static final int MAX_ERROR_LENGTH = 256;
+
     private final CompoundNetwork network;
     private final Class<? extends Message> messageClass;
     private final LogicalSide messageSide;
-    private final ArrayList<MessageField> messageFields;
+    private final int discriminator;
+    private final MessageWirePlan wirePlan;
+    private final IMessageCodec codec;
+    private final MessageDeltaCodec deltaCodec;
+    private final boolean dictionaryEncoded;
+    private final MessageCompressor compressor;
+    private final EnumHandlerThread handlerThread;
+    private final EnumMessagePriority priority;
+    private final MethodHandle constructor;
+    private final MessagePool pool;
+    private final Class<? extends ResponseMessage> responseClass;
+    private final MessageMetrics sentMetrics;
+    private final MessageMetrics receivedMetrics;
 
     public MessageConcept(CompoundNetwork network, Class<? extends Message> messageClass,
-                          ArrayList<MessageField> messageFields, LogicalSide messageSide) {
+                          MessageWirePlan wirePlan, IMessageCodec codec, LogicalSide messageSide, int discriminator) {
         this.network = network;
         this.messageClass = messageClass;
         this.messageSide = messageSide;
-        this.messageFields = messageFields;
+        this.discriminator = discriminator;
+        this.wirePlan = wirePlan;
+        this.codec = codec;
+        this.deltaCodec = messageClass.isAnnotationPresent(DeltaEncoded.class) ? new MessageDeltaCodec(wirePlan) : null;
+        this.dictionaryEncoded = usesDictionary(wirePlan);
+        this.compressor = MessageCompressor.create(messageClass);
+        HandleOn handleOn = messageClass.getAnnotation(HandleOn.class);
+        this.handlerThread = handleOn != null ? handleOn.value() : EnumHandlerThread.MAIN;
+        RegisteredMessage registeredMessage = messageClass.getAnnotation(RegisteredMessage.class);
+        this.priority = registeredMessage != null ? registeredMessage.priority() : EnumMessagePriority.NORMAL;
+        try {
+            Constructor<? extends Message> constructor = messageClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            this.constructor = MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(Message.class));
+        } catch (Exception e) {
+            throw new RuntimeException(String.format(
+                    "Unable to access the empty constructor of %s",
+                    messageClass.getName()),
+                    e);
+        }
+        Pooled pooled = messageClass.getAnnotation(Pooled.class);
+        if (pooled != null && ResponseMessage.class.isAssignableFrom(messageClass)) {
+            throw new RuntimeException(String.format(
+                    "Response %s can not be pooled, it is kept by the future of its request",
+                    messageClass.getName()));
+        }
+        this.pool = pooled != null ? new MessagePool(this::newInstance, pooled.capacity()) : null;
+        this.responseClass = RequestMessage.class.isAssignableFrom(messageClass) ? getResponseClass(messageClass) : null;
+        this.sentMetrics = new MessageMetrics(messageClass, EnumMessageDirection.SENT);
+        this.receivedMetrics = new MessageMetrics(messageClass, EnumMessageDirection.RECEIVED);
     }
 
     public LogicalSide getMessageSide() {
         return this.messageSide;
     }
 
+    public Class<? extends Message> getMessageClass() {
+        return this.messageClass;
+    }
+
+    public int getDiscriminator() {
+        return this.discriminator;
+    }
+
+    public MessageWirePlan getWirePlan() {
+        return this.wirePlan;
+    }
+
+    public IMessageCodec getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * Gets the compressor of this message, which holds its compression settings and statistics.
+     *
+     * @return the compressor, or null if this message is not compressed.
+     */
+    public MessageCompressor getCompressor() {
+        return this.compressor;
+    }
+
+    public EnumHandlerThread getHandlerThread() {
+        return this.handlerThread;
+    }
+
+    public EnumMessagePriority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Gets the pool received instances of this message are reused from.
+     *
+     * @return the pool, or null if this message is not pooled.
+     */
+    public MessagePool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Returns a received instance of this message to its pool once it has been handled, does nothing
+     * if this message is not pooled.
+     *
+     * @param msg the handled message.
+     */
+    public void release(Message msg) {
+        if (this.pool != null) {
+            this.pool.release(msg);
+        }
+    }
+
+    /**
+     * Gets the class of the response to this message.
+     *
+     * @return the class of the response, or null if this message is not a request.
+     */
+    public Class<? extends ResponseMessage> getResponseClass() {
+        return this.responseClass;
+    }
+
+    /**
+     * Creates a new instance of this message to be filled in and sent.
+     *
+     * @param <M> the type of this message.
+     * @return the created message.
+     */
+    public <M extends Message> M createMessage() {
+        return (M) this.newInstance();
+    }
+
+    public MessageMetrics getMetrics(EnumMessageDirection direction) {
+        return direction == EnumMessageDirection.SENT ? this.sentMetrics : this.receivedMetrics;
+    }
+
+    public boolean isDeltaEncoded() {
+        return this.deltaCodec != null;
+    }
+
+    /**
+     * Checks if any field of this message is written with a dictionary marshaller, entries of such a
+     * message can only be skipped if the dictionaries of both sides are reset.
+     *
+     * @return true if the message uses the connection dictionary.
+     */
+    public boolean isDictionaryEncoded() {
+        return this.dictionaryEncoded;
+    }
+
+    /**
+     * Creates an empty baseline for delta encoding this message over a connection.
+     *
+     * @return the created baseline.
+     */
+    public MessageBaseline createBaseline() {
+        return this.deltaCodec.createBaseline();
+    }
+
     public void toBytes(Message msg, PacketBuffer target) {
         this.toBytes(msg, target.capacity(target.capacity()));
     }
 
     public void toBytes(Message msg, ByteBuf target) {
-        List<MessageField> booleanFields = this.messageFields.stream()
-                .filter(this::isFieldBoolean).sorted(
-                        Comparator.comparing(o -> o.getField().getName())).collect(Collectors.toList());
-
-        if (!booleanFields.isEmpty()) {
-            byte currentByte = 0x00000000;
-            int byteIndex = 0;
-            for (int i = 0; i < booleanFields.size(); i++) {
-                if (i == 8) {
-                    byteIndex = 0;
-                    currentByte = 0x00000000;
-                }
+        if (this.writeRequestId(msg, target)) {
+            return;
+        }
+        if (this.compressor == null) {
+            this.codec.write(msg, target);
+            return;
+        }
 
-                MessageField msgField = booleanFields.get(i);
-                boolean fieldValue = (boolean) msgField.getValue(msg);
+        ByteBuf payload = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            this.codec.write(msg, payload);
+            this.compressor.write(payload, target);
+        } finally {
+            payload.release();
+        }
+    }
 
-                if (fieldValue) {
-                    currentByte |= (1 << byteIndex);
-                }
+    public void toBytes(Message msg, ByteBuf target, MessageBaseline baseline) {
+        if (this.writeRequestId(msg, target)) {
+            return;
+        }
+        if (this.compressor == null) {
+            this.deltaCodec.write(msg, target, baseline);
+            return;
+        }
 
-                if (i + 1 == booleanFields.size() || currentByte == 7) {
-                    target.writeByte(currentByte);
-                }
-            }
+        ByteBuf payload = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            this.deltaCodec.write(msg, payload, baseline);
+            this.compressor.write(payload, target);
+        } finally {
+            payload.release();
         }
+    }
 
-        for (MessageField msgField : this.messageFields) {
-            if (!this.isFieldBoolean(msgField)) {
-                msgField.writeField(msg, target);
+    public <M extends Message> M fromBytes(ByteBuf source) {
+        Message msg = null;
+        try {
+            msg = this.createInstance();
+            this.fromBytes(msg, source);
+        } catch (Exception e) {
+            this.network.getLogger().error("Failed to read {}, caused by {}", this.messageClass.getName(), e);
+            if (msg != null) {
+                this.release(msg);
             }
+            msg = null;
         }
+        return (M) msg;
     }
 
-    public <M extends Message> M fromBytes(PacketBuffer source) {
+    public void fromBytes(Message msg, ByteBuf source) {
+        if (this.readRequestId(msg, source)) {
+            return;
+        }
+        if (this.compressor == null) {
+            this.codec.read(msg, source);
+            return;
+        }
+
+        ByteBuf payload = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            this.compressor.read(source, payload);
+            this.codec.read(msg, payload);
+        } finally {
+            payload.release();
+        }
+    }
+
+    public <M extends Message> M fromBytes(ByteBuf source, MessageBaseline baseline) {
         Message msg = null;
+        ByteBuf payload = null;
         try {
-            msg = this.messageClass.newInstance();
-            this.fromBytes(msg, source.capacity(source.capacity()));
+            msg = this.createInstance();
+            if (this.readRequestId(msg, source)) {
+                return (M) msg;
+            }
+            if (this.compressor != null) {
+                payload = ByteBufAllocator.DEFAULT.heapBuffer();
+                this.compressor.read(source, payload);
+                source = payload;
+            }
+            this.deltaCodec.read(msg, source, baseline);
         } catch (Exception e) {
-            this.network.getLogger().error("Failed to create new instance of {}, caused by {}", this.messageClass.getName(), e);
+            this.network.getLogger().error("Failed to read delta of {}, caused by {}", this.messageClass.getName(), e);
+            if (msg != null) {
+                this.release(msg);
+            }
+            msg = null;
+        } finally {
+            if (payload != null) {
+                payload.release();
+            }
         }
         return (M) msg;
     }
 
-    public void fromBytes(Message msg, ByteBuf source) {
-        List<MessageField> booleanFields = this.messageFields.stream()
-                .filter(this::isFieldBoolean).sorted(
-                        Comparator.comparing(o -> o.getField().getName())).collect(Collectors.toList());
-
-        if (!booleanFields.isEmpty()) {
-            int byteIndex = 0;
-            byte currentByte = source.readByte();
-            for (int i = 0; i < booleanFields.size(); i++) {
-                if (i == 8) {
-                    byteIndex = 0;
-                    currentByte = source.readByte();
-                }
+    /**
+     * Writes the id of the request a request or response belongs to ahead of its fields, failed responses
+     * are followed by the reason they failed instead of their fields.
+     *
+     * @return true if the message failed and no fields should be written.
+     */
+    private boolean writeRequestId(Message msg, ByteBuf target) {
+        if (this.responseClass != null) {
+            VarIntCodec.writeVarInt(target, ((RequestMessage<?>) msg).getRequestId());
+        } else if (msg instanceof ResponseMessage) {
+            ResponseMessage response = (ResponseMessage) msg;
+            String error = response.getError();
+            VarIntCodec.writeVarInt(target, response.getRequestId() << 1 | (error != null ? 1 : 0));
+            if (error != null) {
+                error = error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+                int length = ByteBufUtil.utf8Bytes(error);
+                VarIntCodec.writeVarInt(target, length);
+                ByteBufUtil.reserveAndWriteUtf8(target, error, length);
+                return true;
+            }
+        }
+        return false;
+    }
 
-                MessageField msgField = booleanFields.get(i);
-                msgField.setValue(msg, (currentByte & (1 << byteIndex)) != 0);
+    /**
+     * Reads what was written by {@link #writeRequestId(Message, ByteBuf)}.
+     *
+     * @return true if the message failed and has no fields to read.
+     */
+    private boolean readRequestId(Message msg, ByteBuf source) {
+        if (this.responseClass != null) {
+            ((RequestMessage<?>) msg).setRequestId(VarIntCodec.readVarInt(source));
+        } else if (msg instanceof ResponseMessage) {
+            ResponseMessage response = (ResponseMessage) msg;
+            int header = VarIntCodec.readVarInt(source);
+            response.setRequestId(header >>> 1);
+            response.setError(null);
+            if ((header & 1) != 0) {
+                int length = VarIntCodec.readVarInt(source);
+                if (length < 0 || length > MAX_ERROR_LENGTH * 3) {
+                    throw new RuntimeException(String.format(
+                            "Received an error of %s bytes, max %s", length, MAX_ERROR_LENGTH * 3));
+                }
+                response.setError(source.readCharSequence(length, StandardCharsets.UTF_8).toString());
+                return true;
             }
         }
+        return false;
+    }
 
-        for (MessageField msgField : this.messageFields) {
-            if (!this.isFieldBoolean(msgField)) {
-                msgField.readField(msg, source);
+    private static boolean usesDictionary(MessageWirePlan wirePlan) {
+        for (int i = 0; i < wirePlan.getValueCount(); i++) {
+            WrappedField<?> field = wirePlan.getValueField(i).getField();
+            SetMarshaller setMarshaller = field.getAnnotation(SetMarshaller.class);
+            if (setMarshaller != null && ConnectionDictionary.isDictionaryMarshaller(setMarshaller.value())) {
+                return true;
             }
         }
+        return false;
+    }
+
+    private static Class<? extends ResponseMessage> getResponseClass(Class<? extends Message> requestClass) {
+        Class<?> responseClass = TypeToken.of(requestClass).resolveType(RequestMessage.class.getTypeParameters()[0]).getRawType();
+        if (responseClass == ResponseMessage.class || Modifier.isAbstract(responseClass.getModifiers())) {
+            throw new RuntimeException(String.format(
+                    "Request %s must declare the class of its response as the type argument of RequestMessage",
+                    requestClass.getName()));
+        }
+        return (Class<? extends ResponseMessage>) responseClass;
     }
 
-    private boolean isFieldBoolean(MessageField msgField) {
-        return msgField.getType() == Boolean.class || msgField.getType() == boolean.class;
+    private Message createInstance() {
+        return this.pool != null ? this.pool.borrow() : this.newInstance();
+    }
+
+    private Message newInstance() {
+        try {
+            return (Message) this.constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException(String.format(
+                    "Failed to create new instance of %s",
+                    this.messageClass.getName()),
+                    e);
+        }
     }
 
 }
@@ -0,0 +1,159 @@
+package com.tridevmc.compound.network.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Writes and reads delta encoded messages, only the fields that changed compared to a baseline are
+ * written along with a bitmask of which fields those are.
+ * <p>
+ * Fields are compared by their encoded bytes so mutable values such as tags and collections are
+ * detected as changed even when the same instance is modified and sent again.
+ * <p>
+ * For internal use only.
+ */
+public class MessageDeltaCodec {
+
+    private final MessageField[] fields;
+    private final boolean[] nullable;
+
+    public MessageDeltaCodec(MessageWirePlan plan) {
+        // Packed fields are compared and sent individually like any other field, using their marshaller.
+        int fieldCount = plan.getBooleanCount() + plan.getPackedCount() + plan.getValueCount();
+        this.fields = new MessageField[fieldCount];
+        this.nullable = new boolean[fieldCount];
+        for (int i = 0; i < plan.getBooleanCount(); i++) {
+            this.fields[i] = plan.getBooleanField(i);
+        }
+        for (int i = 0; i < plan.getPackedCount(); i++) {
+            this.fields[plan.getBooleanCount() + i] = plan.getPackedField(i);
+        }
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            int index = plan.getBooleanCount() + plan.getPackedCount() + i;
+            this.fields[index] = plan.getValueField(i);
+            this.nullable[index] = plan.getPresenceFlag(i) != -1;
+        }
+    }
+
+    /**
+     * Creates an empty baseline for this codec, every field is considered changed against it.
+     *
+     * @return the created baseline.
+     */
+    public MessageBaseline createBaseline() {
+        return new MessageBaseline(this.fields.length);
+    }
+
+    /**
+     * Writes the fields of the given message that differ from the given baseline and updates the
+     * baseline to match the message.
+     *
+     * @param msg      the message to write.
+     * @param target   the buffer to write to.
+     * @param baseline the baseline of the receiver.
+     */
+    public void write(Message msg, ByteBuf target, MessageBaseline baseline) {
+        int maskIndex = target.writerIndex();
+        int maskLength = (this.fields.length + 7) >>> 3;
+        target.writeZero(maskLength);
+
+        // Apply the new values last so a failed write leaves the baseline intact.
+        byte[][] changedValues = new byte[this.fields.length][];
+        for (int i = 0; i < this.fields.length; i++) {
+            int valueIndex = target.writerIndex();
+            this.writeField(i, msg, target);
+
+            int valueLength = target.writerIndex() - valueIndex;
+            byte[] previousValue = baseline.getFieldValue(i);
+            if (previousValue != null && this.isEqual(target, valueIndex, valueLength, previousValue)) {
+                target.writerIndex(valueIndex);
+            } else {
+                byte[] value = new byte[valueLength];
+                target.getBytes(valueIndex, value);
+                changedValues[i] = value;
+                int maskByte = maskIndex + (i >>> 3);
+                target.setByte(maskByte, target.getByte(maskByte) | (1 << (i & 7)));
+            }
+        }
+
+        for (int i = 0; i < changedValues.length; i++) {
+            if (changedValues[i] != null) {
+                baseline.setFieldValue(i, changedValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a delta encoded message into the given message, fields that were not sent are read from
+     * the baseline which is then updated with the fields that were. The baseline is left unchanged if
+     * the read fails.
+     *
+     * @param msg      the message to read into.
+     * @param source   the buffer to read from.
+     * @param baseline the baseline of the sender.
+     */
+    public void read(Message msg, ByteBuf source, MessageBaseline baseline) {
+        int maskIndex = source.readerIndex();
+        source.skipBytes((this.fields.length + 7) >>> 3);
+
+        // Apply the new values last so a failed read leaves the baseline intact, same as a failed write.
+        byte[][] changedValues = new byte[this.fields.length][];
+        for (int i = 0; i < this.fields.length; i++) {
+            boolean changed = (source.getByte(maskIndex + (i >>> 3)) & (1 << (i & 7))) != 0;
+            if (changed) {
+                int valueIndex = source.readerIndex();
+                this.readField(i, msg, source);
+                byte[] value = new byte[source.readerIndex() - valueIndex];
+                source.getBytes(valueIndex, value);
+                changedValues[i] = value;
+            } else {
+                byte[] value = baseline.getFieldValue(i);
+                if (value == null) {
+                    throw new RuntimeException(String.format(
+                            "Received unchanged field %s without a baseline value",
+                            this.fields[i].getField().getName()));
+                }
+                this.readField(i, msg, Unpooled.wrappedBuffer(value));
+            }
+        }
+
+        for (int i = 0; i < changedValues.length; i++) {
+            if (changedValues[i] != null) {
+                baseline.setFieldValue(i, changedValues[i]);
+            }
+        }
+    }
+
+    private void writeField(int index, Message msg, ByteBuf target) {
+        MessageField field = this.fields[index];
+        Object value = field.getValue(msg);
+        if (this.nullable[index]) {
+            target.writeBoolean(value != null);
+            if (value == null) {
+                return;
+            }
+        }
+        field.writeValue(target, value);
+    }
+
+    private void readField(int index, Message msg, ByteBuf source) {
+        MessageField field = this.fields[index];
+        if (this.nullable[index] && !source.readBoolean()) {
+            field.setValue(msg, null);
+            return;
+        }
+        field.setValue(msg, field.readValue(source));
+    }
+
+    private boolean isEqual(ByteBuf buf, int index, int length, byte[] value) {
+        if (length != value.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf.getByte(index + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,12 +1,10 @@
 package com.tridevmc.compound.network.message;
 
 import com.tridevmc.compound.core.reflect.WrappedField;
-import com.tridevmc.compound.network.marshallers.Marshaller;
+import com.tridevmc.compound.network.marshallers.*;
 import io.netty.buffer.ByteBuf;
-import net.minecraft.network.PacketBuffer;
 
 import javax.annotation.Nullable;
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 
 /**
@@ -21,55 +19,126 @@ public class MessageField<T> {
     private final Marshaller<T> marshaller;
     private final WrappedField field;
     private final boolean isNullable;
+    private final boolean isPrimitive;
 
     public MessageField(Marshaller<T> marshaller, Field field) {
         this.marshaller = marshaller;
         this.field = WrappedField.create(field);
 
-        this.isNullable = field.isAnnotationPresent(Nullable.class);
+        // Primitive fields can never hold null, so any annotation on them is ignored.
+        this.isNullable = field.isAnnotationPresent(Nullable.class) && !field.getType().isPrimitive();
+        this.isPrimitive = field.getType().isPrimitive() && marshaller.getPrimitiveType() != null;
     }
 
-    public void writeField(Message msg, ByteBuf target) {
-        // Write a boolean for null checks if the field is nullable.
-        if (this.isNullable) {
-            if (this.isNull(msg)) {
-                target.writeBoolean(true);
-                return;
-            } else {
-                target.writeBoolean(false);
-            }
+    /**
+     * Writes the given value of this field to the given buffer.
+     * <p>
+     * Null values of nullable fields are never passed here, their absence is recorded in the bitmap of
+     * the message's wire plan instead.
+     *
+     * @param target the buffer to write to.
+     * @param value  the value of the field.
+     */
+    public void writeValue(ByteBuf target, Object value) {
+        if (this.isPrimitive) {
+            this.writePrimitive(target, value);
+        } else {
+            this.getMarshaller().writeTo(this, target, (T) value);
         }
+    }
 
-        if (this.field.getType().isArray()) {
-            T[] values = (T[]) this.getValue(msg);
-            new PacketBuffer(target).writeVarInt(values.length);
-            for (T value : values) {
-                this.getMarshaller().writeTo(this, target, value);
-            }
+    /**
+     * Reads a value of this field from the given buffer.
+     *
+     * @param source the buffer to read from.
+     * @return the value that was read.
+     */
+    public Object readValue(ByteBuf source) {
+        if (this.isPrimitive) {
+            return this.readPrimitive(source);
         } else {
-            this.getMarshaller().writeTo(this, target, (T) this.getValue(msg));
+            return this.getMarshaller().readFrom(this, source);
         }
     }
 
-    public void readField(Message msg, ByteBuf source) {
-        // Check if the field is nullable and null, if it is then stop reading.
-        if (this.isNullable && source.readBoolean()) {
-            return;
+    public boolean isNullable() {
+        return this.isNullable;
+    }
+
+    /**
+     * Writes a primitive value using the primitive methods of the marshaller, converting it to the
+     * type of the marshaller if the field is of a different primitive type.
+     */
+    private void writePrimitive(ByteBuf target, Object value) {
+        Number number = value instanceof Character ? (int) (Character) value : (Number) value;
+        Class<?> marshallerType = this.marshaller.getPrimitiveType();
+        if (marshallerType == int.class) {
+            ((IntMarshaller) this.marshaller).writeInt(target, number.intValue());
+        } else if (marshallerType == long.class) {
+            ((LongMarshaller) this.marshaller).writeLong(target, number.longValue());
+        } else if (marshallerType == float.class) {
+            ((FloatMarshaller) this.marshaller).writeFloat(target, number.floatValue());
+        } else if (marshallerType == double.class) {
+            ((DoubleMarshaller) this.marshaller).writeDouble(target, number.doubleValue());
+        } else if (marshallerType == short.class) {
+            ((ShortMarshaller) this.marshaller).writeShort(target, number.shortValue());
+        } else if (marshallerType == byte.class) {
+            ((ByteMarshaller) this.marshaller).writeByte(target, number.byteValue());
+        } else if (marshallerType == char.class) {
+            ((CharMarshaller) this.marshaller).writeChar(target, (char) number.intValue());
         }
+    }
 
-        if (this.field.getType().isArray()) {
-            int size = new PacketBuffer(source).readVarInt();
+    /**
+     * Reads a primitive value using the primitive methods of the marshaller, converting it to the type
+     * of the field if the marshaller is of a different primitive type.
+     */
+    private Object readPrimitive(ByteBuf source) {
+        Number number = null;
+        Class<?> marshallerType = this.marshaller.getPrimitiveType();
+        if (marshallerType == int.class) {
+            number = ((IntMarshaller) this.marshaller).readInt(source);
+        } else if (marshallerType == long.class) {
+            number = ((LongMarshaller) this.marshaller).readLong(source);
+        } else if (marshallerType == float.class) {
+            number = ((FloatMarshaller) this.marshaller).readFloat(source);
+        } else if (marshallerType == double.class) {
+            number = ((DoubleMarshaller) this.marshaller).readDouble(source);
+        } else if (marshallerType == short.class) {
+            number = ((ShortMarshaller) this.marshaller).readShort(source);
+        } else if (marshallerType == byte.class) {
+            number = ((ByteMarshaller) this.marshaller).readByte(source);
+        } else if (marshallerType == char.class) {
+            number = (int) ((CharMarshaller) this.marshaller).readChar(source);
+        }
 
-            T[] values = (T[]) Array.newInstance(this.field.getType(), size);
-            for (int i = 0; i < size; i++) {
-                values[i] = this.getMarshaller().readFrom(this, source);
-            }
-            this.setValue(msg, values);
+        Class<?> fieldType = this.getType();
+        if (fieldType == int.class) {
+            return number.intValue();
+        } else if (fieldType == long.class) {
+            return number.longValue();
+        } else if (fieldType == float.class) {
+            return number.floatValue();
+        } else if (fieldType == double.class) {
+            return number.doubleValue();
+        } else if (fieldType == short.class) {
+            return number.shortValue();
+        } else if (fieldType == byte.class) {
+            return number.byteValue();
         } else {
-            this.setValue(msg, this.getMarshaller().readFrom(this, source));
+            return (char) number.intValue();
         }
     }
 
+    /**
+     * Checks if this field holds a primitive that can be marshalled without boxing.
+     *
+     * @return true if both the field and its marshaller are primitive.
+     */
+    public boolean isPrimitive() {
+        return this.isPrimitive;
+    }
+
     public Class getType() {
         return this.getField().getType();
     }
@@ -89,8 +158,4 @@ public class MessageField<T> {
     public WrappedField getField() {
         return this.field;
     }
-
-    private boolean isNull(Message msg) {
-        return this.getField().get(msg) == null;
-    }
 }
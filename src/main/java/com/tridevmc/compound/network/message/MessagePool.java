@@ -0,0 +1,63 @@
+package com.tridevmc.compound.network.message;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Keeps idle instances of a pooled message for reuse, instances are borrowed on the network thread
+ * and released on whichever thread handled them.
+ * <p>
+ * For internal use only.
+ */
+public class MessagePool {
+
+    private final Supplier<Message> factory;
+    // Fixed slots claimed with a single atomic swap, so borrowing and releasing never allocate or lock.
+    private final AtomicReferenceArray<Message> idle;
+
+    MessagePool(Supplier<Message> factory, int capacity) {
+        this.factory = factory;
+        this.idle = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Takes an idle instance from the pool, or creates a new one if the pool is empty.
+     *
+     * @return the borrowed instance.
+     */
+    Message borrow() {
+        for (int i = 0; i < this.idle.length(); i++) {
+            if (this.idle.get(i) != null) {
+                Message msg = this.idle.getAndSet(i, null);
+                if (msg != null) {
+                    return msg;
+                }
+            }
+        }
+        return this.factory.get();
+    }
+
+    /**
+     * Resets the given instance and returns it to the pool.
+     *
+     * @param msg the instance to release.
+     */
+    void release(Message msg) {
+        msg.reset();
+        for (int i = 0; i < this.idle.length(); i++) {
+            if (this.idle.get(i) == null && this.idle.compareAndSet(i, null, msg)) {
+                return;
+            }
+        }
+    }
+
+    public int getIdleCount() {
+        int idleCount = 0;
+        for (int i = 0; i < this.idle.length(); i++) {
+            if (this.idle.get(i) != null) {
+                idleCount++;
+            }
+        }
+        return idleCount;
+    }
+}
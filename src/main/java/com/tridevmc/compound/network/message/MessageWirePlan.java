@@ -0,0 +1,263 @@
+package com.tridevmc.compound.network.message;
+
+import com.google.common.collect.ImmutableSet;
+import com.tridevmc.compound.core.reflect.WrappedField;
+import com.tridevmc.compound.network.marshallers.SetMarshaller;
+
+import java.lang.annotation.Annotation;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes the layout of a message on the wire, computed once per message concept.
+ * <p>
+ * Every message starts with a bit block holding the value of each boolean field, a presence flag for
+ * each nullable field and then every packed field in as few bits as its values need. Integer fields
+ * annotated with {@link Bits} or {@link Range} are packed, as are enum fields that are not nullable and
+ * use the default marshaller. The block is only as long as it needs to be to fit those bits.
+ * <p>
+ * After the block every other field is written byte aligned in a fixed order, nullable fields are
+ * skipped entirely when their presence flag is not set.
+ * <p>
+ * For internal use only.
+ */
+public final class MessageWirePlan {
+
+    private static final Set<Class<?>> PACKABLE_TYPES = ImmutableSet.of(
+            int.class, long.class, short.class, byte.class, char.class);
+
+    private final MessageField[] booleanFields;
+    private final MessageField[] packedFields;
+    private final MessageField[] valueFields;
+    private final int[] presenceFlags;
+    private final int flagCount;
+    private final int[] packedOffsets;
+    private final int[] packedBits;
+    private final long[] packedMins;
+    private final long[] packedSpans;
+    private final int blockBits;
+
+    private MessageWirePlan(MessageField[] booleanFields, MessageField[] packedFields, MessageField[] valueFields) {
+        this.booleanFields = booleanFields;
+        this.packedFields = packedFields;
+        this.valueFields = valueFields;
+        this.presenceFlags = new int[valueFields.length];
+
+        int flag = booleanFields.length;
+        for (int i = 0; i < valueFields.length; i++) {
+            this.presenceFlags[i] = valueFields[i].isNullable() ? flag++ : -1;
+        }
+        this.flagCount = flag;
+
+        this.packedOffsets = new int[packedFields.length];
+        this.packedBits = new int[packedFields.length];
+        this.packedMins = new long[packedFields.length];
+        this.packedSpans = new long[packedFields.length];
+        int bit = flag;
+        for (int i = 0; i < packedFields.length; i++) {
+            MessageField msgField = packedFields[i];
+            Range range = getAnnotation(msgField, Range.class);
+            if (msgField.getType().isEnum()) {
+                this.packedBits[i] = 32 - Integer.numberOfLeadingZeros(msgField.getType().getEnumConstants().length - 1);
+                this.packedSpans[i] = msgField.getType().getEnumConstants().length - 1;
+            } else if (range != null) {
+                // Unsigned so ranges wider than a signed long still get all 64 bits.
+                this.packedSpans[i] = range.max() - range.min();
+                this.packedBits[i] = 64 - Long.numberOfLeadingZeros(this.packedSpans[i]);
+                this.packedMins[i] = range.min();
+            } else {
+                this.packedBits[i] = getAnnotation(msgField, Bits.class).value();
+                this.packedSpans[i] = this.packedBits[i] == 64 ? -1L : (1L << this.packedBits[i]) - 1;
+            }
+            this.packedOffsets[i] = bit;
+            bit += this.packedBits[i];
+        }
+        this.blockBits = bit;
+    }
+
+    /**
+     * Creates a wire plan for the given fields of a message.
+     *
+     * @param messageFields all the fields of the message.
+     * @return the wire plan for the message.
+     */
+    public static MessageWirePlan create(List<MessageField> messageFields) {
+        // Sort by name so both sides agree on the order regardless of reflection order.
+        Comparator<MessageField> fieldOrder = Comparator.comparing((MessageField f) -> f.getField().getName())
+                .thenComparing(f -> f.getField().getDeclaringClass().getName());
+
+        MessageField[] booleanFields = messageFields.stream()
+                .filter(MessageWirePlan::isFieldBoolean)
+                .sorted(fieldOrder)
+                .toArray(MessageField[]::new);
+        MessageField[] packedFields = messageFields.stream()
+                .filter(f -> !isFieldBoolean(f) && isFieldPacked(f))
+                .sorted(fieldOrder)
+                .toArray(MessageField[]::new);
+        MessageField[] valueFields = messageFields.stream()
+                .filter(f -> !isFieldBoolean(f) && !isFieldPacked(f))
+                .sorted(fieldOrder)
+                .toArray(MessageField[]::new);
+        return new MessageWirePlan(booleanFields, packedFields, valueFields);
+    }
+
+    private static boolean isFieldBoolean(MessageField msgField) {
+        return msgField.getType() == Boolean.class || msgField.getType() == boolean.class;
+    }
+
+    private static boolean isFieldPacked(MessageField msgField) {
+        Bits bits = getAnnotation(msgField, Bits.class);
+        Range range = getAnnotation(msgField, Range.class);
+        if (bits == null && range == null) {
+            Class<?> type = msgField.getType();
+            return type.isEnum() && type.getEnumConstants().length > 0 && !msgField.isNullable()
+                    && !msgField.getField().isAnnotationPresent(SetMarshaller.class);
+        }
+
+        if (!PACKABLE_TYPES.contains(msgField.getType())) {
+            throw new RuntimeException(String.format(
+                    "Unable to pack field %s, only primitive integer fields can be annotated with @Bits or @Range",
+                    msgField.getField().getName()));
+        }
+        if (bits != null && range != null) {
+            throw new RuntimeException(String.format(
+                    "Field %s can not be annotated with both @Bits and @Range",
+                    msgField.getField().getName()));
+        }
+        if (bits != null && (bits.value() < 1 || bits.value() > 64)) {
+            throw new RuntimeException(String.format(
+                    "Field %s is packed into %s bits, expected between 1 and 64",
+                    msgField.getField().getName(), bits.value()));
+        }
+        if (range != null && range.max() < range.min()) {
+            throw new RuntimeException(String.format(
+                    "Field %s has a range with a max of %s below its min of %s",
+                    msgField.getField().getName(), range.max(), range.min()));
+        }
+        return true;
+    }
+
+    private static <A extends Annotation> A getAnnotation(MessageField msgField, Class<A> annotationClass) {
+        WrappedField<?> field = msgField.getField();
+        return field.getAnnotation(annotationClass);
+    }
+
+    /**
+     * Gets the number of boolean fields, these occupy the first flags of the bit block.
+     *
+     * @return the number of boolean fields.
+     */
+    public int getBooleanCount() {
+        return this.booleanFields.length;
+    }
+
+    public MessageField getBooleanField(int index) {
+        return this.booleanFields[index];
+    }
+
+    /**
+     * Gets the number of packed fields, these follow the flags in the bit block.
+     *
+     * @return the number of packed fields.
+     */
+    public int getPackedCount() {
+        return this.packedFields.length;
+    }
+
+    public MessageField getPackedField(int index) {
+        return this.packedFields[index];
+    }
+
+    /**
+     * Gets the index of the first bit of the packed field at the given index within the bit block.
+     *
+     * @param index the index of the packed field.
+     * @return the index of the first bit of the field.
+     */
+    public int getPackedOffset(int index) {
+        return this.packedOffsets[index];
+    }
+
+    /**
+     * Gets the number of bits the packed field at the given index occupies, enum fields are packed as
+     * their ordinal.
+     *
+     * @param index the index of the packed field.
+     * @return the number of bits of the field.
+     */
+    public int getPackedBits(int index) {
+        return this.packedBits[index];
+    }
+
+    /**
+     * Gets the value subtracted from the packed field at the given index before it is written.
+     *
+     * @param index the index of the packed field.
+     * @return the minimum of the range of the field, or 0 if it has no range.
+     */
+    public long getPackedMin(int index) {
+        return this.packedMins[index];
+    }
+
+    /**
+     * Gets the largest value the packed field at the given index may hold once its minimum has been
+     * subtracted, values are checked against it when they are written and read.
+     *
+     * @param index the index of the packed field.
+     * @return the span of the field as an unsigned number.
+     */
+    public long getPackedSpan(int index) {
+        return this.packedSpans[index];
+    }
+
+    /**
+     * Gets the number of non-boolean fields that are not packed, these are written after the bit block.
+     *
+     * @return the number of non-boolean fields.
+     */
+    public int getValueCount() {
+        return this.valueFields.length;
+    }
+
+    public MessageField getValueField(int index) {
+        return this.valueFields[index];
+    }
+
+    /**
+     * Gets the index of the presence flag for the value field at the given index.
+     *
+     * @param index the index of the value field.
+     * @return the index of the presence flag in the bitmap, or -1 if the field is not nullable.
+     */
+    public int getPresenceFlag(int index) {
+        return this.presenceFlags[index];
+    }
+
+    /**
+     * Gets the total number of flags in the bitmap.
+     *
+     * @return the number of flags in the bitmap.
+     */
+    public int getFlagCount() {
+        return this.flagCount;
+    }
+
+    /**
+     * Gets the number of bytes the flags occupy at the start of the bit block.
+     *
+     * @return the length of the flags in bytes.
+     */
+    public int getBitmapLength() {
+        return (this.flagCount + 7) >>> 3;
+    }
+
+    /**
+     * Gets the number of bytes the whole bit block occupies on the wire, flags and packed fields.
+     *
+     * @return the length of the bit block in bytes.
+     */
+    public int getBlockLength() {
+        return (this.blockBits + 7) >>> 3;
+    }
+}
@@ -0,0 +1,28 @@
+package com.tridevmc.compound.network.message;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Attach to a registered message to reuse received instances instead of creating a new one for every
+ * message received, useful for messages received many times a second.
+ * <p>
+ * Received instances are returned to the pool once handle returns, handlers of pooled messages must
+ * not keep a reference to the message. Every sent field is overwritten when an instance is reused,
+ * including nullable fields that were sent as null, override {@link Message#reset()} to clear anything
+ * else.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface Pooled {
+
+    /**
+     * Used to determine how many idle instances the pool keeps, instances released while the pool is
+     * full are left for the garbage collector.
+     *
+     * @return the capacity of the pool.
+     */
+    int capacity() default 64;
+}
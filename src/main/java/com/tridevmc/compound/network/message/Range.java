@@ -0,0 +1,31 @@
+package com.tridevmc.compound.network.message;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Attach to a primitive integer field of a message to pack it into the fewest bits that can hold every
+ * value between min and max, alongside the boolean fields of the message.
+ * <p>
+ * Sending a value outside of the range fails, as does receiving one.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface Range {
+
+    /**
+     * Used to determine the smallest value the field may hold.
+     *
+     * @return the smallest value, inclusive.
+     */
+    long min();
+
+    /**
+     * Used to determine the largest value the field may hold.
+     *
+     * @return the largest value, inclusive.
+     */
+    long max();
+}
@@ -0,0 +1,126 @@
+package com.tridevmc.compound.network.message;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A codec that accesses message fields through reflection, used when a codec could not be generated
+ * for a message.
+ * <p>
+ * For internal use only.
+ */
+public class ReflectiveMessageCodec implements IMessageCodec {
+
+    private final MessageWirePlan plan;
+
+    /**
+     * Creates a reflective codec for the given wire plan.
+     *
+     * @param plan the wire plan of the message.
+     */
+    public ReflectiveMessageCodec(MessageWirePlan plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public void write(Message msg, ByteBuf target) {
+        MessageWirePlan plan = this.plan;
+
+        // Write the bitmap, booleans first followed by presence flags for nullable fields.
+        int blockStart = target.writerIndex();
+        int currentByte = 0;
+        int flag = 0;
+        for (int i = 0; i < plan.getBooleanCount(); i++, flag++) {
+            if ((boolean) plan.getBooleanField(i).getValue(msg)) {
+                currentByte |= (1 << (flag & 7));
+            }
+            if ((flag & 7) == 7) {
+                target.writeByte(currentByte);
+                currentByte = 0;
+            }
+        }
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            if (plan.getPresenceFlag(i) == -1) {
+                continue;
+            }
+            if (plan.getValueField(i).getValue(msg) != null) {
+                currentByte |= (1 << (flag & 7));
+            }
+            if ((flag & 7) == 7) {
+                target.writeByte(currentByte);
+                currentByte = 0;
+            }
+            flag++;
+        }
+        if ((flag & 7) != 0) {
+            target.writeByte(currentByte);
+        }
+
+        // Packed fields fill the rest of the block, starting right after the last flag.
+        target.writeZero(plan.getBlockLength() - plan.getBitmapLength());
+        for (int i = 0; i < plan.getPackedCount(); i++) {
+            MessageField msgField = plan.getPackedField(i);
+            Object value = msgField.getValue(msg);
+            long packed = value instanceof Enum ? ((Enum) value).ordinal()
+                    : value instanceof Character ? (Character) value : ((Number) value).longValue();
+            BitBlock.write(target, blockStart, plan.getPackedOffset(i), plan.getPackedBits(i),
+                    packed - plan.getPackedMin(i), plan.getPackedSpan(i), msgField.getField().getName());
+        }
+
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            MessageField msgField = plan.getValueField(i);
+            Object value = msgField.getValue(msg);
+            if (value != null || plan.getPresenceFlag(i) == -1) {
+                msgField.writeValue(target, value);
+            }
+        }
+    }
+
+    @Override
+    public void read(Message msg, ByteBuf source) {
+        MessageWirePlan plan = this.plan;
+        int bitmapStart = source.readerIndex();
+        source.skipBytes(plan.getBlockLength());
+
+        for (int i = 0; i < plan.getBooleanCount(); i++) {
+            plan.getBooleanField(i).setValue(msg, this.isFlagSet(source, bitmapStart, i));
+        }
+
+        for (int i = 0; i < plan.getPackedCount(); i++) {
+            MessageField msgField = plan.getPackedField(i);
+            long packed = BitBlock.read(source, bitmapStart, plan.getPackedOffset(i), plan.getPackedBits(i),
+                    plan.getPackedSpan(i), msgField.getField().getName()) + plan.getPackedMin(i);
+            msgField.setValue(msg, this.unpack(msgField.getType(), packed));
+        }
+
+        for (int i = 0; i < plan.getValueCount(); i++) {
+            int presenceFlag = plan.getPresenceFlag(i);
+            MessageField msgField = plan.getValueField(i);
+            if (presenceFlag == -1 || this.isFlagSet(source, bitmapStart, presenceFlag)) {
+                msgField.setValue(msg, msgField.readValue(source));
+            } else {
+                // Cleared rather than left untouched, a pooled instance may still hold an old value.
+                msgField.setValue(msg, null);
+            }
+        }
+    }
+
+    private Object unpack(Class<?> type, long packed) {
+        if (type.isEnum()) {
+            return type.getEnumConstants()[(int) packed];
+        } else if (type == int.class) {
+            return (int) packed;
+        } else if (type == long.class) {
+            return packed;
+        } else if (type == short.class) {
+            return (short) packed;
+        } else if (type == byte.class) {
+            return (byte) packed;
+        } else {
+            return (char) packed;
+        }
+    }
+
+    private boolean isFlagSet(ByteBuf source, int bitmapStart, int flag) {
+        return (source.getByte(bitmapStart + (flag >>> 3)) & (1 << (flag & 7))) != 0;
+    }
+}
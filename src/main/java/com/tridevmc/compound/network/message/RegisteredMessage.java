@@ -30,4 +30,32 @@ public @interface RegisteredMessage {
      * @return the destination for the annotated message.
      */
     LogicalSide destination();
+
+    /**
+     * Used to determine how many of the annotated message a single player may send to the server per
+     * second, messages over the limit are dropped before they are decoded.
+     * <p>
+     * Only applies to messages with a SERVER destination, can be changed at runtime through the network.
+     *
+     * @return the messages allowed per second, or 0 for no limit.
+     */
+    double rateLimit() default 0;
+
+    /**
+     * Used to determine how many of the annotated message a single player may send at once before the
+     * rate limit applies.
+     *
+     * @return the burst size, or 0 to allow one second worth of messages.
+     */
+    int rateBurst() default 0;
+
+    /**
+     * Used to determine the lane the annotated message is sent from when batching, messages of a higher
+     * priority are sent ahead of and get a larger share of the bandwidth than those of a lower priority.
+     * <p>
+     * Messages of the same priority are always received in the order they were sent.
+     *
+     * @return the priority of the annotated message.
+     */
+    EnumMessagePriority priority() default EnumMessagePriority.NORMAL;
 }
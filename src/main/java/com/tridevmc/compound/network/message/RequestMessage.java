@@ -0,0 +1,121 @@
+package com.tridevmc.compound.network.message;
+
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.fml.LogicalSide;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base class for messages that are answered with a response, extend this with the class of the response
+ * as the type argument and register it like any other message.
+ * <p>
+ * Sending a request returns a future that is completed with the response once it arrives, or completed
+ * exceptionally if the request fails on the other side, times out or the connection closes. Any number of
+ * requests may be waiting for a response at once, cancelling the future stops waiting for the response.
+ *
+ * @param <R> the type of the response.
+ */
+public abstract class RequestMessage<R extends ResponseMessage> extends Message {
+
+    private int requestId;
+
+    /**
+     * Creates the response to this request, called on the thread chosen for this message with @HandleOn.
+     * <p>
+     * The returned future may be completed later on any thread, the response is sent once it completes.
+     * If it completes exceptionally the request fails on the side that sent it. Return a new response for
+     * every request, a response must not be sent again before the first one was sent.
+     *
+     * @param player the player that sent the request when received on the server, or the client player.
+     * @return the future response.
+     */
+    public abstract CompletableFuture<R> respond(@Nullable PlayerEntity player);
+
+    @Override
+    public final void handle(@Nullable PlayerEntity player) {
+        // Requests may be pooled, so keep what we need before this instance is reused.
+        int requestId = this.requestId;
+        MessageConcept concept = this.getNetwork().getMsgConcept(this);
+        CompletableFuture<R> future;
+        try {
+            future = this.respond(player);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        if (requestId == 0) {
+            // Sent without waiting for a response.
+            return;
+        }
+
+        future.whenComplete((response, error) -> {
+            ResponseMessage reply = response;
+            if (error != null || reply == null) {
+                reply = this.getNetwork().getMsgConcept(concept.getResponseClass()).createMessage();
+                reply.setError(error != null ? error.toString() : "No response was returned");
+            }
+            reply.setRequestId(requestId);
+            try {
+                if (concept.getMessageSide() == LogicalSide.SERVER) {
+                    this.getNetwork().sendTo(reply, (ServerPlayerEntity) player);
+                } else {
+                    this.getNetwork().sendToServer(reply);
+                }
+            } catch (RuntimeException e) {
+                this.getNetwork().getLogger().error("Failed to send response to {}, caused by {}", this.getClass().getName(), e);
+            }
+        });
+    }
+
+    /**
+     * Gets the id the response to this request is matched with, 0 if no response is expected.
+     *
+     * @return the id of the request.
+     */
+    public int getRequestId() {
+        return this.requestId;
+    }
+
+    /**
+     * Sets the id the response to this request is matched with, used by the network while sending it.
+     * <p>
+     * For internal use only.
+     *
+     * @param requestId the id of the request, or 0 if no response is expected.
+     */
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * Sends this request to the server.
+     *
+     * @return the future response of the server.
+     */
+    public CompletableFuture<R> request() {
+        return this.getNetwork().sendToServer(this);
+    }
+
+    /**
+     * Sends this request to the client of the given player.
+     *
+     * @param player the player to send the request to.
+     * @return the future response of the client.
+     */
+    public CompletableFuture<R> request(@Nonnull ServerPlayerEntity player) {
+        return this.getNetwork().sendTo(this, player);
+    }
+
+    @Override
+    public void sendTo(@Nonnull ServerPlayerEntity player) {
+        this.request(player);
+    }
+
+    @Override
+    public void sendToServer() {
+        this.request();
+    }
+}
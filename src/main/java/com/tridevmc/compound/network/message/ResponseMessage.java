@@ -0,0 +1,51 @@
+package com.tridevmc.compound.network.message;
+
+import net.minecraft.entity.player.PlayerEntity;
+
+import javax.annotation.Nullable;
+
+/**
+ * Base class for the responses of a {@link RequestMessage}, extend this and register it like any other
+ * message with the opposite destination of its request.
+ * <p>
+ * Responses are never handled themselves, they complete the future returned when their request was sent
+ * on the thread chosen for the response with @HandleOn. Responses can not be pooled.
+ */
+public abstract class ResponseMessage extends Message {
+
+    private int requestId;
+    private String error;
+
+    /**
+     * Gets the id of the request this is a response to, written before the fields of the response.
+     *
+     * @return the id of the request.
+     */
+    public int getRequestId() {
+        return this.requestId;
+    }
+
+    void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * Gets the reason the request failed on the side that received it, in which case none of the fields
+     * of this response were sent.
+     *
+     * @return the reason the request failed, or null if it succeeded.
+     */
+    @Nullable
+    public String getError() {
+        return this.error;
+    }
+
+    void setError(@Nullable String error) {
+        this.error = error;
+    }
+
+    @Override
+    public final void handle(@Nullable PlayerEntity player) {
+        // Completed by the network instead, see CompoundNetwork#sendToServer(RequestMessage).
+    }
+}
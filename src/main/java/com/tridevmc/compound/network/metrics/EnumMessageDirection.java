@@ -0,0 +1,10 @@
+package com.tridevmc.compound.network.metrics;
+
+/**
+ * An enum to specify which way messages travelled, SENT messages were encoded and sent by this side
+ * and RECEIVED messages were received, decoded and handled by this side.
+ */
+public enum EnumMessageDirection {
+    SENT,
+    RECEIVED
+}
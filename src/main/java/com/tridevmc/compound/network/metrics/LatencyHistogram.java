@@ -0,0 +1,89 @@
+package com.tridevmc.compound.network.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, values are counted in buckets that double in size
+ * every four buckets so any value is reported within 25% of its actual value. Durations longer than
+ * about a minute are all counted in the last bucket.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets, enough to count durations up to 2^36 nanoseconds.
+     */
+    static final int BUCKET_COUNT = 144;
+
+    private final AtomicLongArray buckets;
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * Counts the given value, negative values are counted as 0.
+     *
+     * @param value the value to count.
+     */
+    public void record(long value) {
+        this.buckets.incrementAndGet(bucketOf(Math.max(0, value)));
+    }
+
+    /**
+     * Copies the current count of every bucket.
+     *
+     * @return the bucket counts.
+     */
+    public long[] snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Finds the value at the given percentile of the given bucket counts.
+     *
+     * @param counts     the bucket counts, as taken by snapshot.
+     * @param percentile the percentile to find, between 0 and 1.
+     * @return the largest value of the bucket the percentile falls in, or 0 if nothing was counted.
+     */
+    public static long valueAt(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    static int bucketOf(long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - 2)) & 3;
+        return Math.min((exponent - 1) * 4 + mantissa, BUCKET_COUNT - 1);
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        int mantissa = bucket % 4;
+        return ((long) (5 + mantissa) << (exponent - 2)) - 1;
+    }
+}
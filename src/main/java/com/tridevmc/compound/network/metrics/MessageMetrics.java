@@ -0,0 +1,101 @@
+package com.tridevmc.compound.network.metrics;
+
+import com.tridevmc.compound.network.message.Message;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the messages of a single type sent or received by a network, recording can happen from any
+ * thread without locking.
+ */
+public class MessageMetrics {
+
+    private final Class<? extends Message> messageClass;
+    private final EnumMessageDirection direction;
+    private final LongAdder messages;
+    private final LongAdder bytes;
+    private final LongAdder codecNanos;
+    private final LongAdder handlerNanos;
+    private final LatencyHistogram codecTimes;
+    private final LatencyHistogram handlerTimes;
+
+    public MessageMetrics(Class<? extends Message> messageClass, EnumMessageDirection direction) {
+        this.messageClass = messageClass;
+        this.direction = direction;
+        this.messages = new LongAdder();
+        this.bytes = new LongAdder();
+        this.codecNanos = new LongAdder();
+        this.handlerNanos = new LongAdder();
+        this.codecTimes = new LatencyHistogram();
+        this.handlerTimes = new LatencyHistogram();
+    }
+
+    /**
+     * Records a message that was encoded or decoded.
+     *
+     * @param bytes      the encoded size of the message.
+     * @param codecNanos the time taken to encode or decode the message.
+     */
+    public void recordCodec(int bytes, long codecNanos) {
+        this.messages.increment();
+        this.bytes.add(bytes);
+        this.codecNanos.add(codecNanos);
+        this.codecTimes.record(codecNanos);
+    }
+
+    /**
+     * Records copies of an encoded message sent to additional recipients without encoding it again.
+     *
+     * @param copies the number of additional recipients.
+     * @param bytes  the encoded size of the message.
+     */
+    public void recordCopies(int copies, int bytes) {
+        this.messages.add(copies);
+        this.bytes.add((long) copies * bytes);
+    }
+
+    /**
+     * Records the handling of a received message.
+     *
+     * @param handlerNanos the time taken by the handler of the message.
+     */
+    public void recordHandler(long handlerNanos) {
+        this.handlerNanos.add(handlerNanos);
+        this.handlerTimes.record(handlerNanos);
+    }
+
+    /**
+     * Copies the current totals of these metrics.
+     *
+     * @return the snapshot of the metrics.
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(this.messageClass, this.direction,
+                this.messages.sum(), this.bytes.sum(), this.codecNanos.sum(), this.handlerNanos.sum(),
+                this.codecTimes.snapshot(), this.handlerTimes.snapshot());
+    }
+
+    public Class<? extends Message> getMessageClass() {
+        return this.messageClass;
+    }
+
+    public EnumMessageDirection getDirection() {
+        return this.direction;
+    }
+
+    public long getMessages() {
+        return this.messages.sum();
+    }
+
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    public long getCodecNanos() {
+        return this.codecNanos.sum();
+    }
+
+    public long getHandlerNanos() {
+        return this.handlerNanos.sum();
+    }
+}
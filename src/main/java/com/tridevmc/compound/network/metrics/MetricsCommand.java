@@ -0,0 +1,69 @@
+package com.tridevmc.compound.network.metrics;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.util.text.StringTextComponent;
+
+import java.util.List;
+
+/**
+ * Registers "/compound network &lt;name&gt; top &lt;count&gt; [seconds]", which prints the messages of a
+ * network that used the most bandwidth in each direction over the last seconds.
+ * <p>
+ * For internal use only.
+ */
+public final class MetricsCommand {
+
+    private static final int DEFAULT_WINDOW_SECONDS = 10;
+
+    private MetricsCommand() {
+    }
+
+    /**
+     * Registers the command for the given network.
+     *
+     * @param dispatcher  the dispatcher to register the command with.
+     * @param networkName the name of the network.
+     * @param metrics     the metrics of the network.
+     */
+    public static void register(CommandDispatcher<CommandSource> dispatcher, String networkName, NetworkMetrics metrics) {
+        dispatcher.register(Commands.literal("compound")
+                .requires(s -> s.hasPermissionLevel(2))
+                .then(Commands.literal("network")
+                        .then(Commands.literal(networkName)
+                                .then(Commands.literal("top")
+                                        .then(Commands.argument("count", IntegerArgumentType.integer(1, 100))
+                                                .executes(c -> printTop(c, metrics, DEFAULT_WINDOW_SECONDS))
+                                                .then(Commands.argument("seconds", IntegerArgumentType.integer(1, NetworkMetrics.MAX_WINDOW_SECONDS))
+                                                        .executes(c -> printTop(c, metrics, IntegerArgumentType.getInteger(c, "seconds")))))))));
+    }
+
+    private static int printTop(CommandContext<CommandSource> ctx, NetworkMetrics metrics, int windowSeconds) {
+        int count = IntegerArgumentType.getInteger(ctx, "count");
+        CommandSource source = ctx.getSource();
+        for (EnumMessageDirection direction : EnumMessageDirection.values()) {
+            List<MetricsSnapshot> top = metrics.getTop(direction, count, windowSeconds);
+            source.sendFeedback(new StringTextComponent(String.format("Top %s messages %s in the last %ss:",
+                    top.size(), direction.name().toLowerCase(), windowSeconds)), false);
+            for (MetricsSnapshot snapshot : top) {
+                source.sendFeedback(new StringTextComponent(describe(snapshot, windowSeconds)), false);
+            }
+        }
+        return 1;
+    }
+
+    private static String describe(MetricsSnapshot snapshot, int windowSeconds) {
+        String description = String.format("  %s: %s msgs, %.1f KB/s, codec p50 %.1fus p99 %.1fus",
+                snapshot.getMessageClass().getSimpleName(), snapshot.getMessages(),
+                snapshot.getBytes() / 1024D / windowSeconds,
+                snapshot.getCodecNanos(0.5D) / 1000D, snapshot.getCodecNanos(0.99D) / 1000D);
+        if (snapshot.getDirection() == EnumMessageDirection.RECEIVED) {
+            description += String.format(", handler p50 %.1fus p99 %.1fus",
+                    snapshot.getHandlerNanos(0.5D) / 1000D, snapshot.getHandlerNanos(0.99D) / 1000D);
+        }
+        return description;
+    }
+}
@@ -0,0 +1,100 @@
+package com.tridevmc.compound.network.metrics;
+
+import com.tridevmc.compound.network.message.Message;
+
+/**
+ * The totals of the metrics of a message at one point in time, or the difference between two such
+ * points.
+ */
+public class MetricsSnapshot {
+
+    private final Class<? extends Message> messageClass;
+    private final EnumMessageDirection direction;
+    private final long messages;
+    private final long bytes;
+    private final long codecNanos;
+    private final long handlerNanos;
+    private final long[] codecTimes;
+    private final long[] handlerTimes;
+
+    MetricsSnapshot(Class<? extends Message> messageClass, EnumMessageDirection direction,
+                    long messages, long bytes, long codecNanos, long handlerNanos,
+                    long[] codecTimes, long[] handlerTimes) {
+        this.messageClass = messageClass;
+        this.direction = direction;
+        this.messages = messages;
+        this.bytes = bytes;
+        this.codecNanos = codecNanos;
+        this.handlerNanos = handlerNanos;
+        this.codecTimes = codecTimes;
+        this.handlerTimes = handlerTimes;
+    }
+
+    /**
+     * Gets what was recorded between the given earlier snapshot of the same metrics and this one.
+     *
+     * @param earlier the earlier snapshot, or null to get everything recorded up to this one.
+     * @return the difference between the snapshots.
+     */
+    public MetricsSnapshot since(MetricsSnapshot earlier) {
+        if (earlier == null) {
+            return this;
+        }
+
+        long[] codecTimes = new long[this.codecTimes.length];
+        long[] handlerTimes = new long[this.handlerTimes.length];
+        for (int i = 0; i < codecTimes.length; i++) {
+            codecTimes[i] = this.codecTimes[i] - earlier.codecTimes[i];
+            handlerTimes[i] = this.handlerTimes[i] - earlier.handlerTimes[i];
+        }
+        return new MetricsSnapshot(this.messageClass, this.direction,
+                this.messages - earlier.messages, this.bytes - earlier.bytes,
+                this.codecNanos - earlier.codecNanos, this.handlerNanos - earlier.handlerNanos,
+                codecTimes, handlerTimes);
+    }
+
+    /**
+     * Gets the time taken to encode or decode a message at the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 1.
+     * @return the time in nanoseconds.
+     */
+    public long getCodecNanos(double percentile) {
+        return LatencyHistogram.valueAt(this.codecTimes, percentile);
+    }
+
+    /**
+     * Gets the time taken to handle a message at the given percentile, only recorded for received
+     * messages.
+     *
+     * @param percentile the percentile, between 0 and 1.
+     * @return the time in nanoseconds.
+     */
+    public long getHandlerNanos(double percentile) {
+        return LatencyHistogram.valueAt(this.handlerTimes, percentile);
+    }
+
+    public Class<? extends Message> getMessageClass() {
+        return this.messageClass;
+    }
+
+    public EnumMessageDirection getDirection() {
+        return this.direction;
+    }
+
+    public long getMessages() {
+        return this.messages;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public long getCodecNanos() {
+        return this.codecNanos;
+    }
+
+    public long getHandlerNanos() {
+        return this.handlerNanos;
+    }
+}
@@ -0,0 +1,111 @@
+package com.tridevmc.compound.network.metrics;
+
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a snapshot of the metrics of every message of a network once a second, so metrics can be
+ * queried over a sliding window of up to a minute.
+ * <p>
+ * For internal use only.
+ */
+public class NetworkMetrics {
+
+    /**
+     * The longest window in seconds metrics can be queried over.
+     */
+    public static final int MAX_WINDOW_SECONDS = 60;
+
+    private final List<MessageMetrics> metrics;
+    // One slot per second, each holding a snapshot of every metrics in the same order as the list.
+    private final MetricsSnapshot[][] history;
+    private long lastSnapshot;
+    private int snapshots;
+
+    public NetworkMetrics(Collection<MessageMetrics> metrics) {
+        this.metrics = Lists.newArrayList(metrics);
+        this.history = new MetricsSnapshot[MAX_WINDOW_SECONDS + 1][];
+        this.lastSnapshot = System.nanoTime();
+        this.history[0] = this.snapshotAll();
+        this.snapshots = 1;
+    }
+
+    /**
+     * Takes a new snapshot if a second has passed since the last one, called every tick.
+     */
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        if (now - this.lastSnapshot >= 1000000000L) {
+            this.lastSnapshot = now;
+            this.history[this.snapshots % this.history.length] = this.snapshotAll();
+            this.snapshots++;
+        }
+    }
+
+    /**
+     * Gets what the given metrics recorded over the given window.
+     *
+     * @param metrics       the metrics to query.
+     * @param windowSeconds the length of the window in seconds, at most MAX_WINDOW_SECONDS.
+     * @return the metrics recorded in the window, or everything recorded if the network is younger.
+     */
+    public MetricsSnapshot getWindow(MessageMetrics metrics, int windowSeconds) {
+        int index = this.metrics.indexOf(metrics);
+        MetricsSnapshot[] start = this.getWindowStart(windowSeconds);
+        return metrics.snapshot().since(start != null ? start[index] : null);
+    }
+
+    /**
+     * Gets the messages that used the most bandwidth in the given direction over the given window.
+     *
+     * @param direction     the direction of the messages.
+     * @param count         the most messages to return.
+     * @param windowSeconds the length of the window in seconds, at most MAX_WINDOW_SECONDS.
+     * @return the metrics of the messages, largest first.
+     */
+    public List<MetricsSnapshot> getTop(EnumMessageDirection direction, int count, int windowSeconds) {
+        MetricsSnapshot[] start = this.getWindowStart(windowSeconds);
+        List<MetricsSnapshot> window = Lists.newArrayList();
+        for (int i = 0; i < this.metrics.size(); i++) {
+            MessageMetrics metrics = this.metrics.get(i);
+            if (metrics.getDirection() == direction) {
+                MetricsSnapshot snapshot = metrics.snapshot().since(start != null ? start[i] : null);
+                if (snapshot.getMessages() > 0) {
+                    window.add(snapshot);
+                }
+            }
+        }
+        return window.stream()
+                .sorted(Comparator.comparingLong(MetricsSnapshot::getBytes).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    private synchronized MetricsSnapshot[] getWindowStart(int windowSeconds) {
+        int window = Math.max(1, Math.min(windowSeconds, MAX_WINDOW_SECONDS));
+        if (window >= this.snapshots) {
+            return null;
+        }
+        return this.history[(this.snapshots - 1 - window) % this.history.length];
+    }
+
+    private MetricsSnapshot[] snapshotAll() {
+        MetricsSnapshot[] previous = this.snapshots > 0 ? this.history[(this.snapshots - 1) % this.history.length] : null;
+        MetricsSnapshot[] snapshots = new MetricsSnapshot[this.metrics.size()];
+        for (int i = 0; i < snapshots.length; i++) {
+            MessageMetrics metrics = this.metrics.get(i);
+            if (previous != null && previous[i].getMessages() == metrics.getMessages()
+                    && previous[i].getHandlerNanos() == metrics.getHandlerNanos()) {
+                // Share snapshots of idle messages, most of the history is the same for them.
+                snapshots[i] = previous[i];
+            } else {
+                snapshots[i] = metrics.snapshot();
+            }
+        }
+        return snapshots;
+    }
+}